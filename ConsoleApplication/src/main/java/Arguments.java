@@ -0,0 +1,55 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Trennt Optionen der Form --name=wert von den positionellen Argumenten
+public class Arguments {
+
+    private final List<String> positional = new ArrayList<>();
+    private final Map<String, String> options = new HashMap<>();
+
+    public Arguments(String[] args) {
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int idx = arg.indexOf('=');
+                if (idx < 0) {
+                    options.put(arg.substring(2), "true");
+                } else {
+                    options.put(arg.substring(2, idx), arg.substring(idx + 1));
+                }
+            } else {
+                positional.add(arg);
+            }
+        }
+    }
+
+    public int size() {
+        return positional.size();
+    }
+
+    public String get(int index) {
+        return index < positional.size() ? positional.get(index) : null;
+    }
+
+    public boolean has(String name) {
+        return options.containsKey(name);
+    }
+
+    public String option(String name, String defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    public int intOption(String name, int defaultValue) {
+        String value = options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("--" + name + " erwartet eine Zahl: " + value);
+        }
+    }
+}
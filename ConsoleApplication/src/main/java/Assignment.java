@@ -0,0 +1,69 @@
+// Zuteilung eines Koordinators an einen Worker: Nummernbereich, Anzahl Boxen und Server.
+// Auf der Leitung: ASSIGN <prefix> <width> <first> <last> <target> <uri>
+public class Assignment {
+
+    public static final String COMMAND = "ASSIGN";
+
+    private final String prefix;
+    private final int width;
+    private final int first;
+    private final int last;
+    private final int target;
+    private final String uri;
+
+    public Assignment(String prefix, int width, int first, int last, int target, String uri) {
+        this.prefix = prefix;
+        this.width = width;
+        this.first = first;
+        this.last = last;
+        this.target = target;
+        this.uri = uri;
+    }
+
+    public static Assignment parse(String line) {
+        String[] parts = line.trim().split(" ");
+        if (parts.length != 7 || !COMMAND.equals(parts[0])) {
+            throw new IllegalArgumentException("Ungueltige Zuteilung: " + line);
+        }
+        return new Assignment(parts[1], Integer.parseInt(parts[2]), Integer.parseInt(parts[3]),
+                Integer.parseInt(parts[4]), Integer.parseInt(parts[5]), parts[6]);
+    }
+
+    public String toLine() {
+        return COMMAND + " " + prefix + " " + width + " " + first + " " + last + " " + target + " " + uri;
+    }
+
+    public boolean sameRange(Assignment other) {
+        return other != null && prefix.equals(other.prefix) && width == other.width
+                && first == other.first && last == other.last && uri.equals(other.uri);
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getFirst() {
+        return first;
+    }
+
+    public int getLast() {
+        return last;
+    }
+
+    public int getTarget() {
+        return target;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    @Override
+    public String toString() {
+        return prefix + " " + first + ".." + last + " -> " + target;
+    }
+}
@@ -0,0 +1,72 @@
+import eu.chargetime.simulator.ChargeBox;
+import eu.chargetime.simulator.FleetServices;
+import eu.chargetime.simulator.charging.MeterValueEngine;
+import eu.chargetime.simulator.connection.ConnectRateLimiter;
+import eu.chargetime.simulator.connection.Endpoints;
+import eu.chargetime.simulator.connection.ReconnectSupervisor;
+import eu.chargetime.simulator.scheduling.ExecutionMode;
+import eu.chargetime.simulator.scheduling.NamedThreadFactory;
+import eu.chargetime.simulator.scheduling.TimingWheel;
+import eu.chargetime.simulator.software.ocpp.CallWindow;
+import eu.chargetime.simulator.software.ocpp.OcppMetrics;
+import eu.chargetime.simulator.software.ocpp.transport.JsonClientTransport;
+import eu.chargetime.simulator.software.ocpp.transport.SelectorGroup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// Startet so viele ChargeBoxen wie moeglich und zeigt, wie viele eine JVM im jeweiligen Modus haelt.
+// Aufruf: CapacityBenchmark [--threads=platform|virtual] [--transport=json|nio] [--max=50000] [--uri=ws://127.0.0.1:9/]
+public class CapacityBenchmark {
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        Arguments arguments = new Arguments(args);
+        ExecutionMode mode = ExecutionMode.parse(arguments.option("threads", "platform"));
+        int max = arguments.intOption("max", 50000);
+        String uri = arguments.option("uri", "ws://127.0.0.1:9/");
+
+        TimingWheel timingWheel = new TimingWheel("timing-wheel", 100, TimeUnit.MILLISECONDS, 512,
+                Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new NamedThreadFactory("timer", true)));
+        ReconnectSupervisor reconnectSupervisor = new ReconnectSupervisor(timingWheel,
+                Executors.newCachedThreadPool(mode.threadFactory("connect")), new ConnectRateLimiter(1000, 1000, 1000),
+                1000, 120000, 30000);
+        FleetServices services = new FleetServices(timingWheel, reconnectSupervisor, new OcppMetrics(),
+                "nio".equals(arguments.option("transport", "json"))
+                        ? new SelectorGroup(Runtime.getRuntime().availableProcessors()).transportFactory()
+                        : JsonClientTransport.FACTORY, new MeterValueEngine(timingWheel, 60, 11000),
+                new CallWindow(1, 100, 100000, 30000, (task, delay) -> timingWheel.newTimeout(task, delay, TimeUnit.MILLISECONDS)::cancel));
+        Endpoints endpoints = new Endpoints(uri, Endpoints.Strategy.WEIGHTED, 5, 30000, timingWheel);
+        ThreadFactory threads = mode.threadFactory("chargebox");
+        List<ChargeBox> boxes = new ArrayList<>();
+        long start = System.nanoTime();
+        String limit = "max erreicht";
+        try {
+            for (int i = 1; i <= max; i++) {
+                ChargeBox cb = new ChargeBox(endpoints, "Bench" + i, services);
+                threads.newThread(cb).start();
+                boxes.add(cb);
+                if (i % 1000 == 0) {
+                    report(mode, boxes.size(), start);
+                }
+            }
+        } catch (OutOfMemoryError e) {
+            limit = e.getMessage();
+        }
+        Thread.sleep(1000);
+        report(mode, boxes.size(), start);
+        System.out.println("Limit: " + limit);
+        boxes.forEach(ChargeBox::stop);
+        System.exit(0);
+    }
+
+    private static void report(ExecutionMode mode, int boxes, long start) {
+        Runtime runtime = Runtime.getRuntime();
+        long usedMb = (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+        System.out.println(String.format("%s boxes=%d liveThreads=%d heapUsedMb=%d elapsedMs=%d",
+                mode, boxes, Thread.activeCount(), usedMb, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+}
@@ -38,7 +38,8 @@ public class CommandDispatcher implements IInputHandler {
 
     @Override
     public void handle(String input) {
-        String[] splittedInput = input.split(" ");
+        // Alles nach dem Befehlsnamen ist der Parameter, damit Auswahlen wie "plugin 1-10, 50%" ganz ankommen
+        String[] splittedInput = input.trim().split("\\s+", 2);
         ICommand command = repository.createCommand(splittedInput[0]);
 
         if (command == null)
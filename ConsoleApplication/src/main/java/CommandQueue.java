@@ -0,0 +1,274 @@
+import eu.chargetime.simulator.scheduling.NamedThreadFactory;
+import eu.chargetime.simulator.scheduling.Scheduler;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Warteschlange zwischen Konsole und Befehlen: der Leser stellt nur ein, ein eigener Thread fuehrt der Reihe nach aus.
+// Eine Zeile mit '&' am Ende laeuft als Job im Hintergrund. Skripte (run <datei>) laufen Zeile fuer Zeile auf dem
+// Thread, der sie startet, und brechen ab, wenn eine Zeile scheitert, z.B. ein wait in sein Zeitlimit laeuft:
+//   wait 30s                      feste Pause
+//   wait connected>=5000 10m      bis der Zaehler die Bedingung erfuellt, hoechstens 10 Minuten
+//   wait jobs                     bis alle Hintergrund-Jobs fertig sind
+// Dauern und Zeitlimits von wait zaehlen auf der Uhr des Schedulers.
+// Laeuft ein Befehl oder Job laenger als das Meldeintervall, wird regelmaessig der Fortschritt ausgegeben.
+// An der interaktiven Konsole ueberholen Steuerbefehle (jobs, quit, profile stop, rate stop) die Warteschlange,
+// sie wirken also auch, waehrend ein Skript oder wait laeuft. Im Batch-Modus bleibt die Reihenfolge der Eingabe.
+public class CommandQueue implements IInputHandler {
+
+    private static final Pattern CONDITION = Pattern.compile("(\\w+)\\s*(>=|<=|=|>|<)\\s*(\\d+)(?:\\s+(\\S+))?");
+    private static final long POLL_MILLIS = 100;
+    private static final Pattern CONTROL = Pattern.compile("jobs|quit|profile\\s+stop|rate\\s+stop");
+
+    private static final class Job {
+        final int id;
+        final String line;
+        final long startMillis = System.currentTimeMillis();
+
+        Job(int id, String line) {
+            this.id = id;
+            this.line = line;
+        }
+    }
+
+    private final IInputHandler dispatcher;
+    private final Map<String, LongSupplier> counters;
+    private final Supplier<String> progress;
+    private final Scheduler scheduler;
+    private final int progressSeconds;
+    private final boolean interactive;
+    private final ExecutorService queue = Executors.newSingleThreadExecutor(new NamedThreadFactory("command-queue", false));
+    private final ExecutorService background = Executors.newCachedThreadPool(new NamedThreadFactory("command-job", true));
+    private final Map<Integer, Job> jobs = new ConcurrentSkipListMap<>();
+    private final AtomicInteger nextJob = new AtomicInteger(1);
+    private final ThreadLocal<Job> ownJob = new ThreadLocal<>();
+    private volatile Job current;
+
+    public CommandQueue(IInputHandler dispatcher, Map<String, LongSupplier> counters, Supplier<String> progress,
+                        Scheduler scheduler, int progressSeconds, boolean interactive) {
+        this.dispatcher = dispatcher;
+        this.counters = counters;
+        this.progress = progress;
+        this.scheduler = scheduler;
+        this.progressSeconds = progressSeconds;
+        this.interactive = interactive;
+        scheduleProgress();
+    }
+
+    @Override
+    public void handle(String input) {
+        if (interactive && CONTROL.matcher(input.trim()).matches()) {
+            execute(input);
+            return;
+        }
+        queue.execute(() -> {
+            final Job job = new Job(0, input.trim());
+            current = job;
+            try {
+                execute(input);
+            } finally {
+                current = null;
+            }
+        });
+    }
+
+    // Fuehrt eine Zeile auf dem aufrufenden Thread aus und liefert false, wenn sie gescheitert ist
+    public boolean execute(String input) {
+        final String line = input.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+            return true;
+        }
+        if (line.endsWith("&")) {
+            startJob(line.substring(0, line.length() - 1).trim());
+            return true;
+        }
+        try {
+            dispatcher.handle(line);
+            return true;
+        } catch (RuntimeException e) {
+            System.err.println("Fehler in '" + line + "': " + e.getMessage());
+            return false;
+        }
+    }
+
+    // run <datei>
+    public void run(String file) {
+        if (file == null || file.trim().isEmpty()) {
+            throw new IllegalArgumentException("Aufruf: run <datei>");
+        }
+        final List<String> lines;
+        try {
+            lines = Files.readAllLines(Paths.get(file.trim()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Skript " + file + " nicht lesbar: " + e.getMessage());
+        }
+        System.out.println("Skript " + file + " mit " + lines.size() + " Zeilen");
+        for (int i = 0; i < lines.size(); i++) {
+            if (!execute(lines.get(i))) {
+                throw new IllegalStateException("Skript " + file + " in Zeile " + (i + 1) + " abgebrochen");
+            }
+        }
+        System.out.println("Skript " + file + " fertig");
+    }
+
+    // wait <dauer> | wait jobs | wait <zaehler><op><wert> [zeitlimit]
+    public void await(String param) {
+        final String spec = param == null ? "" : param.trim();
+        if (spec.isEmpty()) {
+            throw new IllegalArgumentException("Aufruf: wait <dauer> | wait jobs [zeitlimit] | wait <zaehler><op><wert> [zeitlimit], zaehler: "
+                    + String.join(", ", counters.keySet()));
+        }
+        if (Character.isDigit(spec.charAt(0))) {
+            pause(LoadProfile.millis(spec));
+            return;
+        }
+        final String[] jobsSpec = spec.split("\\s+");
+        if ("jobs".equals(jobsSpec[0])) {
+            final long deadline = deadline(jobsSpec.length > 1 ? jobsSpec[1] : null);
+            // Ein Skript, das selbst als Job laeuft, wartet nicht auf sich
+            final Job own = ownJob.get();
+            waitUntil(() -> jobs.size() == (own != null && jobs.containsKey(own.id) ? 1 : 0), deadline, "alle Jobs fertig");
+            return;
+        }
+        final Matcher matcher = CONDITION.matcher(spec);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Ungueltige Bedingung: " + spec);
+        }
+        final LongSupplier counter = counters.get(matcher.group(1));
+        if (counter == null) {
+            throw new IllegalArgumentException("Unbekannter Zaehler " + matcher.group(1) + ", bekannt: " + String.join(", ", counters.keySet()));
+        }
+        final String op = matcher.group(2);
+        final long value = Long.parseLong(matcher.group(3));
+        final long deadline = deadline(matcher.group(4));
+        waitUntil(() -> compare(counter.getAsLong(), op, value), deadline, matcher.group(1) + " " + op + " " + value);
+    }
+
+    public void printJobs() {
+        if (jobs.isEmpty()) {
+            System.out.println("Keine Jobs");
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        for (Job job : jobs.values()) {
+            System.out.println("[" + job.id + "] " + job.line + " seit " + (now - job.startMillis) / 1000 + " s");
+        }
+    }
+
+    public int getJobCount() {
+        return jobs.size();
+    }
+
+    private void startJob(String line) {
+        final Job job = new Job(nextJob.getAndIncrement(), line);
+        jobs.put(job.id, job);
+        System.out.println("[" + job.id + "] gestartet: " + line);
+        background.execute(() -> {
+            final boolean ok;
+            ownJob.set(job);
+            try {
+                ok = execute(line);
+            } finally {
+                ownJob.remove();
+                jobs.remove(job.id);
+            }
+            System.out.println("[" + job.id + "] " + (ok ? "fertig" : "gescheitert") + " nach "
+                    + (System.currentTimeMillis() - job.startMillis) / 1000 + " s: " + line);
+        });
+    }
+
+    private interface Condition {
+        boolean met();
+    }
+
+    private void waitUntil(Condition condition, long deadline, String description) {
+        while (!condition.met()) {
+            if (scheduler.currentTimeMillis() >= deadline) {
+                throw new IllegalStateException("Zeitlimit erreicht, nicht erfuellt: " + description);
+            }
+            sleep(POLL_MILLIS);
+        }
+        System.out.println("Erfuellt: " + description);
+    }
+
+    private long deadline(String timeout) {
+        return timeout == null ? Long.MAX_VALUE : scheduler.currentTimeMillis() + LoadProfile.millis(timeout);
+    }
+
+    // Pausen laufen auf der Simulationsuhr, mit virtueller Uhr also entsprechend schneller
+    private void pause(long millis) {
+        final CountDownLatch elapsed = new CountDownLatch(1);
+        scheduler.newTimeout(elapsed::countDown, millis, TimeUnit.MILLISECONDS);
+        try {
+            elapsed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Warten unterbrochen");
+        }
+    }
+
+    private static boolean compare(long actual, String op, long value) {
+        switch (op) {
+            case ">=":
+                return actual >= value;
+            case "<=":
+                return actual <= value;
+            case ">":
+                return actual > value;
+            case "<":
+                return actual < value;
+            default:
+                return actual == value;
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Warten unterbrochen");
+        }
+    }
+
+    // Meldet lang laufende Befehle und Jobs zusammen mit dem Stand der Flotte, 0 schaltet das ab
+    private void scheduleProgress() {
+        if (progressSeconds <= 0) {
+            return;
+        }
+        scheduler.newTimeout(() -> {
+            final long now = System.currentTimeMillis();
+            final long threshold = progressSeconds * 1000L;
+            final Job running = current;
+            boolean reported = false;
+            if (running != null && now - running.startMillis >= threshold) {
+                System.out.println("laeuft seit " + (now - running.startMillis) / 1000 + " s: " + running.line);
+                reported = true;
+            }
+            for (Job job : jobs.values()) {
+                if (now - job.startMillis >= threshold) {
+                    System.out.println("[" + job.id + "] laeuft seit " + (now - job.startMillis) / 1000 + " s: " + job.line);
+                    reported = true;
+                }
+            }
+            if (reported) {
+                System.out.println(progress.get());
+            }
+            scheduleProgress();
+        }, progressSeconds, TimeUnit.SECONDS);
+    }
+}
@@ -26,26 +26,37 @@
 
 import java.util.Scanner;
 
+// Im Batch-Modus kommen die Befehle ohne Prompt von stdin; am Ende der Eingabe wird auf alle Jobs gewartet und beendet
 public class ConsoleReader implements Runnable {
 
     private final IInputHandler handler;
+    private final boolean batch;
     private String prompt;
 
     public ConsoleReader(IInputHandler handler) {
+        this(handler, false);
+    }
+
+    public ConsoleReader(IInputHandler handler, boolean batch) {
         this.handler = handler;
-        prompt = "> ";
+        this.batch = batch;
+        prompt = batch ? "" : "> ";
     }
 
     @Override
     public void run() {
         final Scanner in = new Scanner(System.in);
         System.out.print(prompt);
-        while (in.hasNext()) {
+        while (in.hasNextLine()) {
             final String line = in.nextLine();
             handler.handle(line);
             if (line.startsWith("quit"))
-                break;
+                return;
             System.out.print(prompt);
         }
+        if (batch) {
+            handler.handle("wait jobs");
+            handler.handle("quit");
+        }
     }
 }
@@ -0,0 +1,114 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.LongSupplier;
+
+// Worker-Seite des Koordinator-Protokolls. Meldet sich an, uebernimmt Zuteilungen und schickt alle
+// paar Sekunden den Status, der dem Koordinator gleichzeitig als Lebenszeichen dient; der Koordinator bestaetigt
+// jeden Status. Bleibt die Bestaetigung aus oder reisst die Verbindung ab, gibt der Worker seine Boxen auf, bevor
+// der Koordinator den Nummernbereich an einen anderen Worker vergeben kann.
+public class CoordinatorClient implements Runnable {
+
+    public interface AssignmentListener {
+        void assigned(Assignment assignment);
+    }
+
+    private static final long STATUS_INTERVAL_MILLIS = 5000;
+    private static final long RETRY_MILLIS = 5000;
+    // Kuerzer als die Frist, nach der der Koordinator einen stummen Worker aufgibt
+    private static final int SESSION_TIMEOUT_MILLIS = 12000;
+
+    private final String host;
+    private final int port;
+    private final String name;
+    private final AssignmentListener listener;
+    private final Runnable lost;
+    private final LongSupplier running;
+    private final LongSupplier connected;
+    private volatile boolean run = true;
+    private volatile Socket socket;
+
+    // lost laeuft, wenn die Sitzung endet; der Worker muss dann seine Boxen stoppen
+    public CoordinatorClient(String address, AssignmentListener listener, Runnable lost, LongSupplier running, LongSupplier connected) {
+        int idx = address.lastIndexOf(':');
+        if (idx < 1) {
+            throw new IllegalArgumentException("Koordinator als host:port angeben: " + address);
+        }
+        this.host = address.substring(0, idx);
+        this.port = Integer.parseInt(address.substring(idx + 1));
+        this.name = ManagementFactory.getRuntimeMXBean().getName().replace(' ', '_');
+        this.listener = listener;
+        this.lost = lost;
+        this.running = running;
+        this.connected = connected;
+    }
+
+    @Override
+    public void run() {
+        while (run) {
+            try (Socket s = new Socket(host, port)) {
+                socket = s;
+                session(s);
+            } catch (IOException e) {
+                if (run) {
+                    System.err.println("Koordinator " + host + ":" + port + " nicht erreichbar: " + e.getMessage());
+                }
+            }
+            if (run) {
+                try { Thread.sleep(RETRY_MILLIS); } catch (InterruptedException e) {}
+            }
+        }
+    }
+
+    public void stop() {
+        run = false;
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+        } catch (IOException e) {
+        }
+    }
+
+    private void session(Socket s) throws IOException {
+        PrintWriter out = new PrintWriter(s.getOutputStream(), true);
+        out.println("HELLO " + name);
+        Thread status = new Thread(() -> {
+            while (run && !s.isClosed()) {
+                out.println("STATUS " + running.getAsLong() + " " + connected.getAsLong());
+                try { Thread.sleep(STATUS_INTERVAL_MILLIS); } catch (InterruptedException e) { return; }
+            }
+        }, "coordinator-status");
+        status.setDaemon(true);
+        status.start();
+        s.setSoTimeout(SESSION_TIMEOUT_MILLIS);
+        boolean assigned = false;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith(Assignment.COMMAND)) {
+                    Assignment assignment = Assignment.parse(line);
+                    System.out.println("Zuteilung vom Koordinator: " + assignment);
+                    listener.assigned(assignment);
+                    assigned = true;
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            System.err.println("Koordinator bestaetigt den Status nicht mehr");
+        } finally {
+            status.interrupt();
+            if (assigned) {
+                System.err.println("Verbindung zum Koordinator getrennt, Boxen werden gestoppt");
+                lost.run();
+            }
+        }
+        if (!assigned) {
+            System.err.println("Verbindung zum Koordinator getrennt");
+        }
+    }
+}
@@ -0,0 +1,157 @@
+import eu.chargetime.simulator.ChargeBox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+
+// Alle laufenden ChargeBoxen, abgelegt nach ihrer Nummer
+public class Fleet {
+
+    public interface Starter {
+        ChargeBox start(int id, String identity);
+    }
+
+    private final IdentityAllocator allocator;
+    private final IdentityFormat format;
+    private final Starter starter;
+    private final FleetShutdown shutdown;
+    private ChargeBox[] boxes = new ChargeBox[1024];
+
+    public Fleet(IdentityAllocator allocator, IdentityFormat format, Starter starter, FleetShutdown shutdown) {
+        this.allocator = allocator;
+        this.format = format;
+        this.starter = starter;
+        this.shutdown = shutdown;
+    }
+
+    // Beim Reduzieren wird ausserhalb der Sperre auf das Herunterfahren gewartet, die Flotte bleibt bedienbar
+    public void scaleTo(int count) {
+        final List<ChargeBox> removed;
+        synchronized (this) {
+            if (count < 0 || count > allocator.capacity()) {
+                System.err.println("count invalid: " + count + " (max " + allocator.capacity() + ")");
+                return;
+            }
+            final int size = allocator.size();
+            if (size == count) {
+                System.out.println("Anzahl unveraendert: " + count);
+                return;
+            }
+            if (size < count) {
+                System.out.println("Anzahl von " + size + " wird um " + (count - size) + " erhoeht");
+                resize(count);
+                System.out.println("Erhoehung done: " + allocator.size());
+                return;
+            }
+            System.out.println("Anzahl von " + size + " wird um " + (size - count) + " reduziert");
+            removed = remove(size - count);
+        }
+        System.out.println(shutdown.stop(removed));
+        System.out.println("Reduzierung done: " + size());
+    }
+
+    // Wie scaleTo, aber ohne Ausgabe und ohne zu warten, fuer Aufrufer die viele kleine Schritte machen
+    public synchronized void resize(int count) {
+        final int target = Math.max(0, Math.min(count, allocator.capacity()));
+        final int size = allocator.size();
+        if (size > target) {
+            shutdown.stopInBackground(remove(size - target));
+        } else if (size < target) {
+            for (int id : allocator.allocate(target - size)) {
+                put(id, starter.start(id, format.format(id)));
+            }
+        }
+    }
+
+    public synchronized List<ChargeBox> remove(int count) {
+        final int[] ids = allocator.releaseHighest(count);
+        final List<ChargeBox> removed = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            final int slot = id - allocator.getFirst();
+            removed.add(boxes[slot]);
+            boxes[slot] = null;
+        }
+        return removed;
+    }
+
+    public synchronized List<ChargeBox> removeAll() {
+        return remove(allocator.size());
+    }
+
+    public synchronized ChargeBox get(int id) {
+        final int slot = id - allocator.getFirst();
+        return slot >= 0 && slot < boxes.length ? boxes[slot] : null;
+    }
+
+    public ChargeBox get(String identity) {
+        return get(format.parse(identity));
+    }
+
+    // Belegte Nummern sind dicht ab first, daher trifft eine Zufallsnummer unter size fast immer eine Box
+    public synchronized ChargeBox random(SplittableRandom random) {
+        final int size = allocator.size();
+        for (int attempt = 0; size > 0 && attempt < 8; attempt++) {
+            final ChargeBox box = boxes[random.nextInt(size)];
+            if (box != null) {
+                return box;
+            }
+        }
+        return null;
+    }
+
+    // Alle Boxen mit Nummern von from bis to einschliesslich, Luecken werden uebersprungen
+    public synchronized List<ChargeBox> range(int from, int to) {
+        final int start = Math.max(0, from - allocator.getFirst());
+        final int end = Math.min(boxes.length - 1, to - allocator.getFirst());
+        final List<ChargeBox> selected = new ArrayList<>(Math.max(0, end - start + 1));
+        for (int slot = start; slot <= end; slot++) {
+            if (boxes[slot] != null) {
+                selected.add(boxes[slot]);
+            }
+        }
+        return selected;
+    }
+
+    public synchronized List<ChargeBox> snapshot() {
+        return range(allocator.getFirst(), allocator.getFirst() + boxes.length - 1);
+    }
+
+    public synchronized int size() {
+        return allocator.size();
+    }
+
+    public synchronized void forEach(Consumer<ChargeBox> action) {
+        for (ChargeBox box : boxes) {
+            if (box != null) {
+                action.accept(box);
+            }
+        }
+    }
+
+    // Stoppt alle Boxen und wartet darauf, laengstens bis zur Frist
+    public FleetShutdown.Report stopAll() {
+        return shutdown.stop(removeAll());
+    }
+
+    public FleetShutdown getShutdown() {
+        return shutdown;
+    }
+
+    public IdentityFormat getFormat() {
+        return format;
+    }
+
+    public IdentityAllocator getAllocator() {
+        return allocator;
+    }
+
+    private void put(int id, ChargeBox box) {
+        final int slot = id - allocator.getFirst();
+        if (slot >= boxes.length) {
+            boxes = Arrays.copyOf(boxes, Math.max(slot + 1, boxes.length * 2));
+        }
+        boxes[slot] = box;
+    }
+}
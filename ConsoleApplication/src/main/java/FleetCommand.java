@@ -0,0 +1,131 @@
+import eu.chargetime.simulator.ChargeBox;
+import eu.chargetime.simulator.software.ICommand;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+// Konsolenbefehl fuer eine Auswahl von Boxen, z.B. "plugin 1-3000" oder "lock 10%". Die Auswahl wird in Bloecke
+// geteilt, die parallel auf dem Pool laufen; am Ende stehen Anzahl, Zaehler je Ergebnis, Fehler und Dauer.
+public class FleetCommand implements ICommand {
+
+    public interface Action {
+        // Liefert Bits fuer die Zaehler, Bit i zaehlt unter labels[i]
+        int apply(ChargeBox box);
+    }
+
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int MIN_CHUNK = 64;
+
+    private final String name;
+    private final Supplier<Fleet> fleet;
+    private final ExecutorService pool;
+    private final int parallelism;
+    private final String defaultSelection;
+    private final String[] labels;
+    private final Action action;
+    private final SplittableRandom random = new SplittableRandom();
+
+    public FleetCommand(String name, Supplier<Fleet> fleet, ExecutorService pool, int parallelism, String defaultSelection,
+                        Action action, String... labels) {
+        this.name = name;
+        this.fleet = fleet;
+        this.pool = pool;
+        this.parallelism = parallelism;
+        this.defaultSelection = defaultSelection;
+        this.action = action;
+        this.labels = labels;
+    }
+
+    @Override
+    public void execute(String param) {
+        final Fleet target = fleet.get();
+        if (target == null) {
+            System.err.println("Keine Flotte in diesem Modus");
+            return;
+        }
+        final String spec = param == null || param.trim().isEmpty() ? defaultSelection : param.trim();
+        if (spec == null) {
+            System.err.println("Aufruf: " + name + " <all|42|10-200|25%>[,...]");
+            return;
+        }
+        final long start = System.nanoTime();
+        final List<ChargeBox> selected;
+        try {
+            synchronized (random) {
+                selected = TargetSelector.select(target, spec, random);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+        final long selectedAt = System.nanoTime();
+        final AtomicLongArray counts = new AtomicLongArray(labels.length + 1);
+        final AtomicReference<Throwable> firstError = new AtomicReference<>();
+        try {
+            pool.invokeAll(chunks(selected, counts, firstError));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println(name + " abgebrochen");
+            return;
+        }
+        final long done = System.nanoTime();
+        System.out.println(report(selected.size(), counts, selectedAt - start, done - selectedAt));
+        if (firstError.get() != null) {
+            System.err.println("Erster Fehler: " + firstError.get());
+        }
+    }
+
+    private List<Callable<Void>> chunks(List<ChargeBox> selected, AtomicLongArray counts, AtomicReference<Throwable> firstError) {
+        final int size = Math.max(MIN_CHUNK, (selected.size() + parallelism * CHUNKS_PER_THREAD - 1) / (parallelism * CHUNKS_PER_THREAD));
+        final List<Callable<Void>> chunks = new ArrayList<>();
+        for (int from = 0; from < selected.size(); from += size) {
+            final List<ChargeBox> chunk = selected.subList(from, Math.min(selected.size(), from + size));
+            chunks.add(() -> {
+                run(chunk, counts, firstError);
+                return null;
+            });
+        }
+        return chunks;
+    }
+
+    // Zaehlt lokal und schreibt einmal je Block, der letzte Zaehler sind die Fehler
+    private void run(List<ChargeBox> chunk, AtomicLongArray counts, AtomicReference<Throwable> firstError) {
+        final long[] local = new long[labels.length + 1];
+        for (ChargeBox box : chunk) {
+            try {
+                final int bits = action.apply(box);
+                for (int i = 0; i < labels.length; i++) {
+                    if ((bits & (1 << i)) != 0) {
+                        local[i]++;
+                    }
+                }
+            } catch (RuntimeException e) {
+                local[labels.length]++;
+                firstError.compareAndSet(null, e);
+            }
+        }
+        for (int i = 0; i < local.length; i++) {
+            counts.addAndGet(i, local[i]);
+        }
+    }
+
+    private String report(int selected, AtomicLongArray counts, long selectNanos, long runNanos) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(name).append(": ").append(selected).append(" Boxen");
+        for (int i = 0; i < labels.length; i++) {
+            sb.append(", ").append(labels[i]).append(": ").append(counts.get(i));
+        }
+        sb.append(", Fehler: ").append(counts.get(labels.length));
+        sb.append(String.format(" (Auswahl %.1f ms, Ausfuehrung %.1f ms", selectNanos / 1e6, runNanos / 1e6));
+        if (selected > 0 && runNanos > 0) {
+            sb.append(String.format(", %.0f Boxen/s", selected * 1e9 / runNanos));
+        }
+        return sb.append(')').toString();
+    }
+}
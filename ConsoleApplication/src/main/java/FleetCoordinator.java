@@ -0,0 +1,218 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Verteilt die Flotte auf Worker-Prozesse. Jeder Worker bekommt einen festen Slot und damit einen eigenen
+// Nummernbereich; beim Beitritt oder Wegfall eines Workers werden nur die Zielanzahlen neu verteilt.
+// Protokoll (zeilenbasiert): Worker -> HELLO <name>, STATUS <laufend> <verbunden>; Koordinator -> ASSIGN ...,
+// ALIVE als Antwort auf jeden Status. Der Slot eines weggefallenen Workers bleibt eine Weile fuer ihn reserviert:
+// meldet er sich unter gleichem Namen wieder, bekommt er ihn zurueck, sonst wird er erst nach der Frist neu
+// vergeben, wenn der Worker seine Boxen laengst gestoppt hat.
+public class FleetCoordinator implements Runnable {
+
+    private static final int WORKER_TIMEOUT_MILLIS = 15000;
+    private static final long SLOT_GRACE_MILLIS = 30000;
+
+    private final int port;
+    private final IdentityFormat format;
+    private final int firstId;
+    private final int rangeSize;
+    private final String uriOCPPServer;
+    private WorkerConnection[] slots = new WorkerConnection[0];
+    // Je Slot der Name des Workers, der ihn zuletzt hatte, und bis wann er fuer ihn reserviert ist
+    private String[] heldFor = new String[0];
+    private long[] heldUntil = new long[0];
+    private int target;
+    private volatile ServerSocket serverSocket;
+
+    public FleetCoordinator(int port, IdentityFormat format, int firstId, int rangeSize, String uriOCPPServer) {
+        this.port = port;
+        this.format = format;
+        this.firstId = firstId;
+        this.rangeSize = rangeSize;
+        this.uriOCPPServer = uriOCPPServer;
+    }
+
+    @Override
+    public void run() {
+        try (ServerSocket server = new ServerSocket(port)) {
+            serverSocket = server;
+            System.out.println("Koordinator wartet auf Worker an Port " + port);
+            while (!server.isClosed()) {
+                Socket socket = server.accept();
+                socket.setSoTimeout(WORKER_TIMEOUT_MILLIS);
+                Thread thread = new Thread(new WorkerConnection(socket), "worker-" + socket.getRemoteSocketAddress());
+                thread.setDaemon(true);
+                thread.start();
+            }
+        } catch (IOException e) {
+            if (serverSocket == null || !serverSocket.isClosed()) {
+                System.err.println("Koordinator beendet: " + e);
+            }
+        }
+    }
+
+    public void stop() {
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+        }
+        synchronized (this) {
+            for (WorkerConnection worker : slots) {
+                if (worker != null) {
+                    worker.close();
+                }
+            }
+        }
+    }
+
+    public synchronized void setTarget(int count) {
+        if (count < 0) {
+            System.err.println("count invalid: " + count);
+            return;
+        }
+        target = count;
+        rebalance();
+    }
+
+    public synchronized void printWorkers() {
+        int workers = 0;
+        long running = 0;
+        long connected = 0;
+        for (int slot = 0; slot < slots.length; slot++) {
+            WorkerConnection worker = slots[slot];
+            if (worker != null) {
+                workers++;
+                running += worker.running;
+                connected += worker.connected;
+                System.out.println(String.format("  #%d %s %s laufend=%d verbunden=%d", slot, worker.name,
+                        worker.assignment, worker.running, worker.connected));
+            }
+        }
+        System.out.println("Worker: " + workers + ", Ziel: " + target + ", laufend: " + running + ", verbunden: " + connected);
+    }
+
+    private synchronized void join(WorkerConnection worker) {
+        final long now = System.currentTimeMillis();
+        int slot = -1;
+        for (int i = 0; i < slots.length && slot < 0; i++) {
+            if (slots[i] == null && worker.name.equals(heldFor[i])) {
+                slot = i;
+            }
+        }
+        for (int i = 0; i < slots.length && slot < 0; i++) {
+            if (slots[i] == null && (heldFor[i] == null || heldUntil[i] <= now)) {
+                slot = i;
+            }
+        }
+        if (slot < 0) {
+            slot = slots.length;
+            slots = Arrays.copyOf(slots, slot + 1);
+            heldFor = Arrays.copyOf(heldFor, slot + 1);
+            heldUntil = Arrays.copyOf(heldUntil, slot + 1);
+        }
+        slots[slot] = worker;
+        heldFor[slot] = worker.name;
+        worker.slot = slot;
+        System.out.println("Worker " + worker.name + " beigetreten als #" + slot);
+        rebalance();
+    }
+
+    private synchronized void leave(WorkerConnection worker) {
+        if (worker.slot < 0 || slots[worker.slot] != worker) {
+            return;
+        }
+        slots[worker.slot] = null;
+        heldUntil[worker.slot] = System.currentTimeMillis() + SLOT_GRACE_MILLIS;
+        System.out.println("Worker " + worker.name + " (#" + worker.slot + ") weg, verteile neu");
+        rebalance();
+    }
+
+    private void rebalance() {
+        int workers = 0;
+        for (WorkerConnection worker : slots) {
+            if (worker != null) {
+                workers++;
+            }
+        }
+        if (workers == 0) {
+            return;
+        }
+        if (target > (long) workers * rangeSize) {
+            System.err.println("Ziel " + target + " uebersteigt " + workers + " x " + rangeSize + " Nummern, wird begrenzt");
+        }
+        int remaining = target;
+        int left = workers;
+        for (int slot = 0; slot < slots.length; slot++) {
+            WorkerConnection worker = slots[slot];
+            if (worker == null) {
+                continue;
+            }
+            int share = Math.min(rangeSize, (remaining + left - 1) / left);
+            remaining -= share;
+            left--;
+            int first = firstId + slot * rangeSize;
+            worker.assign(new Assignment(format.getPrefix(), format.getWidth(), first, first + rangeSize - 1, share, uriOCPPServer));
+        }
+    }
+
+    private class WorkerConnection implements Runnable {
+        private final Socket socket;
+        private PrintWriter out;
+        private String name;
+        private int slot = -1;
+        private Assignment assignment;
+        private volatile long running;
+        private volatile long connected;
+
+        WorkerConnection(Socket socket) {
+            this.socket = socket;
+            this.name = String.valueOf(socket.getRemoteSocketAddress());
+        }
+
+        @Override
+        public void run() {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+                out = new PrintWriter(socket.getOutputStream(), true);
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String[] parts = line.trim().split(" ");
+                    if ("HELLO".equals(parts[0]) && slot < 0) {
+                        if (parts.length > 1) {
+                            name = parts[1];
+                        }
+                        join(this);
+                    } else if ("STATUS".equals(parts[0]) && parts.length == 3) {
+                        running = Long.parseLong(parts[1]);
+                        connected = Long.parseLong(parts[2]);
+                        out.println("ALIVE");
+                    }
+                }
+            } catch (SocketTimeoutException e) {
+                System.err.println("Worker " + name + " antwortet nicht mehr");
+            } catch (IOException | NumberFormatException e) {
+                System.err.println("Worker " + name + ": " + e);
+            } finally {
+                close();
+                leave(this);
+            }
+        }
+
+        void assign(Assignment assignment) {
+            this.assignment = assignment;
+            out.println(assignment.toLine());
+        }
+
+        void close() {
+            try { socket.close(); } catch (IOException e) {}
+        }
+    }
+}
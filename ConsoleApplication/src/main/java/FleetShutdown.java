@@ -0,0 +1,202 @@
+import eu.chargetime.simulator.ChargeBox;
+import eu.chargetime.simulator.scheduling.Scheduler;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Faehrt viele Boxen parallel herunter: hoechstens window Boxen schliessen gleichzeitig, jede wartet erst auf ihre
+// offenen Antworten und schliesst dann die Verbindung. Was bis zur Frist nicht sauber zu ist, wird hart gestoppt.
+// Das Fenster gilt auch fuer das Herunterfahren im Hintergrund, gemeinsam fuer alle Aufrufe, die dort gleichzeitig laufen.
+public class FleetShutdown {
+
+    public static final class Report {
+        public final int boxes;
+        public final int clean;
+        public final int unclean;
+        public final int forced;
+        public final long millis;
+
+        Report(int boxes, int clean, int unclean, int forced, long millis) {
+            this.boxes = boxes;
+            this.clean = clean;
+            this.unclean = unclean;
+            this.forced = forced;
+            this.millis = millis;
+        }
+
+        @Override
+        public String toString() {
+            return boxes + " Boxen in " + millis + " ms gestoppt, sauber: " + clean + ", mit Fehler: " + unclean
+                    + ", nach Frist hart: " + forced;
+        }
+    }
+
+    private final int window;
+    private final long deadlineMillis;
+    private final Scheduler scheduler;
+    // Hintergrund: Boxen, die auf einen Platz im Fenster warten, und wie viele gerade schliessen
+    private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+    private int active;
+    private int backgroundBoxes;
+    private int backgroundClean;
+    private int backgroundUnclean;
+    private int backgroundForced;
+
+    public FleetShutdown(int window, long deadlineMillis, Scheduler scheduler) {
+        if (window < 1 || deadlineMillis < 0) {
+            throw new IllegalArgumentException("Ungueltiges Herunterfahren: Fenster " + window + ", Frist " + deadlineMillis + " ms");
+        }
+        this.window = window;
+        this.deadlineMillis = deadlineMillis;
+        this.scheduler = scheduler;
+    }
+
+    // Blockiert bis alle Boxen zu sind, laengstens bis zur Frist
+    public Report stop(List<ChargeBox> boxes) {
+        final long start = System.currentTimeMillis();
+        final long deadline = start + deadlineMillis;
+        final Semaphore permits = new Semaphore(window);
+        final CountDownLatch done = new CountDownLatch(boxes.size());
+        final AtomicInteger clean = new AtomicInteger();
+        final AtomicInteger unclean = new AtomicInteger();
+        int started = 0;
+        try {
+            for (; started < boxes.size(); started++) {
+                if (!permits.tryAcquire(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+                boxes.get(started).shutdown().whenComplete((closed, throwable) -> {
+                    (throwable == null && closed ? clean : unclean).incrementAndGet();
+                    permits.release();
+                    done.countDown();
+                });
+            }
+            for (int i = started; i < boxes.size(); i++) {
+                done.countDown();
+            }
+            done.await(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        final int cleanCount = clean.get();
+        final int uncleanCount = unclean.get();
+        // Fuer schon geschlossene Boxen ist stop() wirkungslos
+        for (ChargeBox box : boxes) {
+            box.stop();
+        }
+        return new Report(boxes.size(), cleanCount, uncleanCount, boxes.size() - cleanCount - uncleanCount,
+                System.currentTimeMillis() - start);
+    }
+
+    // Fuer Aufrufer, die nicht warten koennen, z.B. einen Lastprofil-Takt: sauber schliessen, hoechstens window Boxen
+    // gleichzeitig ueber alle Hintergrund-Aufrufe, nach der Frist hart. Der Bericht kommt, wenn alle Boxen zu sind.
+    // Die Frist laeuft auf dem uebergebenen Scheduler, den Program auf der Wanduhr haelt; bei stop() ebenso.
+    public CompletionStage<Report> stopInBackground(List<ChargeBox> boxes) {
+        final Batch batch = new Batch(boxes.size());
+        if (boxes.isEmpty()) {
+            batch.result.complete(new Report(0, 0, 0, 0, 0));
+            return batch.result;
+        }
+        synchronized (this) {
+            for (ChargeBox box : boxes) {
+                queue.add(new Entry(batch, box));
+            }
+        }
+        batch.timeout = scheduler.newTimeout(() -> expire(batch, boxes), deadlineMillis, TimeUnit.MILLISECONDS);
+        pump();
+        return batch.result;
+    }
+
+    // Hintergrund-Herunterfahren seit dem Start, wie bei stop() gezaehlt
+    public synchronized String backgroundStatus() {
+        return "im Hintergrund " + backgroundBoxes + " Boxen gestoppt, sauber: " + backgroundClean + ", mit Fehler: "
+                + backgroundUnclean + ", nach Frist hart: " + backgroundForced + ", wartend: " + (queue.size() + active);
+    }
+
+    // Die Antworten kommen asynchron an, so ruft eine sofort fertige Box pump() nicht rekursiv auf
+    private void pump() {
+        while (true) {
+            final Entry entry;
+            synchronized (this) {
+                if (active >= window || queue.isEmpty()) {
+                    return;
+                }
+                entry = queue.poll();
+                active++;
+            }
+            entry.box.shutdown().whenCompleteAsync((closed, throwable) -> finished(entry, throwable == null && closed));
+        }
+    }
+
+    private void finished(Entry entry, boolean clean) {
+        final Batch batch = entry.batch;
+        synchronized (this) {
+            active--;
+            if (clean) {
+                batch.clean++;
+            } else {
+                batch.unclean++;
+            }
+            if (batch.clean + batch.unclean == batch.boxes && !batch.result.isDone()) {
+                report(batch, 0);
+            }
+        }
+        pump();
+    }
+
+    private void expire(Batch batch, List<ChargeBox> boxes) {
+        synchronized (this) {
+            if (batch.result.isDone()) {
+                return;
+            }
+            queue.removeIf(entry -> entry.batch == batch);
+            report(batch, batch.boxes - batch.clean - batch.unclean);
+        }
+        // Fuer schon geschlossene Boxen ist stop() wirkungslos
+        for (ChargeBox box : boxes) {
+            box.stop();
+        }
+        pump();
+    }
+
+    // Unter der Sperre
+    private void report(Batch batch, int forced) {
+        if (batch.timeout != null) {
+            batch.timeout.cancel();
+        }
+        backgroundBoxes += batch.boxes;
+        backgroundClean += batch.clean;
+        backgroundUnclean += batch.unclean;
+        backgroundForced += forced;
+        batch.result.complete(new Report(batch.boxes, batch.clean, batch.unclean, forced, System.currentTimeMillis() - batch.start));
+    }
+
+    private static final class Batch {
+        final int boxes;
+        final long start = System.currentTimeMillis();
+        final CompletableFuture<Report> result = new CompletableFuture<>();
+        volatile Scheduler.Timeout timeout;
+        int clean;
+        int unclean;
+
+        Batch(int boxes) {
+            this.boxes = boxes;
+        }
+    }
+
+    private static final class Entry {
+        final Batch batch;
+        final ChargeBox box;
+
+        Entry(Batch batch, ChargeBox box) {
+            this.batch = batch;
+            this.box = box;
+        }
+    }
+}
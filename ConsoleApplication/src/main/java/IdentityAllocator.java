@@ -0,0 +1,99 @@
+import java.util.BitSet;
+
+// Vergibt die Nummern der ChargeBoxen aus einem BitSet. Die Hinweise auf die kleinste freie und die
+// groesste belegte Nummer halten allocate/release amortisiert bei O(1), auch bei 100k+ Boxen.
+public class IdentityAllocator {
+
+    private final int first;
+    private final int last;
+    private final BitSet used = new BitSet();
+    private int lowestFree;
+    private int highestUsed = -1;
+    private int size;
+
+    public IdentityAllocator(int first, int last) {
+        if (first < 0 || last < first) {
+            throw new IllegalArgumentException("Ungueltiger Bereich: " + first + ".." + last);
+        }
+        this.first = first;
+        this.last = last;
+    }
+
+    public synchronized int allocate() {
+        final int index = used.nextClearBit(lowestFree);
+        if (index > last - first) {
+            throw new IllegalStateException("Keine freie Nummer im Bereich " + first + ".." + last);
+        }
+        used.set(index);
+        lowestFree = index + 1;
+        highestUsed = Math.max(highestUsed, index);
+        size++;
+        return first + index;
+    }
+
+    public synchronized int[] allocate(int count) {
+        if (count > available()) {
+            throw new IllegalStateException("Nur " + available() + " freie Nummern im Bereich " + first + ".." + last);
+        }
+        final int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = allocate();
+        }
+        return ids;
+    }
+
+    public synchronized boolean release(int id) {
+        final int index = id - first;
+        if (index < 0 || index > last - first || !used.get(index)) {
+            return false;
+        }
+        used.clear(index);
+        lowestFree = Math.min(lowestFree, index);
+        if (index == highestUsed) {
+            highestUsed = used.previousSetBit(index);
+        }
+        size--;
+        return true;
+    }
+
+    // Gibt die hoechsten Nummern zuerst frei, damit der belegte Bereich dicht bleibt
+    public synchronized int[] releaseHighest(int count) {
+        final int[] ids = new int[Math.min(count, size)];
+        for (int i = 0; i < ids.length; i++) {
+            final int index = highestUsed;
+            used.clear(index);
+            highestUsed = used.previousSetBit(index);
+            ids[i] = first + index;
+        }
+        size -= ids.length;
+        if (ids.length > 0) {
+            lowestFree = Math.min(lowestFree, ids[ids.length - 1] - first);
+        }
+        return ids;
+    }
+
+    public synchronized boolean isAllocated(int id) {
+        final int index = id - first;
+        return index >= 0 && index <= last - first && used.get(index);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized int available() {
+        return capacity() - size;
+    }
+
+    public int capacity() {
+        return last - first + 1;
+    }
+
+    public int getFirst() {
+        return first;
+    }
+
+    public int getLast() {
+        return last;
+    }
+}
@@ -0,0 +1,60 @@
+// Baut die Identity aus Praefix und links mit Nullen aufgefuellter Nummer, ohne Zwischenstrings
+public class IdentityFormat {
+
+    private final String prefix;
+    private final int width;
+
+    public IdentityFormat(String prefix, int width) {
+        if (width < 1 || width > 10) {
+            throw new IllegalArgumentException("Breite muss zwischen 1 und 10 liegen: " + width);
+        }
+        this.prefix = prefix;
+        this.width = width;
+    }
+
+    public String format(int id) {
+        final int digits = digits(id);
+        final int padding = Math.max(0, width - digits);
+        final char[] chars = new char[prefix.length() + padding + digits];
+        prefix.getChars(0, prefix.length(), chars, 0);
+        int pos = prefix.length();
+        for (int i = 0; i < padding; i++) {
+            chars[pos++] = '0';
+        }
+        int value = id;
+        for (int i = chars.length - 1; i >= pos; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return new String(chars);
+    }
+
+    // Liefert -1, wenn die Identity nicht zu diesem Format passt
+    public int parse(String identity) {
+        if (identity == null || !identity.startsWith(prefix) || identity.length() == prefix.length()) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(identity.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    private static int digits(int value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+}
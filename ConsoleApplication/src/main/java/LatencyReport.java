@@ -0,0 +1,32 @@
+import eu.chargetime.simulator.software.metrics.LatencyHistogram;
+import eu.chargetime.simulator.software.ocpp.OcppAction;
+import eu.chargetime.simulator.software.ocpp.OcppMetrics;
+
+// Tabelle der Round-Trip-Zeiten je Nachrichtentyp, fuer den latency-Befehl und die periodische Zusammenfassung
+public class LatencyReport {
+
+    private final OcppMetrics metrics;
+
+    public LatencyReport(OcppMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public String format() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-20s %10s %10s %10s %10s %10s %10s %10s%n", "message", "count", "p50 ms", "p99 ms", "p99.9 ms", "max ms",
+                "timeouts", "rejected"));
+        for (OcppAction action : OcppAction.values()) {
+            LatencyHistogram.Snapshot snapshot = metrics.getLatency(action).snapshot();
+            sb.append(String.format("%-20s %10d %10.3f %10.3f %10.3f %10.3f %10d %10d%n", action.getAction(), snapshot.getCount(),
+                    millis(snapshot.percentileMicros(50)), millis(snapshot.percentileMicros(99)),
+                    millis(snapshot.percentileMicros(99.9)), millis(snapshot.getMaxMicros()),
+                    metrics.getTimeouts(action), metrics.getRejected(action)));
+        }
+        sb.append(String.format("in flight: %d, queued: %d%n", metrics.getInFlight(), metrics.getQueued()));
+        return sb.toString();
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
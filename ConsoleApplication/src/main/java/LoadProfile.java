@@ -0,0 +1,231 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Lastprofil aus einer Textdatei, eine Phase pro Zeile, # leitet Kommentare ein:
+//
+//   seed 42
+//   defaults heartbeat=300
+//   ramp    to=5000 rate=100/s
+//   plateau for=10m plugin=2/s unplug=2/s
+//   spike   to=15000 over=30s hold=2m back=1m
+//   soak    for=4h transactions=30/m duration=20m heartbeat=60 report=5m
+//   ramp    to=0 over=2m
+//
+// ramp faehrt linear auf to, entweder mit rate Boxen pro Sekunde oder ueber die Dauer over, ohne beides sofort.
+// plateau und soak halten die Anzahl fuer die Dauer for, soak meldet dabei regelmaessig den Stand.
+// spike geht ueber over auf to, haelt hold lang und kehrt ueber back zur Anzahl davor zurueck.
+// In jeder Phase: plugin/unplug/transactions als Rate (n, n/s, n/m, n/h), duration als Dauer einer Ladung,
+// heartbeat als fest vorgegebenes Intervall in Sekunden (0 = wie vom Server bestaetigt), report als Abstand
+// der Statusmeldungen. defaults setzt diese Werte fuer alle folgenden Phasen.
+public class LoadProfile {
+
+    public enum Type { RAMP, PLATEAU, SPIKE, SOAK }
+
+    public static final class Phase {
+        final Type type;
+        final int line;
+        final int target;
+        final double rate;
+        final long overMillis;
+        final long holdMillis;
+        final long backMillis;
+        final double pluginRate;
+        final double unplugRate;
+        final double transactionRate;
+        final long sessionMillis;
+        final int heartbeat;
+        final long reportMillis;
+
+        private Phase(Type type, int line, Map<String, String> values) {
+            this.type = type;
+            this.line = line;
+            this.target = type == Type.RAMP || type == Type.SPIKE ? count(required(values, "to")) : -1;
+            this.rate = values.containsKey("rate") ? rate(values.get("rate")) : 0;
+            this.overMillis = millis(values.getOrDefault("over", "0"));
+            this.holdMillis = type == Type.SPIKE ? millis(required(values, "hold"))
+                    : type == Type.RAMP ? 0 : millis(required(values, "for"));
+            this.backMillis = values.containsKey("back") ? millis(values.get("back")) : overMillis;
+            this.pluginRate = rate(values.getOrDefault("plugin", "0"));
+            this.unplugRate = rate(values.getOrDefault("unplug", "0"));
+            this.transactionRate = rate(values.getOrDefault("transactions", "0"));
+            this.sessionMillis = millis(values.getOrDefault("duration", "30m"));
+            this.heartbeat = count(values.getOrDefault("heartbeat", "0"));
+            this.reportMillis = millis(values.getOrDefault("report", type == Type.SOAK ? "1m" : "0"));
+            if (type == Type.RAMP && rate > 0 && values.containsKey("over")) {
+                throw new IllegalArgumentException("rate und over schliessen sich aus");
+            }
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        @Override
+        public String toString() {
+            switch (type) {
+                case RAMP:
+                    return "ramp auf " + target + (rate > 0 ? " mit " + rate + "/s" : overMillis > 0 ? " ueber " + overMillis / 1000 + " s" : " sofort");
+                case SPIKE:
+                    return "spike auf " + target + " fuer " + holdMillis / 1000 + " s";
+                default:
+                    return type.name().toLowerCase() + " fuer " + holdMillis / 1000 + " s";
+            }
+        }
+    }
+
+    private final long seed;
+    private final List<Phase> phases;
+
+    private LoadProfile(long seed, List<Phase> phases) {
+        this.seed = seed;
+        this.phases = Collections.unmodifiableList(phases);
+    }
+
+    public static LoadProfile read(Path file) throws IOException {
+        return parse(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    public static LoadProfile parse(List<String> lines) {
+        long seed = System.nanoTime();
+        final Map<String, String> defaults = new HashMap<>();
+        final List<Phase> phases = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            final int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            final String[] parts = line.split("\\s+");
+            try {
+                if ("seed".equals(parts[0]) && parts.length == 2) {
+                    seed = Long.parseLong(parts[1]);
+                } else if ("defaults".equals(parts[0])) {
+                    defaults.putAll(values(parts));
+                } else {
+                    final Map<String, String> values = new HashMap<>(defaults);
+                    values.putAll(values(parts));
+                    phases.add(new Phase(type(parts[0]), i + 1, values));
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Zeile " + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+        if (phases.isEmpty()) {
+            throw new IllegalArgumentException("Profil enthaelt keine Phase");
+        }
+        return new LoadProfile(seed, phases);
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public List<Phase> getPhases() {
+        return phases;
+    }
+
+    // Groesste Anzahl Boxen, die das Profil irgendwann anfordert
+    public int maxTarget() {
+        int max = 0;
+        for (Phase phase : phases) {
+            max = Math.max(max, phase.target);
+        }
+        return max;
+    }
+
+    private static Type type(String name) {
+        try {
+            return Type.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unbekannte Phase " + name);
+        }
+    }
+
+    private static Map<String, String> values(String[] parts) {
+        final Map<String, String> values = new HashMap<>();
+        for (int i = 1; i < parts.length; i++) {
+            final int idx = parts[i].indexOf('=');
+            if (idx <= 0) {
+                throw new IllegalArgumentException("Erwartet name=wert: " + parts[i]);
+            }
+            values.put(parts[i].substring(0, idx), parts[i].substring(idx + 1));
+        }
+        return values;
+    }
+
+    private static String required(Map<String, String> values, String name) {
+        final String value = values.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException(name + "= fehlt");
+        }
+        return value;
+    }
+
+    private static int count(String value) {
+        final int count = Integer.parseInt(value);
+        if (count < 0) {
+            throw new IllegalArgumentException("Negative Anzahl: " + value);
+        }
+        return count;
+    }
+
+    // 500ms, 30s, 10m, 2h oder nur Sekunden
+    static long millis(String value) {
+        final long millis;
+        if (value.endsWith("ms")) {
+            millis = Long.parseLong(value.substring(0, value.length() - 2));
+        } else if (value.endsWith("s")) {
+            millis = Long.parseLong(value.substring(0, value.length() - 1)) * 1000;
+        } else if (value.endsWith("m")) {
+            millis = Long.parseLong(value.substring(0, value.length() - 1)) * 60000;
+        } else if (value.endsWith("h")) {
+            millis = Long.parseLong(value.substring(0, value.length() - 1)) * 3600000;
+        } else {
+            millis = Long.parseLong(value) * 1000;
+        }
+        if (millis < 0) {
+            throw new IllegalArgumentException("Negative Dauer: " + value);
+        }
+        return millis;
+    }
+
+    // Ereignisse pro Sekunde aus n, n/s, n/m oder n/h
+    static double rate(String value) {
+        final int idx = value.indexOf('/');
+        final double amount = Double.parseDouble(idx < 0 ? value : value.substring(0, idx));
+        final String unit = idx < 0 ? "s" : value.substring(idx + 1);
+        final double perSecond;
+        switch (unit) {
+            case "s":
+                perSecond = amount;
+                break;
+            case "m":
+                perSecond = amount / 60;
+                break;
+            case "h":
+                perSecond = amount / 3600;
+                break;
+            default:
+                throw new IllegalArgumentException("Unbekannte Einheit in " + value);
+        }
+        if (perSecond < 0 || Double.isNaN(perSecond)) {
+            throw new IllegalArgumentException("Ungueltige Rate: " + value);
+        }
+        return perSecond;
+    }
+}
@@ -0,0 +1,231 @@
+import eu.chargetime.simulator.ChargeBox;
+import eu.chargetime.simulator.FleetServices;
+import eu.chargetime.simulator.scheduling.Scheduler;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Spielt ein LoadProfile auf dem Timing-Rad ab. Jeder Takt rechnet Soll-Anzahl und faellige Ereignisse aus der
+// seit Phasenbeginn vergangenen Zeit, so laufen Rampen und Raten auch bei verspaeteten Takten nicht weg.
+// Phasen schliessen nahtlos an das geplante Ende der vorigen an, nicht an den Takt, in dem es bemerkt wurde.
+public class LoadProfileRunner {
+
+    private static final long TICK_MILLIS = 100;
+
+    private final LoadProfile profile;
+    private final Fleet fleet;
+    private final FleetServices services;
+    private final Scheduler scheduler;
+    private final SplittableRandom random;
+    // Offene Ladesitzungen und der Takt, der ihren Stecker zieht
+    private final Map<ChargeBox, Scheduler.Timeout> sessions = new HashMap<>();
+    private volatile boolean running;
+    private Scheduler.Timeout timeout;
+    private long profileStart;
+    private long ticks;
+    private long lastTick;
+
+    private int phaseIndex = -1;
+    private LoadProfile.Phase phase;
+    private long phaseStart;
+    private long phaseMillis;
+    private int startCount;
+    private long nextReport;
+    private double plugins;
+    private double unplugs;
+    private double transactions;
+    private long transactionsStarted;
+
+    public LoadProfileRunner(LoadProfile profile, Fleet fleet, FleetServices services) {
+        this.profile = profile;
+        this.fleet = fleet;
+        this.services = services;
+        this.scheduler = services.getScheduler();
+        this.random = new SplittableRandom(profile.getSeed());
+    }
+
+    public synchronized void start() {
+        if (profile.maxTarget() > fleet.getAllocator().capacity()) {
+            throw new IllegalArgumentException("Profil braucht " + profile.maxTarget() + " Boxen, moeglich sind "
+                    + fleet.getAllocator().capacity());
+        }
+        running = true;
+        profileStart = scheduler.nanoTime();
+        lastTick = profileStart;
+        System.out.println("Profil mit " + profile.getPhases().size() + " Phasen gestartet, seed " + profile.getSeed());
+        nextPhase(profileStart);
+        schedule();
+    }
+
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        for (Scheduler.Timeout session : sessions.values()) {
+            session.cancel();
+        }
+        sessions.clear();
+        applyHeartbeat(0);
+        System.out.println("Profil abgebrochen in " + describe());
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public synchronized String status() {
+        if (!running) {
+            return "Kein Profil aktiv";
+        }
+        return describe() + ", seit " + TimeUnit.NANOSECONDS.toSeconds(scheduler.nanoTime() - phaseStart) + " s, "
+                + fleet.size() + " Boxen, " + services.getReconnectSupervisor().getConnectedCount() + " verbunden, "
+                + transactionsStarted + " Ladungen gestartet, " + fleet.getShutdown().backgroundStatus();
+    }
+
+    private synchronized void tick() {
+        if (!running) {
+            return;
+        }
+        final long now = scheduler.nanoTime();
+        final double seconds = (now - lastTick) / 1e9;
+        lastTick = now;
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(now - phaseStart);
+        while (elapsed >= phaseMillis) {
+            fleet.resize(targetAt(phaseMillis));
+            System.out.println("Phase " + (phaseIndex + 1) + " beendet: " + fleet.size() + " Boxen");
+            if (!nextPhase(phaseStart + TimeUnit.MILLISECONDS.toNanos(phaseMillis))) {
+                return;
+            }
+            elapsed = TimeUnit.NANOSECONDS.toMillis(now - phaseStart);
+        }
+        fleet.resize(targetAt(elapsed));
+        arrivals(seconds);
+        if (phase.reportMillis > 0 && elapsed >= nextReport) {
+            nextReport += phase.reportMillis;
+            System.out.println(status());
+        }
+        schedule();
+    }
+
+    private boolean nextPhase(long start) {
+        final List<LoadProfile.Phase> phases = profile.getPhases();
+        if (++phaseIndex >= phases.size()) {
+            running = false;
+            applyHeartbeat(0);
+            System.out.println("Profil beendet nach " + TimeUnit.NANOSECONDS.toSeconds(scheduler.nanoTime() - profileStart)
+                    + " s, " + transactionsStarted + " Ladungen gestartet, " + fleet.getShutdown().backgroundStatus());
+            return false;
+        }
+        phase = phases.get(phaseIndex);
+        phaseStart = start;
+        startCount = fleet.size();
+        phaseMillis = duration();
+        nextReport = phase.reportMillis;
+        plugins = unplugs = transactions = 0;
+        applyHeartbeat(phase.heartbeat);
+        System.out.println("Phase " + (phaseIndex + 1) + "/" + phases.size() + " (Zeile " + phase.line + "): " + phase);
+        return true;
+    }
+
+    private long duration() {
+        switch (phase.type) {
+            case RAMP:
+                if (phase.rate > 0) {
+                    return (long) (Math.abs(phase.target - startCount) * 1000 / phase.rate);
+                }
+                return phase.overMillis;
+            case SPIKE:
+                return phase.overMillis + phase.holdMillis + phase.backMillis;
+            default:
+                return phase.holdMillis;
+        }
+    }
+
+    private int targetAt(long elapsed) {
+        switch (phase.type) {
+            case RAMP:
+                return interpolate(startCount, phase.target, elapsed, phaseMillis);
+            case SPIKE:
+                if (elapsed < phase.overMillis + phase.holdMillis) {
+                    return interpolate(startCount, phase.target, elapsed, phase.overMillis);
+                }
+                return interpolate(phase.target, startCount, elapsed - phase.overMillis - phase.holdMillis, phase.backMillis);
+            default:
+                return startCount;
+        }
+    }
+
+    private static int interpolate(int from, int to, long elapsed, long duration) {
+        if (elapsed >= duration) {
+            return to;
+        }
+        return from + (int) ((to - from) * elapsed / duration);
+    }
+
+    // Bruchteile werden in den naechsten Takt uebertragen, damit auch 0.5/s genau eingehalten wird
+    private void arrivals(double seconds) {
+        plugins += phase.pluginRate * seconds;
+        for (; plugins >= 1; plugins--) {
+            final ChargeBox box = fleet.random(random);
+            if (box != null && !box.isPluggedIn()) {
+                box.plugIn();
+            }
+        }
+        unplugs += phase.unplugRate * seconds;
+        for (; unplugs >= 1; unplugs--) {
+            final ChargeBox box = fleet.random(random);
+            if (box != null && box.isPluggedIn()) {
+                box.unplug();
+            }
+        }
+        transactions += phase.transactionRate * seconds;
+        for (; transactions >= 1; transactions--) {
+            final ChargeBox box = fleet.random(random);
+            if (box != null && !box.isPluggedIn()) {
+                box.plugIn();
+                transactionsStarted++;
+                final Scheduler.Timeout previous = sessions.put(box,
+                        scheduler.newTimeout(() -> endSession(box), phase.sessionMillis, TimeUnit.MILLISECONDS));
+                if (previous != null) {
+                    previous.cancel();
+                }
+            }
+        }
+    }
+
+    // Eine beim Abbau entfernte Box behaelt ihren Takt; ihr Platz gehoert dann womoeglich schon einer neuen Box
+    private synchronized void endSession(ChargeBox box) {
+        sessions.remove(box);
+        if (fleet.get(box.getIdentiy()) == box) {
+            box.unplug();
+        }
+    }
+
+    private void applyHeartbeat(int seconds) {
+        if (services.getHeartbeatOverride() == seconds) {
+            return;
+        }
+        services.setHeartbeatOverride(seconds);
+        fleet.forEach(box -> box.overrideHeartbeatInterval(seconds));
+    }
+
+    // Takte auf festem Raster ab Profilstart, ein langsamer Takt verschiebt die folgenden nicht.
+    // Verpasste Takte werden uebersprungen statt nachgeholt, die Zeitrechnung im Takt gleicht sie aus
+    private void schedule() {
+        final long now = scheduler.nanoTime();
+        ticks = Math.max(ticks + 1, TimeUnit.NANOSECONDS.toMillis(now - profileStart) / TICK_MILLIS + 1);
+        final long due = profileStart + TimeUnit.MILLISECONDS.toNanos(ticks * TICK_MILLIS);
+        timeout = scheduler.newTimeout(this::tick, Math.max(0, due - now), TimeUnit.NANOSECONDS);
+    }
+
+    private String describe() {
+        return "Phase " + (phaseIndex + 1) + "/" + profile.getPhases().size() + " " + phase;
+    }
+}
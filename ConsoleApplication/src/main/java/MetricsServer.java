@@ -0,0 +1,209 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import eu.chargetime.simulator.FleetServices;
+import eu.chargetime.simulator.charging.MeterValueEngine;
+import eu.chargetime.simulator.connection.Endpoints;
+import eu.chargetime.simulator.connection.ReconnectSupervisor;
+import eu.chargetime.simulator.hardware.HardwareStateTable;
+import eu.chargetime.simulator.scheduling.NamedThreadFactory;
+import eu.chargetime.simulator.scheduling.Scheduler;
+import eu.chargetime.simulator.software.log.Log;
+import eu.chargetime.simulator.software.metrics.LatencyHistogram;
+import eu.chargetime.simulator.software.ocpp.OcppAction;
+import eu.chargetime.simulator.software.ocpp.OcppMetrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+// Stellt die Zaehler der Flotte unter /metrics im Prometheus-Textformat bereit, damit Lastlaeufe von aussen
+// beobachtet werden koennen. Gelesen wird nur beim Abruf, die Flotte selbst merkt davon nichts. Gebunden wird an die
+// uebergebene Adresse, ohne --metrics-bind nur an Loopback.
+public class MetricsServer {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final OcppMetrics metrics;
+    private final ReconnectSupervisor reconnectSupervisor;
+    private final Scheduler scheduler;
+    private final MeterValueEngine meterValues;
+    private final HardwareStateTable hardware;
+    private final LongSupplier boxes;
+    private final Supplier<Endpoints> endpoints;
+    private final HttpServer server;
+
+    public MetricsServer(InetAddress address, int port, FleetServices services, LongSupplier boxes, Supplier<Endpoints> endpoints) throws IOException {
+        this.metrics = services.getMetrics();
+        this.reconnectSupervisor = services.getReconnectSupervisor();
+        this.scheduler = services.getScheduler();
+        this.meterValues = services.getMeterValues();
+        this.hardware = services.getHardware();
+        this.boxes = boxes;
+        this.endpoints = endpoints;
+        this.server = HttpServer.create(new InetSocketAddress(address, port), 0);
+        this.server.setExecutor(Executors.newSingleThreadExecutor(new NamedThreadFactory("metrics-http", true)));
+        this.server.createContext("/metrics", this::handle);
+    }
+
+    public void start() {
+        server.start();
+        final InetSocketAddress bound = server.getAddress();
+        System.out.println("Metriken unter http://" + bound.getHostString() + ":" + bound.getPort() + "/metrics");
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] body = render().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    String render() {
+        StringBuilder sb = new StringBuilder(4096);
+
+        header(sb, "ocpp_sim_charge_boxes", "gauge", "Charge boxes running in this process");
+        sample(sb, "ocpp_sim_charge_boxes", null, boxes.getAsLong());
+        header(sb, "ocpp_sim_connections", "gauge", "Charge boxes by connection state");
+        sample(sb, "ocpp_sim_connections", "state=\"connected\"", reconnectSupervisor.getConnectedCount());
+        sample(sb, "ocpp_sim_connections", "state=\"disconnected\"", reconnectSupervisor.getDisconnectedCount());
+        header(sb, "ocpp_sim_handshakes_in_progress", "gauge", "WebSocket handshakes currently running");
+        sample(sb, "ocpp_sim_handshakes_in_progress", null, reconnectSupervisor.getHandshakesInProgress());
+        header(sb, "ocpp_sim_connect_attempts_total", "counter", "Connection attempts by kind");
+        sample(sb, "ocpp_sim_connect_attempts_total", "kind=\"initial\"", reconnectSupervisor.getConnectAttempts());
+        sample(sb, "ocpp_sim_connect_attempts_total", "kind=\"reconnect\"", reconnectSupervisor.getReconnectAttempts());
+        header(sb, "ocpp_sim_connect_failures_total", "counter", "Connection attempts that failed or timed out");
+        sample(sb, "ocpp_sim_connect_failures_total", null, reconnectSupervisor.getFailedAttempts());
+        header(sb, "ocpp_sim_disconnected_seconds_total", "counter", "Time spent disconnected summed over all boxes");
+        sample(sb, "ocpp_sim_disconnected_seconds_total", null, reconnectSupervisor.getDisconnectedMillis() / 1000.0);
+
+        header(sb, "ocpp_sim_plugged_in", "gauge", "Charge boxes with a plug in the outlet");
+        sample(sb, "ocpp_sim_plugged_in", null, hardware.countPluggedIn());
+        header(sb, "ocpp_sim_transactions_active", "gauge", "Transactions currently charging");
+        sample(sb, "ocpp_sim_transactions_active", null, meterValues.getActive());
+
+        header(sb, "ocpp_sim_requests_sent_total", "counter", "OCPP requests sent by the charge boxes");
+        for (OcppAction action : OcppAction.values())
+            sample(sb, "ocpp_sim_requests_sent_total", action(action), metrics.getSent(action));
+        header(sb, "ocpp_sim_confirmations_received_total", "counter", "Confirmations received for sent requests");
+        for (OcppAction action : OcppAction.values())
+            sample(sb, "ocpp_sim_confirmations_received_total", action(action), metrics.getReceived(action));
+        header(sb, "ocpp_sim_request_errors_total", "counter", "Requests that failed or could not be sent");
+        for (OcppAction action : OcppAction.values())
+            sample(sb, "ocpp_sim_request_errors_total", action(action), metrics.getErrors(action));
+        header(sb, "ocpp_sim_request_timeouts_total", "counter", "Requests without a confirmation within the call timeout");
+        for (OcppAction action : OcppAction.values())
+            sample(sb, "ocpp_sim_request_timeouts_total", action(action), metrics.getTimeouts(action));
+        header(sb, "ocpp_sim_requests_rejected_total", "counter", "Requests rejected because a send queue or the fleet limit was full");
+        for (OcppAction action : OcppAction.values())
+            sample(sb, "ocpp_sim_requests_rejected_total", action(action), metrics.getRejected(action));
+        header(sb, "ocpp_sim_requests_in_flight", "gauge", "Requests waiting for a confirmation");
+        sample(sb, "ocpp_sim_requests_in_flight", null, metrics.getInFlight());
+        header(sb, "ocpp_sim_requests_queued", "gauge", "Requests waiting in the send queues for a free slot in the call window");
+        sample(sb, "ocpp_sim_requests_queued", null, metrics.getQueued());
+        header(sb, "ocpp_sim_calls_received_total", "counter", "Requests received from the central system");
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(metrics.getCallsReceived()).entrySet())
+            sample(sb, "ocpp_sim_calls_received_total", "action=\"" + entry.getKey() + "\"", entry.getValue().sum());
+
+        header(sb, "ocpp_sim_latency_seconds", "summary", "Round-trip time from request to confirmation");
+        for (OcppAction action : OcppAction.values()) {
+            LatencyHistogram.Snapshot snapshot = metrics.getLatency(action).snapshot();
+            for (double quantile : QUANTILES) {
+                sample(sb, "ocpp_sim_latency_seconds", action(action) + ",quantile=\"" + quantile + "\"",
+                        snapshot.percentileMicros(quantile * 100) / 1e6);
+            }
+            sample(sb, "ocpp_sim_latency_seconds_sum", action(action), snapshot.getSumMicros() / 1e6);
+            sample(sb, "ocpp_sim_latency_seconds_count", action(action), snapshot.getCount());
+        }
+
+        Endpoints current = endpoints.get();
+        if (current != null) {
+            renderEndpoints(sb, current);
+        }
+
+        header(sb, "ocpp_sim_scheduled_timeouts", "gauge", "Timeouts pending on the timing wheel");
+        sample(sb, "ocpp_sim_scheduled_timeouts", null, scheduler.size());
+        header(sb, "ocpp_sim_log_dropped_total", "counter", "Log events dropped because the log buffer was full");
+        sample(sb, "ocpp_sim_log_dropped_total", null, Log.getDropped());
+
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        header(sb, "jvm_threads_live", "gauge", "Live JVM threads");
+        sample(sb, "jvm_threads_live", null, ManagementFactory.getThreadMXBean().getThreadCount());
+        header(sb, "jvm_memory_heap_bytes", "gauge", "Heap memory");
+        sample(sb, "jvm_memory_heap_bytes", "area=\"used\"", heap.getUsed());
+        sample(sb, "jvm_memory_heap_bytes", "area=\"committed\"", heap.getCommitted());
+        sample(sb, "jvm_memory_heap_bytes", "area=\"max\"", heap.getMax());
+        return sb.toString();
+    }
+
+    // Je Endpunkt der Zentrale, damit ein einzelner langsamer oder gestoerter Knoten auffaellt
+    private static void renderEndpoints(StringBuilder sb, Endpoints endpoints) {
+        header(sb, "ocpp_sim_endpoint_up", "gauge", "1 if the endpoint takes connections, 0 while boxes avoid it");
+        for (Endpoints.Endpoint endpoint : endpoints.getEndpoints())
+            sample(sb, "ocpp_sim_endpoint_up", endpoint(endpoint), endpoint.isDown() ? 0 : 1);
+        header(sb, "ocpp_sim_endpoint_connections", "gauge", "Charge boxes connected to the endpoint");
+        for (Endpoints.Endpoint endpoint : endpoints.getEndpoints())
+            sample(sb, "ocpp_sim_endpoint_connections", endpoint(endpoint), endpoint.getConnected());
+        header(sb, "ocpp_sim_endpoint_connect_attempts_total", "counter", "Connection attempts to the endpoint");
+        for (Endpoints.Endpoint endpoint : endpoints.getEndpoints())
+            sample(sb, "ocpp_sim_endpoint_connect_attempts_total", endpoint(endpoint), endpoint.getAttempts());
+        header(sb, "ocpp_sim_endpoint_connect_failures_total", "counter", "Connection attempts to the endpoint that failed");
+        for (Endpoints.Endpoint endpoint : endpoints.getEndpoints())
+            sample(sb, "ocpp_sim_endpoint_connect_failures_total", endpoint(endpoint), endpoint.getFailures());
+        header(sb, "ocpp_sim_endpoint_drops_total", "counter", "Open connections to the endpoint that were closed");
+        for (Endpoints.Endpoint endpoint : endpoints.getEndpoints())
+            sample(sb, "ocpp_sim_endpoint_drops_total", endpoint(endpoint), endpoint.getDrops());
+        header(sb, "ocpp_sim_endpoint_latency_seconds", "summary", "Round-trip time of the boxes connected to the endpoint");
+        for (Endpoints.Endpoint endpoint : endpoints.getEndpoints()) {
+            LatencyHistogram.Snapshot snapshot = endpoint.getLatency().snapshot();
+            for (double quantile : QUANTILES) {
+                sample(sb, "ocpp_sim_endpoint_latency_seconds", endpoint(endpoint) + ",quantile=\"" + quantile + "\"",
+                        snapshot.percentileMicros(quantile * 100) / 1e6);
+            }
+            sample(sb, "ocpp_sim_endpoint_latency_seconds_sum", endpoint(endpoint), snapshot.getSumMicros() / 1e6);
+            sample(sb, "ocpp_sim_endpoint_latency_seconds_count", endpoint(endpoint), snapshot.getCount());
+        }
+    }
+
+    private static String endpoint(Endpoints.Endpoint endpoint) {
+        return "endpoint=\"" + endpoint.getUri().replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static String action(OcppAction action) {
+        return "action=\"" + action.getAction() + "\"";
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder sb, String name, String labels, long value) {
+        sb.append(name);
+        if (labels != null)
+            sb.append('{').append(labels).append('}');
+        sb.append(' ').append(value).append('\n');
+    }
+
+    private static void sample(StringBuilder sb, String name, String labels, double value) {
+        sb.append(name);
+        if (labels != null)
+            sb.append('{').append(labels).append('}');
+        sb.append(' ').append(value).append('\n');
+    }
+}
@@ -0,0 +1,201 @@
+import eu.chargetime.simulator.ChargeBox;
+import eu.chargetime.simulator.software.metrics.LatencyHistogram;
+import eu.chargetime.simulator.software.ocpp.OcppAction;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+// Offene Last: die Flotte schickt je Nachrichtentyp genau die vorgegebene Rate, reihum ueber alle Boxen. Die Sendezeiten
+// stehen vorher fest und haengen nicht von Antworten ab; die Latenz zaehlt ab der geplanten Sendezeit, so gehen
+// Verzoegerungen beim Senden und in den Warteschlangen der Boxen mit ein (keine coordinated omission).
+// Auch fehlgeschlagene Calls (CallError, Timeout, abgewiesen) zaehlen in der Latenz, sonst fielen unter Ueberlast
+// gerade die langsamsten heraus; ihre Latenz steht zusaetzlich in einer eigenen Spalte.
+// Kann die Box an der Reihe den Typ gerade nicht senden, z.B. MeterValues ohne Ladung, uebernimmt eine der
+// naechsten Boxen denselben Sendezeitpunkt. Der Taktgeber laeuft auf der Wanduhr.
+public class OpenLoopGenerator {
+
+    private static final long SNAPSHOT_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // So viele Boxen versucht ein Sendezeitpunkt, bevor er als ausgelassen zaehlt
+    private static final int MAX_ATTEMPTS = 16;
+
+    private final Supplier<Fleet> fleet;
+    private final Map<OcppAction, Stream> streams = new EnumMap<>(OcppAction.class);
+    private final long durationNanos;
+    private final Thread pacer;
+    private volatile boolean running;
+    private volatile long startNanos;
+    private volatile long stopNanos;
+    private List<ChargeBox> boxes = Collections.emptyList();
+    private long snapshotNanos;
+    private int next;
+
+    // durationMillis 0 laeuft bis stop()
+    public OpenLoopGenerator(Supplier<Fleet> fleet, Map<OcppAction, Double> rates, long durationMillis) {
+        if (rates.isEmpty()) {
+            throw new IllegalArgumentException("Keine Rate angegeben");
+        }
+        for (Map.Entry<OcppAction, Double> rate : rates.entrySet()) {
+            if (!(rate.getValue() > 0)) {
+                throw new IllegalArgumentException("Rate fuer " + rate.getKey().getAction() + " muss positiv sein: " + rate.getValue());
+            }
+            streams.put(rate.getKey(), new Stream(rate.getKey(), rate.getValue()));
+        }
+        this.fleet = fleet;
+        this.durationNanos = TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        this.pacer = new Thread(this::pace, "open-loop");
+        this.pacer.setDaemon(true);
+    }
+
+    // Typen, die eine Box ausserhalb ihres eigenen Takts senden kann
+    public static OcppAction parseAction(String name) {
+        for (OcppAction action : new OcppAction[]{OcppAction.HEARTBEAT, OcppAction.STATUS_NOTIFICATION,
+                OcppAction.AUTHORIZE, OcppAction.METER_VALUES}) {
+            if (action.getAction().equalsIgnoreCase(name)) {
+                return action;
+            }
+        }
+        throw new IllegalArgumentException("Kein Typ fuer offene Last: " + name
+                + " (Heartbeat, StatusNotification, Authorize, MeterValues)");
+    }
+
+    public void start() {
+        running = true;
+        startNanos = System.nanoTime();
+        pacer.start();
+        System.out.println("Offene Last gestartet: " + rates());
+    }
+
+    public void stop() {
+        running = false;
+        LockSupport.unpark(pacer);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void pace() {
+        for (Stream stream : streams.values()) {
+            stream.nextNanos = startNanos;
+        }
+        while (running) {
+            Stream due = null;
+            for (Stream stream : streams.values()) {
+                if (due == null || stream.nextNanos < due.nextNanos) {
+                    due = stream;
+                }
+            }
+            final long intended = due.nextNanos;
+            if (durationNanos > 0 && intended - startNanos >= durationNanos) {
+                break;
+            }
+            for (long wait = intended - System.nanoTime(); wait > 0 && running; wait = intended - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+            }
+            if (!running) {
+                break;
+            }
+            // Die naechste Sendezeit haengt nur an der Rate, nicht daran, wann diese Nachricht wirklich raus ging
+            due.nextNanos = startNanos + (long) (++due.scheduled * due.intervalNanos);
+            send(due, intended);
+        }
+        stopNanos = System.nanoTime();
+        running = false;
+        System.out.println("Offene Last beendet" + System.lineSeparator() + status());
+    }
+
+    private void send(Stream stream, long intended) {
+        CompletionStage<?> confirmation = null;
+        for (int attempt = 0; confirmation == null && attempt < MAX_ATTEMPTS; attempt++) {
+            final ChargeBox box = nextBox(intended);
+            if (box == null) {
+                break;
+            }
+            confirmation = box.send(stream.action);
+            if (attempt + 1 >= boxes.size()) {
+                break;
+            }
+        }
+        if (confirmation == null) {
+            stream.skipped.increment();
+            return;
+        }
+        stream.sent.increment();
+        stream.lag.recordNanos(System.nanoTime() - intended);
+        confirmation.whenComplete((result, throwable) -> {
+            final long nanos = System.nanoTime() - intended;
+            stream.latency.recordNanos(nanos);
+            if (throwable != null) {
+                stream.errors.increment();
+                stream.failed.recordNanos(nanos);
+            }
+        });
+    }
+
+    // Reihum ueber einen Schnappschuss der Flotte, der hoechstens eine Sekunde alt ist
+    private ChargeBox nextBox(long now) {
+        if (now - snapshotNanos > SNAPSHOT_NANOS || next >= boxes.size()) {
+            final Fleet current = fleet.get();
+            boxes = current == null ? Collections.emptyList() : current.snapshot();
+            snapshotNanos = now;
+            if (next >= boxes.size()) {
+                next = 0;
+            }
+        }
+        return boxes.isEmpty() ? null : boxes.get(next++);
+    }
+
+    private String rates() {
+        StringBuilder sb = new StringBuilder();
+        for (Stream stream : streams.values()) {
+            sb.append(sb.length() == 0 ? "" : ", ").append(stream.action.getAction()).append(' ').append(stream.rate).append("/s");
+        }
+        return sb.append(durationNanos > 0 ? " fuer " + TimeUnit.NANOSECONDS.toSeconds(durationNanos) + " s" : "").toString();
+    }
+
+    // Je Typ Soll- und Ist-Rate, Latenz ab geplanter Sendezeit (alle und nur Fehler) und wie weit der Taktgeber
+    // hinter dem Plan lag
+    public String status() {
+        final double seconds = ((running ? System.nanoTime() : stopNanos) - startNanos) / 1e9;
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-20s %10s %10s %10s %10s %10s %10s %10s %10s %12s %10s%n", "message", "soll/s", "ist/s", "gesendet",
+                "Fehler", "ausgelassen", "p50 ms", "p99 ms", "max ms", "Fehler p99", "Verzug ms"));
+        for (Stream stream : streams.values()) {
+            LatencyHistogram.Snapshot latency = stream.latency.snapshot();
+            sb.append(String.format("%-20s %10.1f %10.1f %10d %10d %10d %10.3f %10.3f %10.3f %12.3f %10.3f%n", stream.action.getAction(),
+                    stream.rate, seconds > 0 ? stream.sent.sum() / seconds : 0.0, stream.sent.sum(), stream.errors.sum(),
+                    stream.skipped.sum(), latency.percentileMicros(50) / 1000.0, latency.percentileMicros(99) / 1000.0,
+                    latency.getMaxMicros() / 1000.0, stream.failed.snapshot().percentileMicros(99) / 1000.0,
+                    stream.lag.snapshot().percentileMicros(99) / 1000.0));
+        }
+        return sb.toString();
+    }
+
+    private static final class Stream {
+        final OcppAction action;
+        final double rate;
+        final double intervalNanos;
+        // Alle beendeten Calls, erfolgreich oder nicht, ab geplanter Sendezeit
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram failed = new LatencyHistogram();
+        final LatencyHistogram lag = new LatencyHistogram();
+        final LongAdder sent = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder skipped = new LongAdder();
+        long scheduled;
+        long nextNanos;
+
+        Stream(OcppAction action, double rate) {
+            this.action = action;
+            this.rate = rate;
+            this.intervalNanos = 1e9 / rate;
+        }
+    }
+}
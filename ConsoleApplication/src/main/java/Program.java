@@ -25,12 +25,45 @@
  */
 
 import eu.chargetime.simulator.ChargeBox;
-import eu.chargetime.simulator.ChargeBoxFirmware;
-import eu.chargetime.simulator.commands.*;
-import eu.chargetime.simulator.hardware.*;
+import eu.chargetime.simulator.FleetServices;
+import eu.chargetime.simulator.charging.MeterValueEngine;
+import eu.chargetime.simulator.connection.ConnectRateLimiter;
+import eu.chargetime.simulator.connection.Endpoints;
+import eu.chargetime.simulator.connection.ReconnectSupervisor;
+import eu.chargetime.simulator.hardware.HardwareStateTable;
+import eu.chargetime.simulator.scheduling.ExecutionMode;
+import eu.chargetime.simulator.scheduling.NamedThreadFactory;
+import eu.chargetime.simulator.scheduling.Scheduler;
+import eu.chargetime.simulator.scheduling.TimingWheel;
+import eu.chargetime.simulator.scheduling.VirtualScheduler;
+import eu.chargetime.simulator.software.log.Log;
+import eu.chargetime.simulator.software.log.LogLevel;
+import eu.chargetime.simulator.software.log.LogTopic;
+import eu.chargetime.simulator.software.metrics.LatencyHistogram;
+import eu.chargetime.simulator.software.ocpp.BoxConfiguration;
+import eu.chargetime.simulator.software.ocpp.CallWindow;
+import eu.chargetime.simulator.software.ocpp.ConfigurationDefaults;
+import eu.chargetime.simulator.software.ocpp.OcppAction;
+import eu.chargetime.simulator.software.ocpp.OcppMetrics;
+import eu.chargetime.simulator.software.ocpp.transport.JournalReader;
+import eu.chargetime.simulator.software.ocpp.transport.JournalReplay;
+import eu.chargetime.simulator.software.ocpp.transport.JsonClientTransport;
+import eu.chargetime.simulator.software.ocpp.transport.OcppTransportFactory;
+import eu.chargetime.simulator.software.ocpp.transport.SelectorGroup;
+import eu.chargetime.simulator.software.ocpp.transport.TrafficJournal;
 
-import java.util.*;
-import java.util.concurrent.ThreadLocalRandom;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 
 public class Program {
 
@@ -39,68 +72,361 @@ public class Program {
     private ConsoleReader consoleReader;
     //private String uriOCPPServer = "http://localhost:8080/steve/websocket/CentralSystemService";
     private String uriOCPPServer = "ws://192.168.1.48:8080/steve/websocket/CentralSystemService";
-    private Map<Integer, ChargeBox> chargeboxes = new HashMap<>();
+    private static final String COORDINATOR = "coordinator";
+    private static final String WORKER = "worker";
+    private static final int COMMAND_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private volatile Fleet fleet;
+    private volatile Endpoints endpoints;
+    private Endpoints.Strategy endpointStrategy;
+    private int endpointFailures;
+    private int endpointCooldown;
+    private FleetCoordinator coordinator;
+    private CoordinatorClient coordinatorClient;
+    private Assignment assignment;
+    // Ein Scheduler fuer alle Heartbeats und Reconnects der Flotte statt einem Thread pro ChargeBox
+    private Scheduler scheduler;
+    // Wanduhr fuer Zeitlimits, die das Netz betreffen; bei realer Uhr derselbe Scheduler
+    private Scheduler wallClock;
+    private ThreadFactory chargeBoxThreads;
+    private ReconnectSupervisor reconnectSupervisor;
+    private final OcppMetrics metrics = new OcppMetrics();
+    private final LatencyReport latencyReport = new LatencyReport(metrics);
+    private FleetServices services;
+    private MeterValueEngine meterValues;
+    private MetricsServer metricsServer;
+    private SelectorGroup selectorGroup;
+    private TrafficJournal journal;
+    private LoadProfileRunner profileRunner;
+    private OpenLoopGenerator openLoop;
+    private ExecutorService commandPool;
+    private CommandQueue commandQueue;
+    private FleetShutdown shutdown;
 
     public static void main(String[] args) {
         new Program(args).startConsoleReaderThread();
     }
 
     public Program(String[] args) {
-        if (args.length < 1 || !isAoderBoderC(args[0])) {
-            System.err.println("Instanz A, B oder C muss angegeben werden");
+        Arguments arguments = new Arguments(args);
+        if (arguments.size() < 1 || !isValidInstance(arguments.get(0))) {
+            System.err.println("Instanz (z.B. A, B oder C), coordinator oder worker muss angegeben werden");
+            printUsage();
+            System.exit(-1);
+        }
+        try {
+            start(arguments.get(0), arguments);
+        } catch (IllegalArgumentException e) {
+            // Auch Zahlen und Aufzaehlungen, die erst beim Aufbau der Flotte gelesen werden
+            System.err.println("Ungueltiges Argument: " + e.getMessage());
+            printUsage();
             System.exit(-1);
         }
-        prefix += args[0];
+    }
 
-        if (args.length == 2) {
-            uriOCPPServer = args[1];
+    private static void printUsage() {
+        System.err.println("Aufruf: Program <instanz|coordinator|worker> [uri[#gewicht],...] [--threads=platform|virtual] [--connect-rate=50]"
+                + " [--max-handshakes=100] [--backoff-base=1000] [--backoff-max=120000] [--handshake-timeout=30000]"
+                + " [--prefix=OCCPSimA] [--width=4] [--first-id=1] [--max-boxes=1000000]"
+                + " [--listen=7000] [--range-size=100000] [--coordinator=localhost:7000]"
+                + " [--log-level=info,HEARTBEAT=debug] [--log-sample=TOPIC=n,...] [--log-rate=TOPIC=n,...]"
+                + " [--summary-interval=60] [--metrics-port=9100] [--metrics-bind=127.0.0.1] [--transport=json|nio] [--selector-threads=<cores>]"
+                + " [--profile=datei] [--meter-interval=60] [--charge-power=11000]"
+                + " [--script=datei] [--batch] [--progress-interval=10] [--shutdown-window=500] [--shutdown-deadline=10000]"
+                + " [--clock=real|virtual:<faktor>] [--journal=verzeichnis] [--journal-segment=64]"
+                + " [--call-window=1] [--send-queue=100] [--max-pending=100000] [--call-timeout=30000]"
+                + " [--endpoint-strategy=weighted|hash] [--endpoint-failures=5] [--endpoint-cooldown=30000]");
+    }
+
+    private void start(String mode, Arguments arguments) {
+        configureLogging(arguments);
+
+        if (arguments.size() == 2) {
+            uriOCPPServer = arguments.get(1);
         }
         System.out.println("URI OCPP Server: " + uriOCPPServer);
+        try {
+            // Mehrere Knoten der Zentrale: Boxen verteilen sich nach Gewicht oder Hash der Identitaet und weichen gestoerten aus
+            endpointStrategy = Endpoints.Strategy.parse(arguments.option("endpoint-strategy", "weighted"));
+            endpointFailures = arguments.intOption("endpoint-failures", 5);
+            endpointCooldown = arguments.intOption("endpoint-cooldown", 30000);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Ungueltige Endpunkt-Strategie: " + e.getMessage());
+            System.exit(-1);
+        }
+        scheduler = createScheduler(arguments.option("clock", "real"));
+        wallClock = scheduler instanceof VirtualScheduler ? createTimingWheel("wall-clock") : scheduler;
+        ExecutionMode executionMode;
+        try {
+            executionMode = ExecutionMode.parse(arguments.option("threads", "platform"));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("--threads erwartet platform oder virtual: " + arguments.option("threads", ""));
+        }
+        chargeBoxThreads = executionMode.threadFactory("chargebox");
+        System.out.println("Threads: " + executionMode);
+        int connectRate = arguments.intOption("connect-rate", 50);
+        ConnectRateLimiter rateLimiter = new ConnectRateLimiter(connectRate, connectRate, arguments.intOption("max-handshakes", 100));
+        // Verbindungsversuche erreichen den Executor erst mit Handshake-Platz und Token, er laeuft also mit
+        // hoechstens --max-handshakes Threads, auch wenn die ganze Flotte nach einem Neustart der Zentrale wartet
+        reconnectSupervisor = new ReconnectSupervisor(scheduler, wallClock, Executors.newCachedThreadPool(executionMode.threadFactory("connect")),
+                rateLimiter, arguments.intOption("backoff-base", 1000), arguments.intOption("backoff-max", 120000),
+                arguments.intOption("handshake-timeout", 30000));
+        // Ein Takt pro Sekunde erzeugt die MeterValues aller laufenden Transaktionen
+        meterValues = new MeterValueEngine(scheduler, arguments.intOption("meter-interval", 60), arguments.intOption("charge-power", 11000));
+        // Herunterfahren in parallelen Fenstern mit Frist, fuer quit, Reduzierungen und Lastprofile
+        shutdown = new FleetShutdown(arguments.intOption("shutdown-window", 500), arguments.intOption("shutdown-deadline", 10000), wallClock);
+        services = new FleetServices(scheduler, reconnectSupervisor, metrics, createTransports(arguments), meterValues,
+                createCallWindow(arguments));
+        scheduleSummary(arguments.intOption("summary-interval", 60));
+        startMetricsServer(arguments.intOption("metrics-port", 0), arguments.option("metrics-bind", null));
+        int width = arguments.intOption("width", 4);
+        int firstId = arguments.intOption("first-id", 1);
         CommandMap commandMap = createCommandMap();
-        composeRoot(commandMap);
-        startChargeBoxes("1");
+        composeRoot(commandMap, arguments);
+
+        if (COORDINATOR.equals(mode)) {
+            coordinator = new FleetCoordinator(arguments.intOption("listen", 7000), new IdentityFormat(arguments.option("prefix", prefix), width),
+                    firstId, arguments.intOption("range-size", 100000), uriOCPPServer);
+            new Thread(coordinator, "coordinator").start();
+        } else if (WORKER.equals(mode)) {
+            coordinatorClient = new CoordinatorClient(arguments.option("coordinator", "localhost:7000"), this::applyAssignment, this::releaseAssignment,
+                    () -> fleet == null ? 0 : fleet.size(), reconnectSupervisor::getConnectedCount);
+            Thread thread = new Thread(coordinatorClient, "coordinator-client");
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            prefix = arguments.option("prefix", prefix + mode);
+            try {
+                endpoints = createEndpoints(uriOCPPServer);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Ungueltige Endpunkte " + uriOCPPServer + ": " + e.getMessage());
+                System.exit(-1);
+            }
+            Endpoints instanceEndpoints = endpoints;
+            IdentityAllocator allocator = new IdentityAllocator(firstId, firstId + arguments.intOption("max-boxes", 1000000) - 1);
+            fleet = new Fleet(allocator, new IdentityFormat(prefix, width),
+                    (int id, String identity) -> startChargeBox(instanceEndpoints, identity), shutdown);
+            if (arguments.has("profile")) {
+                startProfile(arguments.option("profile", ""));
+            } else if (!arguments.has("script")) {
+                startChargeBoxes("1");
+            }
+        }
+        if (arguments.has("script")) {
+            commandQueue.handle("run " + arguments.option("script", ""));
+        }
+        if (scheduler instanceof VirtualScheduler) {
+            ((VirtualScheduler) scheduler).start();
+        }
     }
 
-    private boolean isAoderBoderC(String arg) {
-        if ("A".equals(arg) || "B".equals(arg) || "C".equals(arg)) {
-            return true;
+    // real: Timing-Rad auf der Wanduhr, virtual:60 laesst die Zeit 60-mal schneller laufen. Der virtuellen Zeit folgen
+    // Heartbeats, MeterValues, Backoff, Lastprofile, Skript-Wartezeiten, Zusammenfassung und die Sperrzeit gestoerter
+    // Endpunkte. Was auf das echte Netz wartet, bleibt auf der Wanduhr (wallClock): Call-Timeout, Handshake-Timeout,
+    // die Wartezeit auf ein Verbindungs-Token und die Frist beim Herunterfahren. virtual:max (von Ereignis zu
+    // Ereignis springen) gibt es hier nicht, weil die Zentrale immer uebers Netz angebunden ist
+    private Scheduler createScheduler(String clock) {
+        if (clock.startsWith("virtual")) {
+            String speed = clock.startsWith("virtual:") ? clock.substring("virtual:".length()) : "1";
+            if ("max".equals(speed)) {
+                System.err.println("Uhr virtual:max geht nur ohne Netzwerk, nutze real");
+                return createScheduler("real");
+            }
+            try {
+                VirtualScheduler virtual = new VirtualScheduler("virtual-clock", Double.parseDouble(speed));
+                if (virtual.getSpeed() == 0) {
+                    throw new IllegalArgumentException("speed 0");
+                }
+                System.out.println("Uhr: virtuell, " + speed + "-fach");
+                return virtual;
+            } catch (IllegalArgumentException e) {
+                System.err.println("Ungueltige Uhr " + clock + ", nutze real");
+            }
+        } else if (!"real".equals(clock)) {
+            System.err.println("Unbekannte Uhr " + clock + ", nutze real");
+        }
+        return createTimingWheel("timing-wheel");
+    }
+
+    private static TimingWheel createTimingWheel(String name) {
+        return new TimingWheel(name, 100, TimeUnit.MILLISECONDS, 512,
+                Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new NamedThreadFactory("timer", true)));
+    }
+
+    // Je Box hoechstens --call-window Calls unterwegs (OCPP erlaubt einen), dahinter eine Warteschlange von --send-queue.
+    // --max-pending begrenzt alle angenommenen Calls der Flotte, damit der Speicher auch bei haengender Zentrale begrenzt bleibt.
+    private CallWindow createCallWindow(Arguments arguments) {
+        return new CallWindow(arguments.intOption("call-window", 1), arguments.intOption("send-queue", 100),
+                arguments.intOption("max-pending", 100000), arguments.intOption("call-timeout", 30000),
+                (task, delay) -> wallClock.newTimeout(task, delay, TimeUnit.MILLISECONDS)::cancel);
+    }
+
+    // json: ein JSONClient mit eigenem Thread je ChargeBox, nio: alle Verbindungen auf wenigen Selector-Threads
+    private OcppTransportFactory createTransports(Arguments arguments) {
+        String transport = arguments.option("transport", "json");
+        if ("nio".equals(transport)) {
+            int threads = arguments.intOption("selector-threads", Runtime.getRuntime().availableProcessors());
+            try {
+                selectorGroup = new SelectorGroup(threads);
+                System.out.println("Transport: nio mit " + threads + " Selector-Threads");
+                openJournal(arguments);
+                return selectorGroup.transportFactory(journal);
+            } catch (IOException e) {
+                System.err.println("NIO-Transport nicht moeglich, nutze json: " + e.getMessage());
+            }
+        } else if (!"json".equals(transport)) {
+            System.err.println("Unbekannter Transport " + transport + ", nutze json");
+        }
+        if (arguments.has("journal")) {
+            System.err.println("Das Journal gibt es nur mit --transport=nio, der json-Transport sieht keine Frames");
+        }
+        return JsonClientTransport.FACTORY;
+    }
+
+    // --journal=verzeichnis zeichnet jeden Frame der Flotte auf, in Segmenten zu --journal-segment MB
+    private void openJournal(Arguments arguments) {
+        if (!arguments.has("journal")) {
+            return;
+        }
+        String directory = arguments.option("journal", "journal");
+        try {
+            journal = new TrafficJournal(Paths.get(directory), arguments.intOption("journal-segment", 64) << 20);
+            System.out.println("Journal: " + journal.getDirectory().toAbsolutePath());
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Journal in " + directory + " nicht moeglich: " + e.getMessage());
         }
-        return false;
     }
 
-    private ChargeBox startChargeBox(String uriOCPPServer, String identity) {
-        ChargeBox cb = new ChargeBox(uriOCPPServer, identity);
-        new Thread(cb).start();
+    // --log-level=,HEARTBEAT=debug  --log-sample=HEARTBEAT=100  --log-rate=CONNECTION=50
+    private void configureLogging(Arguments arguments) {
+        for (String entry : arguments.option("log-level", "info").split(",")) {
+            String[] pair = entry.split("=");
+            if (pair.length == 1) {
+                Log.setLevel(LogLevel.parse(pair[0]));
+            } else {
+                Log.setLevel(LogTopic.parse(pair[0]), LogLevel.parse(pair[1]));
+            }
+        }
+        for (String entry : arguments.option("log-sample", "").split(",")) {
+            String[] pair = entry.split("=");
+            if (pair.length == 2) {
+                Log.setSampling(LogTopic.parse(pair[0]), Integer.parseInt(pair[1]));
+            }
+        }
+        for (String entry : arguments.option("log-rate", "").split(",")) {
+            String[] pair = entry.split("=");
+            if (pair.length == 2) {
+                Log.setRateLimit(LogTopic.parse(pair[0]), Integer.parseInt(pair[1]));
+            }
+        }
+    }
+
+    private boolean isValidInstance(String arg) {
+        return arg.matches("[A-Za-z0-9_-]+");
+    }
+
+    // Im Worker-Modus kommen Nummernbereich und Anzahl vom Koordinator
+    private synchronized void applyAssignment(Assignment assignment) {
+        if (!assignment.sameRange(this.assignment)) {
+            final Endpoints assigned;
+            try {
+                assigned = createEndpoints(assignment.getUri());
+            } catch (IllegalArgumentException e) {
+                System.err.println("Ungueltige Endpunkte vom Koordinator " + assignment.getUri() + ": " + e.getMessage());
+                return;
+            }
+            if (fleet != null) {
+                System.out.println(fleet.stopAll());
+            }
+            endpoints = assigned;
+            fleet = new Fleet(new IdentityAllocator(assignment.getFirst(), assignment.getLast()),
+                    new IdentityFormat(assignment.getPrefix(), assignment.getWidth()),
+                    (int id, String identity) -> startChargeBox(assigned, identity), shutdown);
+            this.assignment = assignment;
+        }
+        fleet.scaleTo(assignment.getTarget());
+    }
+
+    // Ohne Koordinator darf der Worker seinen Nummernbereich nicht weiter belegen, der Koordinator vergibt ihn
+    // nach einer Frist neu. Meldet sich der Worker wieder an, startet die naechste Zuteilung die Boxen erneut.
+    private synchronized void releaseAssignment() {
+        if (fleet != null && fleet.size() > 0) {
+            System.out.println(fleet.stopAll());
+        }
+    }
+
+    private Endpoints createEndpoints(String uris) {
+        Endpoints created = new Endpoints(uris, endpointStrategy, endpointFailures, endpointCooldown, scheduler);
+        if (created.getEndpoints().size() > 1) {
+            System.out.println("Endpunkte: " + created.getEndpoints().size() + ", Verteilung " + created.getStrategy());
+        }
+        return created;
+    }
+
+    private ChargeBox startChargeBox(Endpoints endpoints, String identity) {
+        ChargeBox cb = new ChargeBox(endpoints, identity, services);
+        chargeBoxThreads.newThread(cb).start();
         return cb;
     }
 
     private CommandMap createCommandMap() {
-        ChargeBoxFirmware firmware = new ChargeBoxFirmware();
-        ILock lock = new SimpleLock(firmware,true);
-        IOutlet outlet = new OutletLockDecorator(new SimpleOutlet(firmware), lock);
-        LockCommand lockCommand = new LockCommand(lock);
-        UnlockCommand unlockCommand = new UnlockCommand(lock);
-        StatusCommand isLockedCommand = new StatusCommand(lock, outlet);
-        PluginCommand pluginCommand = new PluginCommand(outlet);
-        PullPlugCommand pullPluginCommand = new PullPlugCommand(outlet);
-
         CommandMap commandMap = new CommandMap();
 
-        commandMap.addCommand("lock", lockCommand);
-        commandMap.addCommand("unlock", unlockCommand);
-        commandMap.addCommand("status", isLockedCommand);
-        commandMap.addCommand("plugin", pluginCommand);
-        commandMap.addCommand("plugout", pullPluginCommand);
+        commandPool = Executors.newFixedThreadPool(COMMAND_THREADS, new NamedThreadFactory("fleet-command", true));
+        addFleetCommands(commandMap, () -> fleet, commandPool, COMMAND_THREADS);
 
         commandMap.addCommand("help", new HelpCommand(commandMap));
         commandMap.addCommand("count", (String param) -> startChargeBoxes(param));
+        commandMap.addCommand("reconnects", (String param) -> printReconnectStatistics());
+        commandMap.addCommand("workers", (String param) -> printWorkers());
+        commandMap.addCommand("latency", (String param) -> printLatency(param));
+        commandMap.addCommand("hardware", (String param) -> printHardware());
+        commandMap.addCommand("profile", (String param) -> profile(param));
+        commandMap.addCommand("rate", (String param) -> rate(param));
+        commandMap.addCommand("endpoints", (String param) -> printEndpoints());
+        commandMap.addCommand("config", (String param) -> configuration(param));
+        commandMap.addCommand("journal", (String param) -> journal(param));
+        commandMap.addCommand("replay", (String param) -> replay(param));
         commandMap.addCommand("quit", (String param) -> stop(param));
         return commandMap;
     }
 
-    private void composeRoot(CommandMap commandMap) {
+    // Hardware-Befehle wirken auf eine Auswahl laufender Boxen, z.B. "plugin 1-3000" oder "lock 25%".
+    // Auch vom DispatchBenchmark genutzt, damit er dieselben Befehle misst
+    static void addFleetCommands(CommandMap commandMap, Supplier<Fleet> fleet, ExecutorService pool, int parallelism) {
+        commandMap.addCommand("lock", new FleetCommand("lock", fleet, pool, parallelism, null,
+                (ChargeBox box) -> box.lock() ? 1 : 0, "gesperrt"));
+        commandMap.addCommand("unlock", new FleetCommand("unlock", fleet, pool, parallelism, null,
+                (ChargeBox box) -> box.unlock() ? 1 : 0, "entsperrt"));
+        commandMap.addCommand("plugin", new FleetCommand("plugin", fleet, pool, parallelism, null,
+                (ChargeBox box) -> box.plugIn() ? 1 : 0, "eingesteckt"));
+        commandMap.addCommand("plugout", new FleetCommand("plugout", fleet, pool, parallelism, null,
+                (ChargeBox box) -> box.unplug() ? 1 : 0, "ausgesteckt"));
+        commandMap.addCommand("status", new FleetCommand("status", fleet, pool, parallelism, "all",
+                (ChargeBox box) -> (box.isLocked() ? 1 : 0) | (box.isPluggedIn() ? 2 : 0) | (box.isCharging() ? 4 : 0) | (box.isConnected() ? 8 : 0),
+                "gesperrt", "eingesteckt", "laedt", "verbunden"));
+    }
+
+    // Die Konsole stellt nur in die Warteschlange ein und bleibt so auch bei langen Befehlen und Skripten bedienbar
+    private void composeRoot(CommandMap commandMap, Arguments arguments) {
         IInputHandler commandDispatcher = new CommandDispatcher(commandMap, (String param) -> System.out.println("Unknown command! Try with help"));
-        consoleReader = new ConsoleReader(commandDispatcher);
+        Map<String, LongSupplier> counters = new LinkedHashMap<>();
+        counters.put("boxes", () -> fleet == null ? 0 : fleet.size());
+        counters.put("connected", reconnectSupervisor::getConnectedCount);
+        counters.put("plugged", () -> services.getHardware().countPluggedIn());
+        counters.put("locked", () -> services.getHardware().countLocked());
+        counters.put("charging", meterValues::getActive);
+        commandQueue = new CommandQueue(commandDispatcher, counters, this::fleetProgress, scheduler,
+                arguments.intOption("progress-interval", 10), !arguments.has("batch"));
+        commandMap.addCommand("run", commandQueue::run);
+        commandMap.addCommand("wait", commandQueue::await);
+        commandMap.addCommand("jobs", (String param) -> commandQueue.printJobs());
+        consoleReader = new ConsoleReader(commandQueue, arguments.has("batch"));
+    }
+
+    private String fleetProgress() {
+        return "Boxen: " + (fleet == null ? 0 : fleet.size()) + ", verbunden: " + reconnectSupervisor.getConnectedCount()
+                + ", eingesteckt: " + services.getHardware().countPluggedIn() + ", laedt: " + meterValues.getActive();
     }
 
     public void startConsoleReaderThread() {
@@ -112,73 +438,283 @@ public class Program {
         if (param == null || "".equals(param)) {
             return;
         }
-        int count = Integer.valueOf(param).intValue();
-        if (count < 1 || count > 9999) {
-            System.err.println("count invalid: " + count);
-        } else {
-            if (chargeboxes.size() == count) {
-                System.out.println("Anzahl unveraendert: " + count);
-            } else if (chargeboxes.size() > count) {
-                final int reduce = chargeboxes.size() - count;
-                System.out.println("Anzahl von " + chargeboxes.size() + " wird um " + reduce + " reduziert");
-                Collection<Integer> toRemove = getInteger4Remove(reduce);
-                toRemove.stream().forEach(c -> { chargeboxes.remove(c).stop(); });
-                System.out.println("Reduzierung done: " + chargeboxes.size());
-            } else if (chargeboxes.size() < count) {
-                final int increase = count - chargeboxes.size();
-                System.out.println("Anzahl von " + chargeboxes.size() + " wird um " + increase + " erhoeht");
-                for (int i = 1; i <= increase; i++) {
-                    final Integer id = getNextFreeInteger();
-                    doDelay();
-                    chargeboxes.put(id, startChargeBox(uriOCPPServer, prefix + int2Str(id)));
-                }
-                System.out.println("Erhoehung done: " + chargeboxes.size());
+        if (coordinatorClient != null) {
+            System.err.println("Die Anzahl wird vom Koordinator vorgegeben");
+            return;
+        }
+        try {
+            int count = Integer.parseInt(param.trim());
+            if (coordinator != null) {
+                coordinator.setTarget(count);
+            } else {
+                fleet.scaleTo(count);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("count invalid: " + param);
+        }
+    }
+
+    // profile <datei> startet ein Lastprofil, profile stop bricht es ab, profile allein zeigt den Stand
+    private void profile(String param) {
+        if (param == null || param.trim().isEmpty()) {
+            System.out.println(profileRunner == null ? "Kein Profil aktiv" : profileRunner.status());
+        } else if ("stop".equals(param.trim())) {
+            if (profileRunner != null) {
+                profileRunner.stop();
             }
+        } else {
+            startProfile(param.trim());
         }
     }
 
-    // Etwas Zeit geben zwischen dem Erzeugen der einzelnen Chargebox Threads...
-    private void doDelay() {
-        long delay = ThreadLocalRandom.current().nextInt(5, 25);
-        try { Thread.sleep(delay); } catch (InterruptedException e) {}
+    private synchronized void startProfile(String file) {
+        if (fleet == null || coordinator != null || coordinatorClient != null) {
+            System.err.println("Lastprofile gibt es nur im Instanz-Modus");
+            return;
+        }
+        if (profileRunner != null && profileRunner.isRunning()) {
+            System.err.println("Es laeuft bereits ein Profil, erst mit profile stop abbrechen");
+            return;
+        }
+        try {
+            profileRunner = new LoadProfileRunner(LoadProfile.read(Paths.get(file)), fleet, services);
+            profileRunner.start();
+        } catch (IOException e) {
+            System.err.println("Profil " + file + " nicht lesbar: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Profil " + file + " ungueltig: " + e.getMessage());
+        }
     }
 
-    private Integer getNextFreeInteger() {
-        for (int i = 1; i <= 9999; i++) {
-            Integer integer = Integer.valueOf(i);
-            if (!chargeboxes.containsKey(integer)) {
-                return integer;
+    private void printEndpoints() {
+        Endpoints current = endpoints;
+        if (current == null) {
+            System.out.println("Keine Endpunkte, noch keine Flotte");
+            return;
+        }
+        System.out.printf("%-40s %7s %6s %8s %9s %9s %9s %9s %9s %9s%n", "endpoint", "gewicht", "status", "boxen",
+                "verbunden", "versuche", "fehler", "abbrueche", "p50 ms", "p99 ms");
+        for (Endpoints.Endpoint endpoint : current.getEndpoints()) {
+            LatencyHistogram.Snapshot latency = endpoint.getLatency().snapshot();
+            System.out.printf("%-40s %7d %6s %8d %9d %9d %9d %9d %9.3f %9.3f%n", endpoint.getUri(), endpoint.getWeight(),
+                    endpoint.isDown() ? "down" : "up", endpoint.getBound(), endpoint.getConnected(), endpoint.getAttempts(),
+                    endpoint.getFailures(), endpoint.getDrops(), latency.percentileMicros(50) / 1000.0,
+                    latency.percentileMicros(99) / 1000.0);
+        }
+    }
+
+    // config <box> zeigt die OCPP-Konfiguration einer Box, geaenderte Schluessel mit *; config <box> Schluessel=Wert
+    // aendert sie wie ein ChangeConfiguration der Zentrale. <box> ist die Identitaet oder die Nummer.
+    private void configuration(String param) {
+        String[] parts = param == null ? new String[0] : param.trim().split("\\s+", 2);
+        if (parts.length == 0 || parts[0].isEmpty()) {
+            System.err.println("config <box> [Schluessel=Wert]");
+            return;
+        }
+        Fleet current = fleet;
+        ChargeBox box = current == null ? null
+                : parts[0].chars().allMatch(Character::isDigit) ? current.get(Integer.parseInt(parts[0])) : current.get(parts[0]);
+        if (box == null) {
+            System.err.println("Keine Box " + parts[0]);
+            return;
+        }
+        BoxConfiguration configuration = box.getConfiguration();
+        if (parts.length > 1) {
+            int split = parts[1].indexOf('=');
+            if (split < 0) {
+                System.err.println("config <box> Schluessel=Wert");
+                return;
             }
+            System.out.println(configuration.change(parts[1].substring(0, split).trim(), parts[1].substring(split + 1).trim()));
+            return;
+        }
+        ConfigurationDefaults defaults = configuration.getDefaults();
+        Map<String, String> changes = configuration.getChanges();
+        for (int i = 0; i < defaults.size(); i++) {
+            String key = defaults.getKey(i);
+            System.out.printf("%-36s %s %s%s%n", key, changes.containsKey(key) ? "*" : " ",
+                    changes.containsKey(key) ? changes.get(key) : defaults.getValue(i), defaults.isReadonly(i) ? " (nur lesen)" : "");
         }
-        throw new RuntimeException("Keine freie Zahl gefunden: " + chargeboxes.keySet().stream().sorted());
     }
 
-    private Collection<Integer> getInteger4Remove(int reduce) {
-        final ArrayList arrayList = new ArrayList();
-        for (int i = 1; i <= 9999; i++) {
-            Integer integer = Integer.valueOf(i);
-            if (chargeboxes.containsKey(integer)) {
-                arrayList.add(integer);
+    // rate StatusNotification=2000,Heartbeat=500 [sekunden] startet offene Last, rate stop beendet sie, rate allein zeigt den Stand
+    private synchronized void rate(String param) {
+        if (param == null || param.trim().isEmpty()) {
+            System.out.print(openLoop == null ? "Keine offene Last aktiv" + System.lineSeparator() : openLoop.status());
+            return;
+        }
+        if ("stop".equals(param.trim())) {
+            if (openLoop != null) {
+                openLoop.stop();
             }
-            if (arrayList.size() == reduce) {
-                break;
+            return;
+        }
+        if (fleet == null) {
+            System.err.println("Offene Last gibt es nur im Instanz-Modus");
+            return;
+        }
+        if (openLoop != null && openLoop.isRunning()) {
+            System.err.println("Es laeuft bereits offene Last, erst mit rate stop beenden");
+            return;
+        }
+        String[] parts = param.trim().split("\\s+");
+        try {
+            Map<OcppAction, Double> rates = new EnumMap<>(OcppAction.class);
+            for (String entry : parts[0].split(",")) {
+                String[] pair = entry.split("=");
+                if (pair.length != 2) {
+                    throw new IllegalArgumentException("Erwartet Typ=Rate: " + entry);
+                }
+                rates.put(OpenLoopGenerator.parseAction(pair[0]), Double.parseDouble(pair[1]));
             }
+            long seconds = parts.length > 1 ? Long.parseLong(parts[1]) : 0;
+            openLoop = new OpenLoopGenerator(() -> fleet, rates, TimeUnit.SECONDS.toMillis(seconds));
+            openLoop.start();
+        } catch (IllegalArgumentException e) {
+            System.err.println("rate ungueltig: " + e.getMessage());
         }
-        return arrayList;
     }
 
-    private String int2Str(Integer i) {
-        String r = String.valueOf(i.intValue());
-        while (r.length() < 4) {
-            r = "0" + r;
+    // journal allein zeigt die laufende Aufzeichnung, journal <verzeichnis> [identitaet] gibt eine Aufzeichnung aus
+    private void journal(String param) {
+        if (param == null || param.trim().isEmpty()) {
+            if (journal == null) {
+                System.out.println("Keine Aufzeichnung aktiv");
+            } else {
+                System.out.println("Journal " + journal.getDirectory() + ": " + journal.getRecords() + " Frames, "
+                        + journal.getBytes() / 1024 + " KB in " + journal.getSegments() + " Segmenten, verworfen: " + journal.getDropped());
+            }
+            return;
+        }
+        String[] parts = param.trim().split("\\s+");
+        String identity = parts.length > 1 ? parts[1] : null;
+        try {
+            JournalReader.read(Paths.get(parts[0]), (type, epochMillis, nanos, latencyNanos, id, frame) -> {
+                if (identity == null || identity.equals(id)) {
+                    System.out.printf("%tT.%<tL %-7s %s %s%s%n", epochMillis + nanos / 1000000, JournalReader.typeName(type), id, frame,
+                            latencyNanos < 0 ? "" : String.format(" (%.3f ms)", latencyNanos / 1e6));
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Journal " + parts[0] + " nicht lesbar: " + e.getMessage());
         }
-        return r;
+    }
+
+    // replay <verzeichnis> [faktor] schickt die aufgezeichneten Calls erneut an die Zentrale, faktor 2 doppelt so schnell
+    private void replay(String param) {
+        if (param == null || param.trim().isEmpty()) {
+            System.err.println("Aufruf: replay <verzeichnis> [faktor]");
+            return;
+        }
+        if (selectorGroup == null) {
+            System.err.println("Replay gibt es nur mit --transport=nio");
+            return;
+        }
+        String[] parts = param.trim().split("\\s+");
+        try {
+            double speed = parts.length > 1 ? Double.parseDouble(parts[1]) : 1;
+            // Bei mehreren Endpunkten geht das Replay an den ersten
+            String uri = endpoints == null ? uriOCPPServer : endpoints.getEndpoints().get(0).getUri();
+            System.out.println(new JournalReplay(selectorGroup, uri, Paths.get(parts[0]), speed).run(30000));
+        } catch (IOException e) {
+            System.err.println("Journal " + parts[0] + " nicht lesbar: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Ungueltiger Faktor: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void printWorkers() {
+        if (coordinator == null) {
+            System.out.println("Kein Koordinator-Modus");
+            return;
+        }
+        coordinator.printWorkers();
+    }
+
+    private void printLatency(String param) {
+        System.out.print(latencyReport.format());
+        if ("reset".equals(param)) {
+            metrics.resetLatencies();
+            System.out.println("Latenzen zurueckgesetzt");
+        }
+    }
+
+    // Ohne --metrics-port bleibt der HTTP-Endpunkt aus; ohne --metrics-bind ist er nur lokal erreichbar, fuer
+    // Abrufe von aussen muss die Adresse ausdruecklich angegeben werden (0.0.0.0 fuer alle Schnittstellen)
+    private void startMetricsServer(int port, String bind) {
+        if (port <= 0) {
+            return;
+        }
+        try {
+            final InetAddress address = bind == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(bind);
+            metricsServer = new MetricsServer(address, port, services, () -> fleet == null ? 0 : fleet.size(), () -> endpoints);
+            metricsServer.start();
+        } catch (IOException e) {
+            System.err.println("Metrik-Endpunkt an Port " + port + " nicht moeglich: " + e.getMessage());
+        }
+    }
+
+    // Periodische Zusammenfassung ueber das Timing-Rad, 0 schaltet sie ab
+    private void scheduleSummary(int seconds) {
+        if (seconds <= 0) {
+            return;
+        }
+        scheduler.newTimeout(() -> {
+            Log.info(LogTopic.METRICS, null, "Latenzen:" + System.lineSeparator() + latencyReport.format());
+            scheduleSummary(seconds);
+        }, seconds, TimeUnit.SECONDS);
+    }
+
+    // Zaehlt ueber die gepackte Zustandstabelle aller Boxen, ohne die Boxen selbst anzufassen
+    private void printHardware() {
+        HardwareStateTable hardware = services.getHardware();
+        System.out.println("boxes: " + hardware.size() + ", plugged in: " + hardware.countPluggedIn()
+                + ", locked: " + hardware.countLocked() + ", charging: " + meterValues.getActive());
+    }
+
+    private void printReconnectStatistics() {
+        System.out.println("connected: " + reconnectSupervisor.getConnectedCount()
+                + ", disconnected: " + reconnectSupervisor.getDisconnectedCount()
+                + ", handshakes: " + reconnectSupervisor.getHandshakesInProgress());
+        System.out.println("connect attempts: " + reconnectSupervisor.getConnectAttempts()
+                + ", reconnect attempts: " + reconnectSupervisor.getReconnectAttempts()
+                + ", failed: " + reconnectSupervisor.getFailedAttempts());
+        System.out.println("disconnected time: " + reconnectSupervisor.getDisconnectedMillis() / 1000 + " s");
     }
 
     private void stop(String param) {
-        chargeboxes.values().stream().forEach(c -> c.stop());
-        chargeboxes.clear();
+        if (coordinator != null) {
+            coordinator.stop();
+        }
+        if (coordinatorClient != null) {
+            coordinatorClient.stop();
+        }
+        if (profileRunner != null) {
+            profileRunner.stop();
+        }
+        if (openLoop != null) {
+            openLoop.stop();
+        }
+        if (fleet != null) {
+            System.out.println(fleet.stopAll());
+        }
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
+        if (selectorGroup != null) {
+            selectorGroup.stop();
+        }
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("Journal nicht sauber geschlossen: " + e.getMessage());
+            }
+        }
         System.out.println("Goodbye!");
+        Log.flush(2, TimeUnit.SECONDS);
         System.exit(0);
     }
 }
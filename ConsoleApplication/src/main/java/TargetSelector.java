@@ -0,0 +1,98 @@
+import eu.chargetime.simulator.ChargeBox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+// Waehlt die Ziel-Boxen eines Flottenbefehls aus. Angaben, mit Komma kombinierbar:
+//   all            alle laufenden Boxen
+//   42, OCCPSimA0042   eine Box ueber Nummer oder Identity
+//   10-200         alle Boxen im Nummernbereich, die Enden auch als Identity
+//   25%            zufaellige Stichprobe, 0.5% geht auch
+// Jede Box kommt hoechstens einmal vor, die Reihenfolge folgt den Angaben.
+public class TargetSelector {
+
+    private TargetSelector() {
+    }
+
+    public static List<ChargeBox> select(Fleet fleet, String spec, SplittableRandom random) {
+        if (spec == null || spec.trim().isEmpty()) {
+            throw new IllegalArgumentException("Keine Ziel-Boxen angegeben");
+        }
+        final List<ChargeBox> selected = new ArrayList<>();
+        final Set<ChargeBox> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (String part : spec.split(",")) {
+            for (ChargeBox box : selectPart(fleet, part.trim(), random)) {
+                if (seen.add(box)) {
+                    selected.add(box);
+                }
+            }
+        }
+        return selected;
+    }
+
+    private static List<ChargeBox> selectPart(Fleet fleet, String part, SplittableRandom random) {
+        if ("all".equals(part)) {
+            return fleet.snapshot();
+        }
+        if (part.endsWith("%")) {
+            return sample(fleet.snapshot(), percent(part), random);
+        }
+        final int id = id(fleet, part);
+        if (id >= 0) {
+            final ChargeBox box = fleet.get(id);
+            return box == null ? Collections.<ChargeBox>emptyList() : Collections.singletonList(box);
+        }
+        // Der Praefix darf selbst '-' enthalten, daher wird an jedem '-' probiert, bis beide Seiten passen
+        for (int dash = part.indexOf('-'); dash > 0; dash = part.indexOf('-', dash + 1)) {
+            final int from = id(fleet, part.substring(0, dash));
+            final int to = id(fleet, part.substring(dash + 1));
+            if (from >= 0 && to >= 0) {
+                if (to < from) {
+                    throw new IllegalArgumentException("Leerer Bereich: " + part);
+                }
+                return fleet.range(from, to);
+            }
+        }
+        throw new IllegalArgumentException("Ungueltige Auswahl: " + part);
+    }
+
+    private static int id(Fleet fleet, String value) {
+        if (value.isEmpty()) {
+            return -1;
+        }
+        if (Character.isDigit(value.charAt(0))) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                // kann noch eine Identity mit Ziffern im Praefix sein
+            }
+        }
+        return fleet.getFormat().parse(value);
+    }
+
+    private static double percent(String part) {
+        final double percent;
+        try {
+            percent = Double.parseDouble(part.substring(0, part.length() - 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Ungueltiger Anteil: " + part);
+        }
+        if (percent < 0 || percent > 100) {
+            throw new IllegalArgumentException("Anteil muss zwischen 0 und 100 liegen: " + part);
+        }
+        return percent;
+    }
+
+    // Teilweises Fisher-Yates: nur die ersten count Plaetze werden gemischt
+    private static List<ChargeBox> sample(List<ChargeBox> boxes, double percent, SplittableRandom random) {
+        final int count = (int) Math.round(boxes.size() * percent / 100);
+        for (int i = 0; i < count; i++) {
+            Collections.swap(boxes, i, i + random.nextInt(boxes.size() - i));
+        }
+        return boxes.subList(0, count);
+    }
+}
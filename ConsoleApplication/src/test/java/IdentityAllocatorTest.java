@@ -0,0 +1,94 @@
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IdentityAllocatorTest {
+
+    @Test
+    public void allocatesFromTheBottomOfTheRange() {
+        final IdentityAllocator allocator = new IdentityAllocator(1, 10);
+        assertEquals(1, allocator.allocate());
+        assertEquals(2, allocator.allocate());
+        assertEquals(3, allocator.allocate());
+        assertEquals(3, allocator.size());
+        assertEquals(7, allocator.available());
+        assertTrue(allocator.isAllocated(2));
+        assertFalse(allocator.isAllocated(4));
+    }
+
+    @Test
+    public void reusesTheLowestReleasedNumber() {
+        final IdentityAllocator allocator = new IdentityAllocator(1, 10);
+        allocator.allocate(5);
+        assertTrue(allocator.release(4));
+        assertTrue(allocator.release(2));
+        assertFalse(allocator.release(2));
+        assertFalse(allocator.release(11));
+
+        assertEquals(2, allocator.allocate());
+        assertEquals(4, allocator.allocate());
+        assertEquals(6, allocator.allocate());
+    }
+
+    @Test
+    public void releasesTheHighestNumbersFirst() {
+        final IdentityAllocator allocator = new IdentityAllocator(1, 10);
+        allocator.allocate(6);
+        allocator.release(3);
+
+        assertArrayEquals(new int[]{6, 5, 4}, allocator.releaseHighest(3));
+        assertEquals(2, allocator.size());
+        // The gap and the released numbers are handed out again from the bottom
+        assertEquals(3, allocator.allocate());
+        assertEquals(4, allocator.allocate());
+        assertEquals(4, allocator.releaseHighest(10).length);
+        assertEquals(0, allocator.size());
+        assertEquals(0, allocator.releaseHighest(1).length);
+    }
+
+    @Test
+    public void fullRangeRefusesMore() {
+        final IdentityAllocator allocator = new IdentityAllocator(5, 7);
+        assertArrayEquals(new int[]{5, 6, 7}, allocator.allocate(3));
+        assertEquals(0, allocator.available());
+        try {
+            allocator.allocate();
+            fail("allocated beyond the range");
+        } catch (IllegalStateException expected) {
+            // range exhausted
+        }
+        allocator.release(6);
+        assertEquals(6, allocator.allocate());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void batchLargerThanTheFreeNumbersTakesNone() {
+        final IdentityAllocator allocator = new IdentityAllocator(1, 3);
+        allocator.allocate();
+        try {
+            allocator.allocate(3);
+        } finally {
+            assertEquals(1, allocator.size());
+        }
+    }
+
+    // The former limit of 9999 boxes is gone: the range and the identity both go past it
+    @Test
+    public void rangeGoesBeyondFourDigits() {
+        final IdentityAllocator allocator = new IdentityAllocator(1, 200000);
+        final int[] ids = allocator.allocate(150000);
+        assertEquals(150000, ids[ids.length - 1]);
+        assertEquals(150000, allocator.size());
+
+        final IdentityFormat format = new IdentityFormat("OCCPSimA", 4);
+        assertEquals("OCCPSimA0042", format.format(42));
+        assertEquals("OCCPSimA9999", format.format(9999));
+        assertEquals("OCCPSimA150000", format.format(150000));
+        assertEquals(150000, format.parse("OCCPSimA150000"));
+        assertEquals(-1, format.parse("OCCPSimB0001"));
+    }
+}
@@ -0,0 +1,26 @@
+import eu.chargetime.simulator.scheduling.NamedThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+// The fleet commands exactly as Program registers them, on a fleet without boxes, so a command costs dispatch,
+// selection and the report; count stands in for the commands that need a running Program
+public class DispatchFixture implements Consumer<String> {
+
+    private final IInputHandler dispatcher;
+
+    public DispatchFixture() {
+        Fleet fleet = new Fleet(new IdentityAllocator(1, 1), new IdentityFormat("BENCH", 4), (int id, String identity) -> null, null);
+        ExecutorService pool = Executors.newSingleThreadExecutor(new NamedThreadFactory("fleet-command", true));
+        CommandMap commandMap = new CommandMap();
+        Program.addFleetCommands(commandMap, () -> fleet, pool, 1);
+        commandMap.addCommand("count", (String param) -> { });
+        dispatcher = new CommandDispatcher(commandMap, (String param) -> { });
+    }
+
+    @Override
+    public void accept(String input) {
+        dispatcher.handle(input);
+    }
+}
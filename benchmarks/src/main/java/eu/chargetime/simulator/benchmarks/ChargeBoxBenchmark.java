@@ -0,0 +1,38 @@
+package eu.chargetime.simulator.benchmarks;
+
+import eu.chargetime.simulator.ChargeBox;
+import eu.chargetime.simulator.FleetServices;
+import eu.chargetime.simulator.connection.Endpoints;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Cost of creating a ChargeBox with its hardware, commands, heartbeat timer and reconnect handle, without connecting
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChargeBoxBenchmark {
+
+    private FleetServices services;
+    private Endpoints endpoints;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        services = Fixtures.newServices();
+        endpoints = Fixtures.unreachable(services);
+    }
+
+    @TearDown
+    public void tearDown() {
+        services.getScheduler().stop();
+    }
+
+    @Benchmark
+    public ChargeBox construct() {
+        return new ChargeBox(endpoints, "Bench" + (next++), services);
+    }
+}
@@ -0,0 +1,55 @@
+package eu.chargetime.simulator.benchmarks;
+
+import eu.chargetime.simulator.software.log.Log;
+import eu.chargetime.simulator.software.log.LogLevel;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Throughput of CommandDispatcher.handle for the console commands. The console classes live in the default
+// package, so DispatchFixture builds the dispatcher there and hands it over as a Consumer. The fleet commands
+// print a report per call, which goes to a discarding stream so the terminal is not measured.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    private static final String[] INPUTS = {"lock all", "unlock all", "plugin all", "plugout all", "status", "count", "unknown 42"};
+
+    private Consumer<String> dispatcher;
+    private PrintStream out;
+    private int next;
+
+    @SuppressWarnings("unchecked")
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        Log.setLevel(LogLevel.OFF);
+        dispatcher = (Consumer<String>) Class.forName("DispatchFixture").getConstructor().newInstance();
+        out = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(out);
+    }
+
+    @Benchmark
+    public void handle() {
+        dispatcher.accept(INPUTS[next++ % INPUTS.length]);
+    }
+}
@@ -0,0 +1,42 @@
+package eu.chargetime.simulator.benchmarks;
+
+import eu.chargetime.simulator.FleetServices;
+import eu.chargetime.simulator.charging.MeterValueEngine;
+import eu.chargetime.simulator.connection.ConnectRateLimiter;
+import eu.chargetime.simulator.connection.Endpoints;
+import eu.chargetime.simulator.connection.ReconnectSupervisor;
+import eu.chargetime.simulator.scheduling.NamedThreadFactory;
+import eu.chargetime.simulator.scheduling.TimingWheel;
+import eu.chargetime.simulator.software.log.Log;
+import eu.chargetime.simulator.software.log.LogLevel;
+import eu.chargetime.simulator.software.ocpp.CallWindow;
+import eu.chargetime.simulator.software.ocpp.OcppMetrics;
+import eu.chargetime.simulator.software.ocpp.transport.JsonClientTransport;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Fleet services wired like Program does, with logging off so the benchmarks measure the simulator and not the log
+final class Fixtures {
+
+    static final String UNREACHABLE_URI = "ws://127.0.0.1:9/";
+
+    private Fixtures() {
+    }
+
+    static FleetServices newServices() {
+        Log.setLevel(LogLevel.OFF);
+        TimingWheel timingWheel = new TimingWheel("timing-wheel", 100, TimeUnit.MILLISECONDS, 512,
+                Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new NamedThreadFactory("timer", true)));
+        ReconnectSupervisor reconnectSupervisor = new ReconnectSupervisor(timingWheel,
+                Executors.newCachedThreadPool(new NamedThreadFactory("connect", true)), new ConnectRateLimiter(1000, 1000, 1000),
+                1000, 120000, 30000);
+        return new FleetServices(timingWheel, reconnectSupervisor, new OcppMetrics(), JsonClientTransport.FACTORY,
+                new MeterValueEngine(timingWheel, 60, 11000),
+                new CallWindow(1, 100, 100000, 30000, (task, delay) -> timingWheel.newTimeout(task, delay, TimeUnit.MILLISECONDS)::cancel));
+    }
+
+    static Endpoints unreachable(FleetServices services) {
+        return new Endpoints(UNREACHABLE_URI, Endpoints.Strategy.WEIGHTED, 5, 30000, services.getScheduler());
+    }
+}
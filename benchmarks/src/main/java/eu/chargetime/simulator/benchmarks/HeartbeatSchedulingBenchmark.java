@@ -0,0 +1,80 @@
+package eu.chargetime.simulator.benchmarks;
+
+import eu.chargetime.simulator.scheduling.NamedThreadFactory;
+import eu.chargetime.simulator.scheduling.TimingWheel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Rescheduling one heartbeat (cancel plus newTimeout, as HeartbeatTimer does) while the heartbeats of the
+// rest of the fleet are pending on the same wheel, and the tick that expires the whole fleet at once and hands
+// every heartbeat to the dispatcher
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeartbeatSchedulingBenchmark {
+
+    private static final Runnable HEARTBEAT = () -> { };
+
+    @Param({"1000", "10000", "100000"})
+    public int boxes;
+
+    private TimingWheel timingWheel;
+    private TimingWheel.Timeout[] timeouts;
+    private int next;
+    private TimingWheel dueWheel;
+    private volatile CountDownLatch due;
+    private final Runnable dueHeartbeat = () -> due.countDown();
+
+    @Setup
+    public void setUp() {
+        timingWheel = new TimingWheel("timing-wheel", 100, TimeUnit.MILLISECONDS, 512,
+                Executors.newSingleThreadExecutor(new NamedThreadFactory("timer", true)));
+        timeouts = new TimingWheel.Timeout[boxes];
+        for (int i = 0; i < boxes; i++)
+            timeouts[i] = timingWheel.newTimeout(HEARTBEAT, interval(), TimeUnit.MILLISECONDS);
+        // Dispatcher as Fixtures wires it for the fleet; a 1 ms tick keeps the wait for the next tick small against
+        // the time spent expiring and dispatching
+        dueWheel = new TimingWheel("due-wheel", 1, TimeUnit.MILLISECONDS, 512,
+                Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new NamedThreadFactory("due-timer", true)));
+    }
+
+    @TearDown
+    public void tearDown() {
+        timingWheel.stop();
+        dueWheel.stop();
+    }
+
+    @Benchmark
+    public TimingWheel.Timeout reschedule() {
+        final int box = next++ % boxes;
+        timeouts[box].cancel();
+        return timeouts[box] = timingWheel.newTimeout(HEARTBEAT, interval(), TimeUnit.MILLISECONDS);
+    }
+
+    // All heartbeats of the fleet due in the same tick, from scheduling until the last one ran: the bucket walk of
+    // the wheel thread plus the handoff of every task to the dispatcher
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 10)
+    @Measurement(iterations = 20)
+    public void expireFleet() throws InterruptedException {
+        due = new CountDownLatch(boxes);
+        for (int i = 0; i < boxes; i++)
+            dueWheel.newTimeout(dueHeartbeat, 0, TimeUnit.MILLISECONDS);
+        if (!due.await(30, TimeUnit.SECONDS))
+            throw new IllegalStateException(due.getCount() + " of " + boxes + " heartbeats not run");
+    }
+
+    // Default heartbeat interval of 300 s plus the jitter HeartbeatTimer adds
+    private static long interval() {
+        return 300000 + ThreadLocalRandom.current().nextLong(250, 750);
+    }
+}
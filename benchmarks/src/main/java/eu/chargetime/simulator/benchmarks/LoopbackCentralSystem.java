@@ -0,0 +1,73 @@
+package eu.chargetime.simulator.benchmarks;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.protocols.IProtocol;
+import org.java_websocket.protocols.Protocol;
+import org.java_websocket.server.WebSocketServer;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+// Minimal OCPP-J central system on localhost that confirms every BootNotification and Heartbeat immediately
+class LoopbackCentralSystem extends WebSocketServer {
+
+    private static final String CURRENT_TIME = "\"currentTime\":\"2020-01-01T00:00:00.000Z\"";
+
+    // Confirms ocpp1.6 like the central system stand-in, clients without a subprotocol are accepted as well
+    private static final List<Draft> DRAFTS = Collections.<Draft>singletonList(new Draft_6455(Collections.emptyList(),
+            Arrays.<IProtocol>asList(new Protocol("ocpp1.6"), new Protocol(""))));
+
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    LoopbackCentralSystem(int port) {
+        super(new InetSocketAddress("127.0.0.1", port), DRAFTS);
+    }
+
+    void startAndWait() throws InterruptedException {
+        start();
+        started.await();
+    }
+
+    String uri() {
+        return "ws://127.0.0.1:" + getPort();
+    }
+
+    @Override
+    public void onStart() {
+        started.countDown();
+    }
+
+    @Override
+    public void onOpen(WebSocket conn, ClientHandshake handshake) {
+    }
+
+    @Override
+    public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+    }
+
+    // [2,"<id>","<action>",{...}]
+    @Override
+    public void onMessage(WebSocket conn, String message) {
+        final int idStart = message.indexOf('"') + 1;
+        final int idEnd = message.indexOf('"', idStart);
+        final int actionStart = message.indexOf('"', idEnd + 1) + 1;
+        final int actionEnd = message.indexOf('"', actionStart);
+        if (idStart <= 0 || idEnd < 0 || actionStart <= 0 || actionEnd < 0)
+            return;
+        final String id = message.substring(idStart, idEnd);
+        final String payload = message.startsWith("BootNotification", actionStart)
+                ? "{\"status\":\"Accepted\"," + CURRENT_TIME + ",\"interval\":300}"
+                : "{" + CURRENT_TIME + "}";
+        conn.send("[3,\"" + id + "\"," + payload + "]");
+    }
+
+    @Override
+    public void onError(WebSocket conn, Exception ex) {
+    }
+}
@@ -0,0 +1,98 @@
+package eu.chargetime.simulator.benchmarks;
+
+import eu.chargetime.ocpp.model.Confirmation;
+import eu.chargetime.simulator.software.ICommand;
+import eu.chargetime.simulator.software.log.Log;
+import eu.chargetime.simulator.software.log.LogLevel;
+import eu.chargetime.simulator.software.ocpp.BoxConfiguration;
+import eu.chargetime.simulator.software.ocpp.CallWindow;
+import eu.chargetime.simulator.software.ocpp.ConfigurationDefaults;
+import eu.chargetime.simulator.software.ocpp.ConnectionStateChange;
+import eu.chargetime.simulator.software.ocpp.CoreEventHandler;
+import eu.chargetime.simulator.software.ocpp.HeartbeatIntervalChange;
+import eu.chargetime.simulator.software.ocpp.OCPPClient;
+import eu.chargetime.simulator.software.ocpp.OcppMetrics;
+import eu.chargetime.simulator.software.ocpp.RemoteTransactionControl;
+import eu.chargetime.simulator.software.ocpp.transport.JsonClientTransport;
+import eu.chargetime.simulator.software.ocpp.transport.SelectorGroup;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// One OCPPClient against the loopback central system: the round trip of a Heartbeat from building the request to
+// its confirmation, over the JSONClient of the OCPP library and over the shared selector transport
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OcppClientBenchmark {
+
+    private static final String IDENTITY = "Bench1";
+
+    @Param({"json", "nio"})
+    public String transport;
+
+    private LoopbackCentralSystem centralSystem;
+    private SelectorGroup selectorGroup;
+    private OcppMetrics metrics;
+    private OCPPClient client;
+
+    @Setup
+    public void setUp() throws InterruptedException, IOException {
+        Log.setLevel(LogLevel.OFF);
+        centralSystem = new LoopbackCentralSystem(0);
+        centralSystem.startAndWait();
+        metrics = new OcppMetrics();
+        ICommand unlock = (String param) -> { };
+        HeartbeatIntervalChange interval = (int seconds) -> { };
+        ConnectionStateChange state = new ConnectionStateChange() {
+            @Override
+            public void connected() {
+            }
+
+            @Override
+            public void disconnected() {
+            }
+        };
+        RemoteTransactionControl transactions = new RemoteTransactionControl() {
+            @Override
+            public boolean remoteStart(String idTag) {
+                return false;
+            }
+
+            @Override
+            public boolean remoteStop(int transactionId) {
+                return false;
+            }
+        };
+        if ("nio".equals(transport))
+            selectorGroup = new SelectorGroup(1);
+        client = new OCPPClient(centralSystem.uri(), IDENTITY, new CoreEventHandler(unlock, transactions, metrics,
+                new BoxConfiguration(ConfigurationDefaults.core(180, 60), null)), interval, state, metrics,
+                selectorGroup == null ? JsonClientTransport.FACTORY : selectorGroup.transportFactory(), CallWindow.unbounded());
+        client.doConnect();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!client.isConnected() || metrics.getInFlight() > 0) {
+            if (System.nanoTime() > deadline)
+                throw new IllegalStateException("loopback central system not reachable at " + centralSystem.uri());
+            Thread.sleep(10);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        client.disconnect();
+        if (selectorGroup != null)
+            selectorGroup.stop();
+        centralSystem.stop(1000);
+    }
+
+    // Waits for the confirmation of this heartbeat, so no calls pile up in the window between invocations
+    @Benchmark
+    public Confirmation heartbeatRoundTrip() {
+        return client.sendHeartbeat(IDENTITY).toCompletableFuture().join();
+    }
+}
@@ -0,0 +1,70 @@
+package eu.chargetime.simulator.benchmarks;
+
+import eu.chargetime.simulator.ChargeBox;
+import eu.chargetime.simulator.FleetServices;
+import eu.chargetime.simulator.connection.Endpoints;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.TimeUnit;
+
+// Heap still in use per ChargeBox after a full GC. Each shot creates a fleet of unconnected boxes and reports
+// the retained bytes per box as the secondary result bytesPerBox.
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class RetainedHeapBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Fleet {
+        @Param({"10000"})
+        public int boxes;
+
+        FleetServices services;
+        Endpoints endpoints;
+        ChargeBox[] fleet;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            services = Fixtures.newServices();
+            endpoints = Fixtures.unreachable(services);
+        }
+
+        @TearDown(Level.Iteration)
+        public void release() {
+            fleet = null;
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            services.getScheduler().stop();
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Retained {
+        public long bytesPerBox;
+    }
+
+    @Benchmark
+    public ChargeBox[] createFleet(Fleet state, Retained retained) {
+        final long before = usedAfterGc();
+        final ChargeBox[] fleet = new ChargeBox[state.boxes];
+        for (int i = 0; i < fleet.length; i++)
+            fleet[i] = new ChargeBox(state.endpoints, "Bench" + i, state.services);
+        state.fleet = fleet;
+        retained.bytesPerBox = (usedAfterGc() - before) / fleet.length;
+        return fleet;
+    }
+
+    private static long usedAfterGc() {
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
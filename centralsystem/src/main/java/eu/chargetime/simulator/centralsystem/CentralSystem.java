@@ -0,0 +1,159 @@
+package eu.chargetime.simulator.centralsystem;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local OCPP 1.6J central system for load tests without a real backend. Point the simulator at
+ * ws://localhost:8180/ocpp and steer the stand-in from its console.
+ *
+ * Options: --port=8180 --backlog=4096 --decoders=cores --scheduler-threads=2 --heartbeat-interval=300
+ * --latency=fixed:0 [--latency.Action=...] --error-rate=0 [--error-rate.Action=...]
+ * --server-calls=UnlockConnector:10,ChangeConfiguration:1 (calls per second over all connections)
+ * --stats-interval=10 (seconds, 0 switches it off)
+ */
+public class CentralSystem {
+
+    private final CentralSystemServer server;
+    private final Sessions sessions = new Sessions();
+    private final CentralSystemStats stats = new CentralSystemStats();
+    private final ScheduledExecutorService scheduler;
+    private final List<ServerCallGenerator> generators = new ArrayList<>();
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final CentralSystem centralSystem;
+        try {
+            centralSystem = new CentralSystem(new Options(args));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(-1);
+            return;
+        }
+        centralSystem.console();
+    }
+
+    CentralSystem(Options options) {
+        final int cores = Runtime.getRuntime().availableProcessors();
+        scheduler = Executors.newScheduledThreadPool(options.getInt("scheduler-threads", 2), runnable -> {
+            Thread thread = new Thread(runnable, "cs-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ResponsePolicy policy = new ResponsePolicy(LatencyDistribution.parse(options.get("latency", "fixed:0")),
+                options.getDouble("error-rate", 0));
+        for (Map.Entry<String, String> entry : options.overrides("latency").entrySet())
+            policy = policy.withLatency(entry.getKey(), LatencyDistribution.parse(entry.getValue()));
+        for (Map.Entry<String, String> entry : options.overrides("error-rate").entrySet())
+            policy = policy.withErrorRate(entry.getKey(), Double.parseDouble(entry.getValue()));
+
+        server = new CentralSystemServer(new InetSocketAddress(options.getInt("port", 8180)), options.getInt("decoders", cores),
+                new Responses(options.getInt("heartbeat-interval", 300)), sessions, stats, scheduler, policy);
+        // A fleet connecting at once overflows the default accept backlog of 50 and stalls in TCP retransmits
+        server.setMaxPendingConnections(options.getInt("backlog", 4096));
+
+        for (String spec : options.get("server-calls", "").split(",")) {
+            if (spec.isEmpty())
+                continue;
+            final String[] parts = spec.split(":");
+            if (parts.length != 2)
+                throw new IllegalArgumentException("server call must be Action:perSecond: " + spec);
+            startGenerator(parts[0], Double.parseDouble(parts[1]));
+        }
+
+        final int statsInterval = options.getInt("stats-interval", 10);
+        if (statsInterval > 0) {
+            scheduler.scheduleAtFixedRate(() -> System.out.println(stats.format(sessions.size())),
+                    statsInterval, statsInterval, TimeUnit.SECONDS);
+        }
+        System.out.println(policy);
+        server.start();
+    }
+
+    private void console() throws IOException, InterruptedException {
+        final BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = in.readLine()) != null) {
+            final String[] parts = line.trim().split("\\s+");
+            try {
+                if (!execute(parts))
+                    break;
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+            }
+        }
+        server.stop(1000);
+        scheduler.shutdownNow();
+    }
+
+    private boolean execute(String[] parts) {
+        switch (parts[0]) {
+            case "":
+                break;
+            case "stats":
+                System.out.println(stats.format(sessions.size()));
+                break;
+            case "policy":
+                System.out.println(server.getPolicy());
+                break;
+            case "latency":
+                // latency <distribution> [Action]
+                server.setPolicy(server.getPolicy().withLatency(parts.length > 2 ? parts[2] : null, LatencyDistribution.parse(parts[1])));
+                System.out.println(server.getPolicy());
+                break;
+            case "error-rate":
+                // error-rate <0..1> [Action]
+                server.setPolicy(server.getPolicy().withErrorRate(parts.length > 2 ? parts[2] : null, Double.parseDouble(parts[1])));
+                System.out.println(server.getPolicy());
+                break;
+            case "call":
+                // call <Action> <identity|all>
+                call(parts[1], parts.length > 2 ? parts[2] : "all");
+                break;
+            case "generate":
+                // generate <Action> <perSecond>
+                startGenerator(parts[1], Double.parseDouble(parts[2]));
+                break;
+            case "quit":
+                return false;
+            default:
+                System.out.println("commands: stats, policy, latency <dist> [Action], error-rate <p> [Action],"
+                        + " call <Action> <identity|all>, generate <Action> <perSecond>, quit");
+                break;
+        }
+        return true;
+    }
+
+    private void call(String action, String target) {
+        if (!ServerCalls.isSupported(action))
+            throw new IllegalArgumentException("unsupported server call: " + action);
+        if ("all".equals(target)) {
+            int sent = 0;
+            for (Sessions.Session session : sessions.snapshot()) {
+                if (server.call(session, action))
+                    sent++;
+            }
+            System.out.println(action + " sent to " + sent + " charge points");
+            return;
+        }
+        final Sessions.Session session = sessions.get(target);
+        if (session == null || !server.call(session, action)) {
+            System.out.println(target + " not connected");
+        }
+    }
+
+    private void startGenerator(String action, double perSecond) {
+        final ServerCallGenerator generator = new ServerCallGenerator(server, sessions, action, perSecond);
+        scheduler.scheduleAtFixedRate(generator, ServerCallGenerator.TICK_MILLIS, ServerCallGenerator.TICK_MILLIS, TimeUnit.MILLISECONDS);
+        generators.add(generator);
+        System.out.println("generating " + generators);
+    }
+}
@@ -0,0 +1,140 @@
+package eu.chargetime.simulator.centralsystem;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.protocols.IProtocol;
+import org.java_websocket.protocols.Protocol;
+import org.java_websocket.server.WebSocketServer;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OCPP-J endpoint at ws://host:port/<anything>/<identity>. Calls are answered on the WebSocket thread when no
+ * delay is configured, otherwise the answer is handed to the scheduler, so slow responses never block a decoder.
+ */
+class CentralSystemServer extends WebSocketServer {
+
+    // ocpp1.6 is confirmed when the charge point asks for it, clients without a subprotocol are accepted too
+    private static final List<Draft> DRAFTS = Collections.<Draft>singletonList(new Draft_6455(Collections.emptyList(),
+            Arrays.<IProtocol>asList(new Protocol("ocpp1.6"), new Protocol(""))));
+
+    private final Responses responses;
+    private final Sessions sessions;
+    private final CentralSystemStats stats;
+    private final ScheduledExecutorService scheduler;
+    private volatile ResponsePolicy policy;
+
+    CentralSystemServer(InetSocketAddress address, int decoders, Responses responses, Sessions sessions,
+                        CentralSystemStats stats, ScheduledExecutorService scheduler, ResponsePolicy policy) {
+        super(address, decoders, DRAFTS);
+        this.responses = responses;
+        this.sessions = sessions;
+        this.stats = stats;
+        this.scheduler = scheduler;
+        this.policy = policy;
+        setTcpNoDelay(true);
+    }
+
+    ResponsePolicy getPolicy() {
+        return policy;
+    }
+
+    void setPolicy(ResponsePolicy policy) {
+        this.policy = policy;
+    }
+
+    @Override
+    public void onOpen(WebSocket conn, ClientHandshake handshake) {
+        final String path = conn.getResourceDescriptor();
+        final String identity = path.substring(path.lastIndexOf('/') + 1);
+        sessions.add(identity.isEmpty() ? String.valueOf(conn.getRemoteSocketAddress()) : identity, conn);
+        stats.connects.increment();
+    }
+
+    @Override
+    public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+        if (sessions.remove(conn) != null)
+            stats.disconnects.increment();
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, String message) {
+        final OcppFrame frame = OcppFrame.parse(message);
+        if (frame == null) {
+            stats.malformed.increment();
+            return;
+        }
+        switch (frame.messageType) {
+            case OcppFrame.CALL:
+                stats.received(frame.action);
+                answer(conn, frame);
+                break;
+            case OcppFrame.CALL_RESULT:
+                stats.serverCallResults.increment();
+                break;
+            default:
+                stats.serverCallErrors.increment();
+                break;
+        }
+    }
+
+    @Override
+    public void onError(WebSocket conn, Exception ex) {
+        if (conn == null)
+            System.err.println("central system error: " + ex);
+    }
+
+    @Override
+    public void onStart() {
+        System.out.println("central system listening on " + getAddress());
+    }
+
+    boolean call(Sessions.Session session, String action) {
+        if (!session.connection.isOpen())
+            return false;
+        session.connection.send(ServerCalls.newCall(action));
+        stats.serverCalls.increment();
+        return true;
+    }
+
+    private void answer(WebSocket conn, OcppFrame frame) {
+        final ResponsePolicy current = policy;
+        final String reply;
+        if (current.injectError(frame.action)) {
+            stats.injectedErrors.increment();
+            reply = OcppFrame.callError(frame.uniqueId, "InternalError", "Simulated error");
+        } else {
+            final String payload = responses.confirm(frame.action);
+            if (payload == null) {
+                stats.notImplemented.increment();
+                reply = OcppFrame.callError(frame.uniqueId, "NotImplemented", frame.action);
+            } else {
+                stats.confirmations.increment();
+                reply = OcppFrame.callResult(frame.uniqueId, payload);
+            }
+        }
+        final long delay = current.delayMicros(frame.action);
+        if (delay <= 0) {
+            send(conn, reply);
+            return;
+        }
+        try {
+            scheduler.schedule(() -> send(conn, reply), delay, TimeUnit.MICROSECONDS);
+        } catch (RejectedExecutionException e) {
+            send(conn, reply);
+        }
+    }
+
+    private static void send(WebSocket conn, String reply) {
+        if (conn.isOpen())
+            conn.send(reply);
+    }
+}
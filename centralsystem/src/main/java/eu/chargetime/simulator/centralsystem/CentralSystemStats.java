@@ -0,0 +1,42 @@
+package eu.chargetime.simulator.centralsystem;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters of the stand-in, updated from the WebSocket threads without locking
+final class CentralSystemStats {
+
+    final LongAdder connects = new LongAdder();
+    final LongAdder disconnects = new LongAdder();
+    final LongAdder confirmations = new LongAdder();
+    final LongAdder injectedErrors = new LongAdder();
+    final LongAdder notImplemented = new LongAdder();
+    final LongAdder malformed = new LongAdder();
+    final LongAdder serverCalls = new LongAdder();
+    final LongAdder serverCallResults = new LongAdder();
+    final LongAdder serverCallErrors = new LongAdder();
+    private final ConcurrentHashMap<String, LongAdder> received = new ConcurrentHashMap<>();
+
+    void received(String action) {
+        LongAdder counter = received.get(action);
+        if (counter == null)
+            counter = received.computeIfAbsent(action, a -> new LongAdder());
+        counter.increment();
+    }
+
+    String format(int open) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("connections: ").append(open).append(" open, ").append(connects.sum()).append(" opened, ")
+                .append(disconnects.sum()).append(" closed").append(System.lineSeparator());
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(received).entrySet())
+            sb.append(String.format("  %-30s %12d%n", entry.getKey(), entry.getValue().sum()));
+        sb.append("confirmations: ").append(confirmations.sum()).append(", injected errors: ").append(injectedErrors.sum())
+                .append(", not implemented: ").append(notImplemented.sum()).append(", malformed: ").append(malformed.sum())
+                .append(System.lineSeparator());
+        sb.append("server calls: ").append(serverCalls.sum()).append(", results: ").append(serverCallResults.sum())
+                .append(", errors: ").append(serverCallErrors.sum());
+        return sb.toString();
+    }
+}
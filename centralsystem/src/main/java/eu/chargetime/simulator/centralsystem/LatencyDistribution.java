@@ -0,0 +1,97 @@
+package eu.chargetime.simulator.centralsystem;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Response delay in microseconds drawn per request. Written as fixed:MS, uniform:MIN:MAX, normal:MEAN:STDDEV,
+ * exponential:MEAN or lognormal:MEDIAN:SIGMA, all in milliseconds.
+ */
+abstract class LatencyDistribution {
+
+    static final LatencyDistribution NONE = fixed(0);
+
+    private final String description;
+
+    private LatencyDistribution(String description) {
+        this.description = description;
+    }
+
+    abstract long sampleMicros();
+
+    @Override
+    public String toString() {
+        return description;
+    }
+
+    static LatencyDistribution parse(String spec) {
+        final String[] parts = spec.split(":");
+        try {
+            switch (parts[0]) {
+                case "fixed":
+                    return fixed(millis(parts[1]));
+                case "uniform":
+                    return uniform(millis(parts[1]), millis(parts[2]));
+                case "normal":
+                    return normal(millis(parts[1]), millis(parts[2]));
+                case "exponential":
+                    return exponential(millis(parts[1]));
+                case "lognormal":
+                    return lognormal(millis(parts[1]), Double.parseDouble(parts[2]));
+                default:
+                    break;
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException("invalid latency distribution: " + spec, e);
+        }
+        throw new IllegalArgumentException("unknown latency distribution: " + spec);
+    }
+
+    static LatencyDistribution fixed(long micros) {
+        return new LatencyDistribution("fixed " + micros + " us") {
+            @Override
+            long sampleMicros() {
+                return micros;
+            }
+        };
+    }
+
+    static LatencyDistribution uniform(long minMicros, long maxMicros) {
+        return new LatencyDistribution("uniform " + minMicros + ".." + maxMicros + " us") {
+            @Override
+            long sampleMicros() {
+                return minMicros + (long) (ThreadLocalRandom.current().nextDouble() * (maxMicros - minMicros));
+            }
+        };
+    }
+
+    static LatencyDistribution normal(long meanMicros, long stddevMicros) {
+        return new LatencyDistribution("normal mean " + meanMicros + " us, stddev " + stddevMicros + " us") {
+            @Override
+            long sampleMicros() {
+                return Math.max(0, meanMicros + (long) (ThreadLocalRandom.current().nextGaussian() * stddevMicros));
+            }
+        };
+    }
+
+    static LatencyDistribution exponential(long meanMicros) {
+        return new LatencyDistribution("exponential mean " + meanMicros + " us") {
+            @Override
+            long sampleMicros() {
+                return (long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * meanMicros);
+            }
+        };
+    }
+
+    static LatencyDistribution lognormal(long medianMicros, double sigma) {
+        return new LatencyDistribution("lognormal median " + medianMicros + " us, sigma " + sigma) {
+            @Override
+            long sampleMicros() {
+                return (long) (medianMicros * Math.exp(ThreadLocalRandom.current().nextGaussian() * sigma));
+            }
+        };
+    }
+
+    private static long millis(String value) {
+        return (long) (Double.parseDouble(value) * 1000);
+    }
+}
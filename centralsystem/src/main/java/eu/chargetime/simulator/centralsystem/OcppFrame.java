@@ -0,0 +1,107 @@
+package eu.chargetime.simulator.centralsystem;
+
+/**
+ * One OCPP-J message, split without a JSON library: [2,"id","Action",{...}], [3,"id",{...}] or
+ * [4,"id","code","description",{...}]. The payload is kept as raw JSON text.
+ */
+final class OcppFrame {
+
+    static final int CALL = 2;
+    static final int CALL_RESULT = 3;
+    static final int CALL_ERROR = 4;
+
+    final int messageType;
+    final String uniqueId;
+    final String action;
+    final String payload;
+
+    private OcppFrame(int messageType, String uniqueId, String action, String payload) {
+        this.messageType = messageType;
+        this.uniqueId = uniqueId;
+        this.action = action;
+        this.payload = payload;
+    }
+
+    // Returns null if the text is not a well-formed OCPP-J frame
+    static OcppFrame parse(String text) {
+        final Cursor cursor = new Cursor(text);
+        if (!cursor.expect('['))
+            return null;
+        final int messageType = cursor.digit();
+        if (messageType < CALL || messageType > CALL_ERROR || !cursor.expect(','))
+            return null;
+        final String uniqueId = cursor.string();
+        if (uniqueId == null || !cursor.expect(','))
+            return null;
+        String action = null;
+        if (messageType != CALL_RESULT) {
+            action = cursor.string();
+            if (action == null || !cursor.expect(','))
+                return null;
+        }
+        final int end = text.lastIndexOf(']');
+        if (end < cursor.position)
+            return null;
+        return new OcppFrame(messageType, uniqueId, action, text.substring(cursor.position, end).trim());
+    }
+
+    static String callResult(String uniqueId, String payload) {
+        return new StringBuilder(uniqueId.length() + payload.length() + 8)
+                .append("[3,\"").append(uniqueId).append("\",").append(payload).append(']').toString();
+    }
+
+    static String callError(String uniqueId, String code, String description) {
+        return "[4,\"" + uniqueId + "\",\"" + code + "\",\"" + description + "\",{}]";
+    }
+
+    static String call(String uniqueId, String action, String payload) {
+        return "[2,\"" + uniqueId + "\",\"" + action + "\"," + payload + "]";
+    }
+
+    private static final class Cursor {
+        private final String text;
+        private int position;
+
+        Cursor(String text) {
+            this.text = text;
+        }
+
+        boolean expect(char c) {
+            skipWhitespace();
+            if (position < text.length() && text.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        int digit() {
+            skipWhitespace();
+            if (position < text.length() && Character.isDigit(text.charAt(position)))
+                return text.charAt(position++) - '0';
+            return -1;
+        }
+
+        String string() {
+            if (!expect('"'))
+                return null;
+            final int start = position;
+            while (position < text.length()) {
+                final char c = text.charAt(position);
+                if (c == '\\') {
+                    position += 2;
+                } else if (c == '"') {
+                    return text.substring(start, position++);
+                } else {
+                    position++;
+                }
+            }
+            return null;
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position)))
+                position++;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package eu.chargetime.simulator.centralsystem;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// --name=value options; --name.Action=value entries are overrides for one OCPP action
+final class Options {
+
+    private final Map<String, String> values = new LinkedHashMap<>();
+
+    Options(String[] args) {
+        for (String arg : args) {
+            if (!arg.startsWith("--"))
+                throw new IllegalArgumentException("unexpected argument: " + arg);
+            final int idx = arg.indexOf('=');
+            if (idx < 0) {
+                values.put(arg.substring(2), "true");
+            } else {
+                values.put(arg.substring(2, idx), arg.substring(idx + 1));
+            }
+        }
+    }
+
+    String get(String name, String defaultValue) {
+        return values.getOrDefault(name, defaultValue);
+    }
+
+    int getInt(String name, int defaultValue) {
+        return Integer.parseInt(get(name, String.valueOf(defaultValue)));
+    }
+
+    double getDouble(String name, double defaultValue) {
+        return Double.parseDouble(get(name, String.valueOf(defaultValue)));
+    }
+
+    // Action to value for every --prefix.Action=value
+    Map<String, String> overrides(String prefix) {
+        final Map<String, String> result = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            if (entry.getKey().startsWith(prefix + "."))
+                result.put(entry.getKey().substring(prefix.length() + 1), entry.getValue());
+        }
+        return result;
+    }
+}
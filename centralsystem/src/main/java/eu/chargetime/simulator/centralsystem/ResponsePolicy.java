@@ -0,0 +1,60 @@
+package eu.chargetime.simulator.centralsystem;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Response delay and error injection, with optional overrides per action. Replaced as a whole at runtime.
+final class ResponsePolicy {
+
+    private final LatencyDistribution latency;
+    private final double errorRate;
+    private final Map<String, LatencyDistribution> latencyByAction;
+    private final Map<String, Double> errorRateByAction;
+
+    ResponsePolicy(LatencyDistribution latency, double errorRate) {
+        this(latency, errorRate, new HashMap<>(), new HashMap<>());
+    }
+
+    private ResponsePolicy(LatencyDistribution latency, double errorRate, Map<String, LatencyDistribution> latencyByAction,
+                           Map<String, Double> errorRateByAction) {
+        if (errorRate < 0 || errorRate > 1)
+            throw new IllegalArgumentException("error rate must be between 0 and 1: " + errorRate);
+        this.latency = latency;
+        this.errorRate = errorRate;
+        this.latencyByAction = latencyByAction;
+        this.errorRateByAction = errorRateByAction;
+    }
+
+    ResponsePolicy withLatency(String action, LatencyDistribution distribution) {
+        if (action == null)
+            return new ResponsePolicy(distribution, errorRate, latencyByAction, errorRateByAction);
+        final Map<String, LatencyDistribution> copy = new HashMap<>(latencyByAction);
+        copy.put(action, distribution);
+        return new ResponsePolicy(latency, errorRate, copy, errorRateByAction);
+    }
+
+    ResponsePolicy withErrorRate(String action, double rate) {
+        if (action == null)
+            return new ResponsePolicy(latency, rate, latencyByAction, errorRateByAction);
+        if (rate < 0 || rate > 1)
+            throw new IllegalArgumentException("error rate must be between 0 and 1: " + rate);
+        final Map<String, Double> copy = new HashMap<>(errorRateByAction);
+        copy.put(action, rate);
+        return new ResponsePolicy(latency, errorRate, latencyByAction, copy);
+    }
+
+    long delayMicros(String action) {
+        return latencyByAction.getOrDefault(action, latency).sampleMicros();
+    }
+
+    boolean injectError(String action) {
+        final double rate = errorRateByAction.getOrDefault(action, errorRate);
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    @Override
+    public String toString() {
+        return "latency " + latency + " " + latencyByAction + ", error rate " + errorRate + " " + errorRateByAction;
+    }
+}
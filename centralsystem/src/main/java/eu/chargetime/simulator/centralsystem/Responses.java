@@ -0,0 +1,64 @@
+package eu.chargetime.simulator.centralsystem;
+
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Confirmation payloads for the charge point initiated messages of OCPP 1.6 core, accepting everything
+final class Responses {
+
+    private static final String ACCEPTED = "{\"idTagInfo\":{\"status\":\"Accepted\"}}";
+
+    private final int heartbeatInterval;
+    private final AtomicInteger transactionIds = new AtomicInteger();
+    private volatile CachedTime currentTime = new CachedTime(0, "");
+
+    Responses(int heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    // Returns null for actions the stand-in does not implement
+    String confirm(String action) {
+        switch (action) {
+            case "BootNotification":
+                return "{\"status\":\"Accepted\",\"currentTime\":\"" + currentTime() + "\",\"interval\":" + heartbeatInterval + "}";
+            case "Heartbeat":
+                return "{\"currentTime\":\"" + currentTime() + "\"}";
+            case "Authorize":
+            case "StopTransaction":
+                return ACCEPTED;
+            case "StartTransaction":
+                return "{\"transactionId\":" + transactionIds.incrementAndGet() + ",\"idTagInfo\":{\"status\":\"Accepted\"}}";
+            case "DataTransfer":
+                return "{\"status\":\"Accepted\"}";
+            case "StatusNotification":
+            case "MeterValues":
+            case "FirmwareStatusNotification":
+            case "DiagnosticsStatusNotification":
+                return "{}";
+            default:
+                return null;
+        }
+    }
+
+    // The timestamp only changes once per second, so it is formatted once per second
+    private String currentTime() {
+        final long second = System.currentTimeMillis() / 1000;
+        CachedTime cached = currentTime;
+        if (cached.second != second) {
+            cached = new CachedTime(second, DateTimeFormatter.ISO_INSTANT.format(Instant.ofEpochSecond(second)));
+            currentTime = cached;
+        }
+        return cached.text;
+    }
+
+    private static final class CachedTime {
+        final long second;
+        final String text;
+
+        CachedTime(long second, String text) {
+            this.second = second;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package eu.chargetime.simulator.centralsystem;
+
+// Sends one kind of central system initiated call to randomly picked charge points at a fleet-wide rate.
+// Run every TICK_MILLIS; fractions of a call are carried over to the next tick.
+final class ServerCallGenerator implements Runnable {
+
+    static final long TICK_MILLIS = 100;
+
+    private final CentralSystemServer server;
+    private final Sessions sessions;
+    private final String action;
+    private final double perTick;
+    private double owed;
+
+    ServerCallGenerator(CentralSystemServer server, Sessions sessions, String action, double perSecond) {
+        if (!ServerCalls.isSupported(action))
+            throw new IllegalArgumentException("unsupported server call: " + action);
+        this.server = server;
+        this.sessions = sessions;
+        this.action = action;
+        this.perTick = perSecond * TICK_MILLIS / 1000.0;
+    }
+
+    @Override
+    public void run() {
+        owed += perTick;
+        while (owed >= 1) {
+            owed--;
+            final Sessions.Session session = sessions.random();
+            if (session == null) {
+                owed = 0;
+                return;
+            }
+            server.call(session, action);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return action + " " + (perTick * 1000 / TICK_MILLIS) + "/s";
+    }
+}
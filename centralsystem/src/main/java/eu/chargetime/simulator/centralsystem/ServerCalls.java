@@ -0,0 +1,39 @@
+package eu.chargetime.simulator.centralsystem;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Payloads for the central system initiated calls the simulator is expected to handle
+final class ServerCalls {
+
+    private static final AtomicInteger ids = new AtomicInteger();
+
+    private ServerCalls() {
+    }
+
+    static boolean isSupported(String action) {
+        return payload(action) != null;
+    }
+
+    static String newCall(String action) {
+        return OcppFrame.call("cs-" + ids.incrementAndGet(), action, payload(action));
+    }
+
+    private static String payload(String action) {
+        switch (action) {
+            case "UnlockConnector":
+                return "{\"connectorId\":1}";
+            case "RemoteStartTransaction":
+                return "{\"connectorId\":1,\"idTag\":\"SIMULATOR\"}";
+            case "RemoteStopTransaction":
+                return "{\"transactionId\":1}";
+            case "ChangeConfiguration":
+                return "{\"key\":\"HeartbeatInterval\",\"value\":\"60\"}";
+            case "GetConfiguration":
+                return "{}";
+            case "Reset":
+                return "{\"type\":\"Soft\"}";
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package eu.chargetime.simulator.centralsystem;
+
+import org.java_websocket.WebSocket;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Open charge point connections by identity, with an array kept dense by swap-remove for random picks
+final class Sessions {
+
+    private final ConcurrentHashMap<String, Session> byIdentity = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<WebSocket, Session> byConnection = new ConcurrentHashMap<>();
+    private Session[] open = new Session[1024];
+    private int size;
+
+    static final class Session {
+        final String identity;
+        final WebSocket connection;
+        private int index;
+
+        Session(String identity, WebSocket connection) {
+            this.identity = identity;
+            this.connection = connection;
+        }
+    }
+
+    Session add(String identity, WebSocket connection) {
+        final Session session = new Session(identity, connection);
+        byConnection.put(connection, session);
+        final Session previous = byIdentity.put(identity, session);
+        synchronized (this) {
+            if (previous != null)
+                removeFromArray(previous);
+            if (size == open.length) {
+                final Session[] grown = new Session[size * 2];
+                System.arraycopy(open, 0, grown, 0, size);
+                open = grown;
+            }
+            session.index = size;
+            open[size++] = session;
+        }
+        return session;
+    }
+
+    Session remove(WebSocket connection) {
+        final Session session = byConnection.remove(connection);
+        if (session == null)
+            return null;
+        byIdentity.remove(session.identity, session);
+        synchronized (this) {
+            removeFromArray(session);
+        }
+        return session;
+    }
+
+    Session get(String identity) {
+        return byIdentity.get(identity);
+    }
+
+    synchronized Session random() {
+        return size == 0 ? null : open[ThreadLocalRandom.current().nextInt(size)];
+    }
+
+    synchronized Session[] snapshot() {
+        final Session[] copy = new Session[size];
+        System.arraycopy(open, 0, copy, 0, size);
+        return copy;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    private void removeFromArray(Session session) {
+        final int index = session.index;
+        if (index < 0 || index >= size || open[index] != session)
+            return;
+        final Session last = open[--size];
+        open[index] = last;
+        last.index = index;
+        open[size] = null;
+        session.index = -1;
+    }
+}
@@ -25,51 +25,216 @@ package eu.chargetime.simulator;
     SOFTWARE.
  */
 
-import eu.chargetime.simulator.commands.*;
-import eu.chargetime.simulator.hardware.*;
+import eu.chargetime.ocpp.model.Confirmation;
+import eu.chargetime.simulator.charging.TransactionController;
+import eu.chargetime.simulator.commands.UnlockCommand;
+import eu.chargetime.simulator.connection.Endpoints;
+import eu.chargetime.simulator.connection.ReconnectSupervisor;
+import eu.chargetime.simulator.hardware.PackedHardware;
+import eu.chargetime.simulator.software.log.Log;
+import eu.chargetime.simulator.software.log.LogTopic;
+import eu.chargetime.simulator.software.ocpp.BoxConfiguration;
+import eu.chargetime.simulator.software.ocpp.ConfigurationDefaults;
 import eu.chargetime.simulator.software.ocpp.CoreEventHandler;
 import eu.chargetime.simulator.software.ocpp.OCPPClient;
+import eu.chargetime.simulator.software.ocpp.OcppAction;
 
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 public class ChargeBox implements Runnable, SendHeartbeatCallback {
 
-    private ILock lock;
-    private IOutlet outlet;
+    private final PackedHardware hardware;
 
-    private boolean run;
-    private final String uriOCPPServer;
+    private volatile boolean run;
+    private boolean released;
+    private final Endpoints endpoints;
     private final String identity;
 
-    public final LockCommand lockCommand;
-    public final UnlockCommand unlockCommand;
-    public final StatusCommand isLockedCommand;
-    public final PluginCommand pluginCommand;
-    public final PullPlugCommand pullPluginCommand;
-    private final HeartbeatThread heartbeatThread;
-    private OCPPClient ocppClient;
+    private final HeartbeatTimer heartbeatTimer;
+    private final ReconnectSupervisor.Handle reconnectHandle;
+    private final Endpoints.Binding binding;
+    private final FleetServices services;
+    private final TransactionController transactions;
+    private final BoxConfiguration configuration;
+    private volatile OCPPClient ocppClient;
 
-    public ChargeBox(String uriOCPPServer, String identity) {
+    public ChargeBox(Endpoints endpoints, String identity, FleetServices services) {
         this.run = true;
-        this.uriOCPPServer = uriOCPPServer;
+        this.endpoints = endpoints;
         this.identity = identity;
-        ChargeBoxFirmware firmware = new ChargeBoxFirmware();
-        lock = new SimpleLock(firmware,true);
-        outlet = new OutletLockDecorator(new SimpleOutlet(firmware), lock);
+        this.services = services;
+        // Lock and outlet are two bits in the fleet's table, the slot also indexes the energy model
+        int slot = services.getHardware().allocate(true);
+        transactions = new TransactionController(identity, () -> ocppClient, services.getMeterValues(), slot, this::plugIn);
+        ChargeBoxFirmware firmware = new ChargeBoxFirmware(identity, transactions);
+        hardware = new PackedHardware(services.getHardware(), slot, firmware, firmware);
 
-        lockCommand = new LockCommand(lock);
-        unlockCommand = new UnlockCommand(lock);
-        isLockedCommand = new StatusCommand(lock, outlet);
-        pluginCommand = new PluginCommand(outlet);
-        pullPluginCommand = new PullPlugCommand(outlet);
-
-        heartbeatThread = new HeartbeatThread(this);
+        heartbeatTimer = new HeartbeatTimer(this, services.getScheduler());
+        heartbeatTimer.override(services.getHeartbeatOverride());
+        configuration = new BoxConfiguration(services.getConfiguration(), this::configurationChanged);
+        reconnectHandle = services.getReconnectSupervisor().register(identity, this::connect);
+        binding = endpoints.bind(identity, reconnectHandle);
     }
 
+    // Stops the box at once, requests still in flight are abandoned; also ends a shutdown() that is still waiting
     public void stop() {
-        heartbeatThread.stop();
-        this.run = false;
-        System.out.println(identity + " stopped");
+        halt();
+        transactions.shutdown();
+        final OCPPClient client = ocppClient;
+        if (client != null) {
+            client.disconnect();
+        }
+        release();
+    }
+
+    // Stops the box gracefully: a running transaction is stopped with StopTransaction, then wait for the confirmations
+    // still in flight and close the connection. Completes with true once the connection is closed that way, false if
+    // the box was already stopping.
+    public CompletionStage<Boolean> shutdown() {
+        if (!halt()) {
+            return CompletableFuture.completedFuture(false);
+        }
+        final OCPPClient client = ocppClient;
+        if (client == null || !client.isConnected()) {
+            // Without a connection there is nobody to send StopTransaction to
+            transactions.shutdown();
+            if (client != null) {
+                client.disconnect();
+            }
+            release();
+            return CompletableFuture.completedFuture(true);
+        }
+        return transactions.close()
+                .thenCompose(closed -> client.drained())
+                .thenCompose(drained -> client.close())
+                .thenApply(closed -> {
+                    release();
+                    return true;
+                });
+    }
+
+    // No more heartbeats or reconnects; false if the box was already stopping. Transactions are ended by the caller.
+    private boolean halt() {
+        synchronized (this) {
+            if (!run) {
+                return false;
+            }
+            this.run = false;
+        }
+        heartbeatTimer.stop();
+        reconnectHandle.stop();
+        binding.release();
+        return true;
+    }
+
+    private void release() {
+        synchronized (this) {
+            if (released) {
+                return;
+            }
+            released = true;
+            ocppClient = null;
+            // Hardware commands still holding this box, e.g. from a fleet snapshot, must not reach the slot's next owner
+            hardware.detach();
+        }
+        services.getHardware().release(hardware.getSlot());
+        Log.info(LogTopic.LIFECYCLE, identity, "stopped");
+    }
+
+    public boolean isConnected() {
+        OCPPClient client = ocppClient;
+        return client != null && client.isConnected();
+    }
+
+    private void connect() {
+        OCPPClient client = ocppClient;
+        if (run && client != null) {
+            Endpoints.Endpoint endpoint = binding.next();
+            client.setRoundTrips(endpoint.getLatency());
+            client.doConnect(endpoint.getUri());
+        }
+    }
+
+    public void overrideHeartbeatInterval(int seconds) {
+        heartbeatTimer.override(seconds);
+    }
+
+    public BoxConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    // ChangeConfiguration of a key the box runs on takes effect at once; the values are already validated.
+    // The heartbeat timer gets its interval only from here, also the one of a BootNotification confirmation.
+    private void configurationChanged(String key, String value) {
+        switch (key) {
+            case ConfigurationDefaults.HEARTBEAT_INTERVAL:
+                heartbeatTimer.setInterval(Integer.parseInt(value));
+                break;
+            case ConfigurationDefaults.METER_VALUE_SAMPLE_INTERVAL:
+                transactions.setSampleInterval(Integer.parseInt(value));
+                break;
+            default:
+                break;
+        }
+    }
+
+    // What a driver does at the box: open the lock if needed, plug in and lock the cable.
+    // Like the other hardware operations it returns whether the box changed.
+    public synchronized boolean plugIn() {
+        if (hardware.isPluggedIn()) {
+            return false;
+        }
+        hardware.unlock();
+        hardware.plugin();
+        hardware.lock();
+        return true;
+    }
+
+    public synchronized boolean unplug() {
+        if (!hardware.isPluggedIn()) {
+            return false;
+        }
+        hardware.unlock();
+        hardware.pullplug();
+        return true;
+    }
+
+    public synchronized boolean lock() {
+        if (hardware.isLocked()) {
+            return false;
+        }
+        hardware.lock();
+        return true;
+    }
+
+    public synchronized boolean unlock() {
+        if (!hardware.isLocked()) {
+            return false;
+        }
+        hardware.unlock();
+        return true;
+    }
+
+    public boolean isLocked() {
+        return hardware.isLocked();
+    }
+
+    public boolean isCharging() {
+        return transactions.isCharging();
+    }
+
+    public boolean isPluggedIn() {
+        return hardware.isPluggedIn();
+    }
+
+    // Sends one message outside the box's own rhythm; null if the box cannot send it now
+    public CompletionStage<Confirmation> send(OcppAction action) {
+        if (action == OcppAction.HEARTBEAT) {
+            final OCPPClient client = ocppClient;
+            return client != null && client.isConnected() ? client.sendHeartbeat(identity) : null;
+        }
+        return transactions.send(action);
     }
 
     @Override
@@ -84,20 +249,20 @@ public class ChargeBox implements Runnable, SendHeartbeatCallback {
         return identity;
     }
 
+    // Connecting and reconnecting is up to the ReconnectSupervisor, the thread ends here
     @Override
     public void run() {
-        System.out.println(identity + " started");
-        ocppClient = new OCPPClient(uriOCPPServer, this.identity, new CoreEventHandler(unlockCommand), heartbeatThread);
-        new Thread(heartbeatThread).start();
-        while (run) {
-            if (!ocppClient.isConnected()) {
-                ocppClient.doConnect();
-                long delay = ThreadLocalRandom.current().nextInt(1000, 5000);
-                try { Thread.sleep(delay); } catch (InterruptedException e) {}
+        synchronized (this) {
+            if (!run) {
+                return;
             }
-            try { Thread.sleep(100); } catch (InterruptedException e) {}
+            Log.info(LogTopic.LIFECYCLE, identity, "started");
+            CoreEventHandler handler = new CoreEventHandler(new UnlockCommand(hardware), transactions, services.getMetrics(),
+                    configuration);
+            ocppClient = new OCPPClient(endpoints.getEndpoints().get(0).getUri(), this.identity, handler, configuration, binding,
+                    services.getMetrics(), services.getTransports(), services.getCallWindow());
         }
-        ocppClient.disconnect();
-        ocppClient = null;
+        heartbeatTimer.start();
+        reconnectHandle.start();
     }
 }
@@ -27,26 +27,51 @@ package eu.chargetime.simulator;
 
 import eu.chargetime.simulator.hardware.Events.ILockEventHandler;
 import eu.chargetime.simulator.hardware.Events.IOutletEventHandler;
+import eu.chargetime.simulator.software.log.Log;
+import eu.chargetime.simulator.software.log.LogTopic;
 
 public class ChargeBoxFirmware implements ILockEventHandler, IOutletEventHandler {
 
+    private final String identity;
+    private final IOutletEventHandler outletListener;
+
+    public ChargeBoxFirmware() {
+        this(null);
+    }
+
+    public ChargeBoxFirmware(String identity) {
+        this(identity, null);
+    }
+
+    // The listener sees plug events after the firmware, e.g. to start and stop transactions
+    public ChargeBoxFirmware(String identity, IOutletEventHandler outletListener) {
+        this.identity = identity;
+        this.outletListener = outletListener;
+    }
+
     @Override
     public void onLocked() {
-        System.out.println("Locked");
+        Log.info(LogTopic.HARDWARE, identity, "Locked");
     }
 
     @Override
     public void onUnlocked() {
-        System.out.println("Unlocked");
+        Log.info(LogTopic.HARDWARE, identity, "Unlocked");
     }
 
     @Override
     public void connected() {
-        System.out.println("Connected");
+        Log.info(LogTopic.HARDWARE, identity, "Connected");
+        if (outletListener != null) {
+            outletListener.connected();
+        }
     }
 
     @Override
     public void disconnected() {
-        System.out.println("Disconnected");
+        Log.info(LogTopic.HARDWARE, identity, "Disconnected");
+        if (outletListener != null) {
+            outletListener.disconnected();
+        }
     }
 }
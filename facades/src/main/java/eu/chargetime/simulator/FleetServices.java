@@ -0,0 +1,77 @@
+package eu.chargetime.simulator;
+
+import eu.chargetime.simulator.charging.MeterValueEngine;
+import eu.chargetime.simulator.connection.ReconnectSupervisor;
+import eu.chargetime.simulator.hardware.HardwareStateTable;
+import eu.chargetime.simulator.scheduling.Scheduler;
+import eu.chargetime.simulator.software.ocpp.CallWindow;
+import eu.chargetime.simulator.software.ocpp.ConfigurationDefaults;
+import eu.chargetime.simulator.software.ocpp.OcppMetrics;
+import eu.chargetime.simulator.software.ocpp.transport.OcppTransportFactory;
+
+// Everything the charge boxes of one fleet share
+public class FleetServices {
+
+    private final Scheduler scheduler;
+    private final ReconnectSupervisor reconnectSupervisor;
+    private final OcppMetrics metrics;
+    private final OcppTransportFactory transports;
+    private final MeterValueEngine meterValues;
+    private final CallWindow callWindow;
+    private final ConfigurationDefaults configuration;
+    private final HardwareStateTable hardware = new HardwareStateTable();
+    private volatile int heartbeatOverride;
+
+    public FleetServices(Scheduler scheduler, ReconnectSupervisor reconnectSupervisor, OcppMetrics metrics,
+                         OcppTransportFactory transports, MeterValueEngine meterValues, CallWindow callWindow) {
+        this.scheduler = scheduler;
+        this.reconnectSupervisor = reconnectSupervisor;
+        this.metrics = metrics;
+        this.transports = transports;
+        this.meterValues = meterValues;
+        this.callWindow = callWindow;
+        this.configuration = ConfigurationDefaults.core(HeartbeatTimer.DEFAULT_INTERVAL_SECONDS, meterValues.getSampleInterval());
+    }
+
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    public ReconnectSupervisor getReconnectSupervisor() {
+        return reconnectSupervisor;
+    }
+
+    public OcppMetrics getMetrics() {
+        return metrics;
+    }
+
+    public OcppTransportFactory getTransports() {
+        return transports;
+    }
+
+    public MeterValueEngine getMeterValues() {
+        return meterValues;
+    }
+
+    public CallWindow getCallWindow() {
+        return callWindow;
+    }
+
+    // OCPP configuration every box starts with; a box only stores the keys changed on it
+    public ConfigurationDefaults getConfiguration() {
+        return configuration;
+    }
+
+    public HardwareStateTable getHardware() {
+        return hardware;
+    }
+
+    // Heartbeat interval forced on every box regardless of the central system, 0 means none
+    public int getHeartbeatOverride() {
+        return heartbeatOverride;
+    }
+
+    public void setHeartbeatOverride(int seconds) {
+        this.heartbeatOverride = Math.max(0, seconds);
+    }
+}
@@ -0,0 +1,102 @@
+package eu.chargetime.simulator;
+
+import eu.chargetime.simulator.scheduling.Scheduler;
+import eu.chargetime.simulator.software.log.Log;
+import eu.chargetime.simulator.software.log.LogTopic;
+import eu.chargetime.simulator.software.ocpp.HeartbeatIntervalChange;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+class HeartbeatTimer implements HeartbeatIntervalChange {
+    static final int DEFAULT_INTERVAL_SECONDS = 180;
+
+    private final SendHeartbeatCallback sendHeartbeatCallback;
+    private final Scheduler scheduler;
+    private volatile int heartbeatIntervalSeconds;
+    private int confirmedIntervalSeconds;
+    private int overrideSeconds;
+    private volatile boolean run;
+    private long nextDue;
+    private Scheduler.Timeout timeout;
+
+    HeartbeatTimer(SendHeartbeatCallback sendHeartbeatCallback, Scheduler scheduler) {
+        this.sendHeartbeatCallback = sendHeartbeatCallback;
+        this.scheduler = scheduler;
+        this.heartbeatIntervalSeconds = DEFAULT_INTERVAL_SECONDS;
+        this.confirmedIntervalSeconds = DEFAULT_INTERVAL_SECONDS;
+        this.run = true;
+    }
+
+    public synchronized void start() {
+        nextDue = scheduler.currentTimeMillis() + heartbeatIntervalSeconds * 1000L;
+        schedule();
+    }
+
+    private void onDue() {
+        synchronized (this) {
+            if (!run) {
+                return;
+            }
+            nextDue += heartbeatIntervalSeconds * 1000L;
+            schedule();
+        }
+        sendHeartbeat();
+    }
+
+    // The deadline stays on the interval grid, only the actual send time gets the jitter
+    private void schedule() {
+        if (!run) {
+            return;
+        }
+        final long now = scheduler.currentTimeMillis();
+        if (nextDue < now) {
+            nextDue = now;
+        }
+        final long delay = nextDue - now + ThreadLocalRandom.current().nextInt(250, 750);
+        timeout = scheduler.newTimeout(this::onDue, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void sendHeartbeat() {
+        sendHeartbeatCallback.sendHeartbeat();
+    }
+
+    public synchronized void stop() {
+        Log.debug(LogTopic.LIFECYCLE, sendHeartbeatCallback.getIdentiy(), "HeartbeatTimer stopped");
+        run = false;
+        if (timeout != null) {
+            timeout.cancel();
+            timeout = null;
+        }
+    }
+
+    // Interval confirmed by the central system; it only takes effect while no override is set
+    @Override
+    public synchronized void setInterval(int seconds) {
+//        System.out.println("Setze Interval: " + seconds);
+        if (seconds <= 0) {
+            return;
+        }
+        confirmedIntervalSeconds = seconds;
+        if (overrideSeconds <= 0) {
+            apply(seconds);
+        }
+    }
+
+    // Pins the interval regardless of what the central system confirms, 0 goes back to the confirmed one
+    public synchronized void override(int seconds) {
+        overrideSeconds = Math.max(0, seconds);
+        apply(overrideSeconds > 0 ? overrideSeconds : confirmedIntervalSeconds);
+    }
+
+    private void apply(int seconds) {
+        if (seconds == heartbeatIntervalSeconds) {
+            return;
+        }
+        nextDue += (seconds - heartbeatIntervalSeconds) * 1000L;
+        this.heartbeatIntervalSeconds = seconds;
+        if (timeout != null && timeout.cancel()) {
+            schedule();
+        }
+    }
+}
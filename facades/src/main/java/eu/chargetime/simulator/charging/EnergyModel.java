@@ -0,0 +1,185 @@
+package eu.chargetime.simulator.charging;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Energy and power of every charge box in primitive arrays indexed by the box's hardware slot. advance() moves all
+ * charging slots forward in one allocation-free loop and splits it across the fork/join pool once the fleet is
+ * large enough. Power follows a constant-current / constant-voltage curve: full power up to the knee, then falling
+ * linearly with the remaining state of charge. All access is under the model's monitor, a tick holds it for the
+ * whole pass, so readers always see a consistent slot.
+ */
+public class EnergyModel {
+
+    private static final int CHUNK = 8192;
+    private static final double MIN_TAPER = 0.05;
+
+    private final ForkJoinPool pool;
+    private final double maxPowerWatts;
+    private boolean[] charging;
+    private double[] powerW;
+    private double[] energyWh;
+    private double[] soc;
+    private double[] capacityWh;
+    private double[] ratedW;
+    private double[] knee;
+    private int slots;
+    private int active;
+    private Chunk[] chunks = new Chunk[0];
+    private int chunkCount;
+    private final Pass pass = new Pass();
+
+    public EnergyModel(double maxPowerWatts, int initialSlots, ForkJoinPool pool) {
+        this.maxPowerWatts = maxPowerWatts;
+        this.pool = pool;
+        final int capacity = Math.max(16, initialSlots);
+        charging = new boolean[capacity];
+        powerW = new double[capacity];
+        energyWh = new double[capacity];
+        soc = new double[capacity];
+        capacityWh = new double[capacity];
+        ratedW = new double[capacity];
+        knee = new double[capacity];
+    }
+
+    // Slots are reused for new boxes, whose energy register starts at 0
+    public synchronized void attach(int slot) {
+        if (slot >= charging.length)
+            grow(Math.max(slot + 1, charging.length * 2));
+        slots = Math.max(slots, slot + 1);
+        stop(slot);
+        energyWh[slot] = 0;
+    }
+
+    public synchronized void release(int slot) {
+        stop(slot);
+        energyWh[slot] = 0;
+    }
+
+    // A car with a random battery, state of charge and curve plugs in
+    public synchronized void start(int slot) {
+        if (charging[slot])
+            return;
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        charging[slot] = true;
+        capacityWh[slot] = random.nextInt(40, 101) * 1000.0;
+        soc[slot] = random.nextDouble(0.1, 0.5);
+        knee[slot] = random.nextDouble(0.75, 0.85);
+        ratedW[slot] = maxPowerWatts;
+        powerW[slot] = power(slot);
+        active++;
+    }
+
+    public synchronized void stop(int slot) {
+        if (!charging[slot])
+            return;
+        charging[slot] = false;
+        powerW[slot] = 0;
+        active--;
+    }
+
+    public synchronized double getEnergyWh(int slot) {
+        return energyWh[slot];
+    }
+
+    public synchronized double getPowerW(int slot) {
+        return powerW[slot];
+    }
+
+    public synchronized double getSoc(int slot) {
+        return soc[slot];
+    }
+
+    public synchronized int getActive() {
+        return active;
+    }
+
+    public synchronized void advance(double seconds) {
+        if (active == 0 || seconds <= 0)
+            return;
+        if (slots <= CHUNK || pool.getParallelism() < 2) {
+            advance(0, slots, seconds);
+            return;
+        }
+        final int count = (slots + CHUNK - 1) / CHUNK;
+        if (chunks.length < count) {
+            final int from = chunks.length;
+            chunks = Arrays.copyOf(chunks, count);
+            for (int i = from; i < count; i++)
+                chunks[i] = new Chunk(i * CHUNK);
+        }
+        for (int i = 0; i < count; i++) {
+            chunks[i].reinitialize();
+            chunks[i].seconds = seconds;
+            chunks[i].to = Math.min(slots, (i + 1) * CHUNK);
+        }
+        chunkCount = count;
+        pass.reinitialize();
+        pool.invoke(pass);
+    }
+
+    private void advance(int from, int to, double seconds) {
+        final boolean[] charging = this.charging;
+        final double[] powerW = this.powerW;
+        final double[] energyWh = this.energyWh;
+        final double[] soc = this.soc;
+        final double[] capacityWh = this.capacityWh;
+        for (int i = from; i < to; i++) {
+            if (!charging[i])
+                continue;
+            final double wh = powerW[i] * seconds / 3600;
+            energyWh[i] += wh;
+            soc[i] = Math.min(1, soc[i] + wh / capacityWh[i]);
+            powerW[i] = power(i);
+        }
+    }
+
+    private double power(int slot) {
+        final double s = soc[slot];
+        if (s >= 1)
+            return 0;
+        if (s < knee[slot])
+            return ratedW[slot];
+        return ratedW[slot] * Math.max(MIN_TAPER, (1 - s) / (1 - knee[slot]));
+    }
+
+    private void grow(int capacity) {
+        charging = Arrays.copyOf(charging, capacity);
+        powerW = Arrays.copyOf(powerW, capacity);
+        energyWh = Arrays.copyOf(energyWh, capacity);
+        soc = Arrays.copyOf(soc, capacity);
+        capacityWh = Arrays.copyOf(capacityWh, capacity);
+        ratedW = Arrays.copyOf(ratedW, capacity);
+        knee = Arrays.copyOf(knee, capacity);
+    }
+
+    // Forks all chunks but the first, runs that one itself and joins the rest; the tasks are reused every tick
+    private final class Pass extends RecursiveAction {
+        @Override
+        protected void compute() {
+            for (int i = 1; i < chunkCount; i++)
+                chunks[i].fork();
+            chunks[0].compute();
+            for (int i = chunkCount - 1; i > 0; i--)
+                chunks[i].join();
+        }
+    }
+
+    private final class Chunk extends RecursiveAction {
+        private final int from;
+        private int to;
+        private double seconds;
+
+        Chunk(int from) {
+            this.from = from;
+        }
+
+        @Override
+        protected void compute() {
+            advance(from, to, seconds);
+        }
+    }
+}
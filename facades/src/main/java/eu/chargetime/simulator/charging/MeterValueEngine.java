@@ -0,0 +1,110 @@
+package eu.chargetime.simulator.charging;
+
+import eu.chargetime.simulator.scheduling.Scheduler;
+import eu.chargetime.simulator.software.log.Log;
+import eu.chargetime.simulator.software.log.LogTopic;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fleet-wide source of MeterValues. Every tick first advances the EnergyModel of the whole fleet, then samples
+ * the due bucket: running transactions sit in a ring of one-second buckets, so there is no timer per transaction
+ * and a transaction costs nothing between two samples. Stopped transactions simply do not ask to be sampled again.
+ */
+public class MeterValueEngine {
+
+    public interface Sampled {
+        // Sends one sample and returns the seconds until the next one, 0 to drop out
+        int sample(long nowMillis);
+    }
+
+    private static final int SLOTS = 4096;
+    private static final int MASK = SLOTS - 1;
+
+    private final Scheduler scheduler;
+    private final int sampleIntervalSeconds;
+    private final EnergyModel energy;
+    private final ArrayList<Sampled>[] buckets;
+    private ArrayList<Sampled> spare = new ArrayList<>();
+    private long second;
+    private long startMillis;
+    private long advancedMillis;
+    private boolean started;
+
+    @SuppressWarnings("unchecked")
+    public MeterValueEngine(Scheduler scheduler, int sampleIntervalSeconds, int powerWatts) {
+        if (sampleIntervalSeconds <= 0 || sampleIntervalSeconds >= SLOTS)
+            throw new IllegalArgumentException("sample interval out of range: " + sampleIntervalSeconds);
+        this.scheduler = scheduler;
+        this.sampleIntervalSeconds = sampleIntervalSeconds;
+        this.energy = new EnergyModel(powerWatts, 1024, ForkJoinPool.commonPool());
+        this.buckets = new ArrayList[SLOTS];
+        for (int i = 0; i < SLOTS; i++)
+            buckets[i] = new ArrayList<>();
+    }
+
+    public int getSampleInterval() {
+        return sampleIntervalSeconds;
+    }
+
+    public EnergyModel getEnergy() {
+        return energy;
+    }
+
+    // Transactions currently charging
+    public int getActive() {
+        return energy.getActive();
+    }
+
+    // Intervals beyond the ring are capped at SLOTS - 1 seconds
+    public synchronized void schedule(Sampled sampled, int delaySeconds) {
+        final int delay = Math.max(1, Math.min(delaySeconds, MASK));
+        buckets[(int) ((second + delay) & MASK)].add(sampled);
+        if (!started) {
+            started = true;
+            startMillis = scheduler.currentTimeMillis();
+            advancedMillis = startMillis;
+            next();
+        }
+    }
+
+    private void tick() {
+        final ArrayList<Sampled> due;
+        synchronized (this) {
+            second++;
+            final int index = (int) (second & MASK);
+            due = buckets[index];
+            buckets[index] = spare;
+        }
+        try {
+            final long now = scheduler.currentTimeMillis();
+            energy.advance((now - advancedMillis) / 1000.0);
+            advancedMillis = now;
+            for (Sampled sampled : due) {
+                final int next;
+                try {
+                    next = sampled.sample(now);
+                } catch (RuntimeException e) {
+                    // One failing transaction drops out, the rest of the bucket is still sampled
+                    Log.error(LogTopic.TRANSACTION, null, "MeterValues sampling failed:", e);
+                    continue;
+                }
+                if (next > 0)
+                    schedule(sampled, next);
+            }
+        } finally {
+            // The ring keeps ticking whatever happened, else MeterValues would stop for the whole fleet
+            due.clear();
+            spare = due;
+            next();
+        }
+    }
+
+    // One tick per second on a fixed grid, the bucket of a second is taken when that second has passed
+    private void next() {
+        final long due = startMillis + (second + 1) * 1000;
+        scheduler.newTimeout(this::tick, Math.max(0, due - scheduler.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,315 @@
+package eu.chargetime.simulator.charging;
+
+import eu.chargetime.ocpp.model.Confirmation;
+import eu.chargetime.ocpp.model.core.AuthorizationStatus;
+import eu.chargetime.ocpp.model.core.AuthorizeConfirmation;
+import eu.chargetime.ocpp.model.core.ChargePointStatus;
+import eu.chargetime.ocpp.model.core.IdTagInfo;
+import eu.chargetime.ocpp.model.core.StartTransactionConfirmation;
+import eu.chargetime.simulator.hardware.Events.IOutletEventHandler;
+import eu.chargetime.simulator.software.log.Log;
+import eu.chargetime.simulator.software.log.LogTopic;
+import eu.chargetime.simulator.software.ocpp.OCPPClient;
+import eu.chargetime.simulator.software.ocpp.OcppAction;
+import eu.chargetime.simulator.software.ocpp.RemoteTransactionControl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+/**
+ * Charging transactions of one charge box on connector 1. Plugging in authorizes the box's id tag and starts a
+ * transaction, pulling the plug stops it; the central system can do both remotely. The meter register is the box's
+ * slot in the fleet's EnergyModel, and while charging the MeterValueEngine asks for a reading every sample interval.
+ * The interval starts as the engine's and follows the box's MeterValueSampleInterval.
+ */
+public class TransactionController implements IOutletEventHandler, RemoteTransactionControl {
+
+    private static final int CONNECTOR = 1;
+    private static final int MAX_ID_TAG_LENGTH = 20;
+
+    private enum State { IDLE, AUTHORIZING, STARTING, CHARGING, STOPPING, CLOSED }
+
+    private final String identity;
+    private final String idTag;
+    private final Supplier<OCPPClient> client;
+    private final MeterValueEngine engine;
+    private final EnergyModel energy;
+    private final int slot;
+    private final Runnable plugIn;
+    private State state = State.IDLE;
+    private boolean pluggedIn;
+    private boolean stopRequested;
+    private String remoteIdTag;
+    private int transactionId;
+    private int sampleIntervalSeconds;
+    // The entry the engine samples; replaced when the interval changes, an entry that is no longer current drops out
+    private Sampling sampling;
+    // Set by close(), completes once no transaction is left open
+    private CompletableFuture<Void> closed;
+
+    public TransactionController(String identity, Supplier<OCPPClient> client, MeterValueEngine engine, int slot, Runnable plugIn) {
+        this.identity = identity;
+        this.idTag = identity.length() <= MAX_ID_TAG_LENGTH ? identity : identity.substring(identity.length() - MAX_ID_TAG_LENGTH);
+        this.client = client;
+        this.engine = engine;
+        this.energy = engine.getEnergy();
+        this.slot = slot;
+        this.sampleIntervalSeconds = engine.getSampleInterval();
+        energy.attach(slot);
+        this.plugIn = plugIn;
+    }
+
+    public synchronized boolean isCharging() {
+        return state == State.CHARGING;
+    }
+
+    // A message that leaves the transaction as it is, for load beyond the box's own rhythm: the connector status,
+    // an Authorize of the box's tag or, while charging, a meter reading. Null if there is nothing to send it with.
+    public synchronized CompletionStage<Confirmation> send(OcppAction action) {
+        final OCPPClient ocppClient = client.get();
+        if (ocppClient == null || !ocppClient.isConnected()) {
+            return null;
+        }
+        switch (action) {
+            case STATUS_NOTIFICATION:
+                return ocppClient.statusNotification(CONNECTOR, state == State.CHARGING ? ChargePointStatus.Charging
+                        : pluggedIn ? ChargePointStatus.Preparing : ChargePointStatus.Available);
+            case AUTHORIZE:
+                return ocppClient.authorize(idTag);
+            case METER_VALUES:
+                return state == State.CHARGING ? ocppClient.meterValues(CONNECTOR, transactionId, meterWh()) : null;
+            default:
+                throw new IllegalArgumentException(action.getAction() + " changes the transaction");
+        }
+    }
+
+    // Plug in
+    @Override
+    public synchronized void connected() {
+        pluggedIn = true;
+        final String tag = remoteIdTag;
+        remoteIdTag = null;
+        if (state != State.IDLE) {
+            Log.warn(LogTopic.TRANSACTION, identity, "plugged in while the transaction is", state);
+            return;
+        }
+        begin(tag == null ? idTag : tag, tag == null);
+    }
+
+    // Plug pulled
+    @Override
+    public synchronized void disconnected() {
+        pluggedIn = false;
+        end();
+    }
+
+    // Without a cable the driver is simulated plugging in, which then starts with the remote id tag
+    @Override
+    public boolean remoteStart(String tag) {
+        synchronized (this) {
+            if (state != State.IDLE || tag == null) {
+                return false;
+            }
+            if (pluggedIn) {
+                begin(tag, false);
+                return true;
+            }
+            remoteIdTag = tag;
+        }
+        plugIn.run();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean remoteStop(int transactionId) {
+        if (state != State.CHARGING || this.transactionId != transactionId) {
+            return false;
+        }
+        end();
+        return true;
+    }
+
+    // The box goes away gracefully: a running transaction is stopped with StopTransaction, one still being authorized
+    // or started as soon as it runs, and no new one begins. Completes once the StopTransaction is answered or failed
+    // and the status that follows it is sent, so a caller waiting for the client to drain waits for that as well.
+    public synchronized CompletionStage<Void> close() {
+        if (closed == null) {
+            closed = new CompletableFuture<>();
+            if (state == State.CLOSED) {
+                closed.complete(null);
+            } else {
+                end();
+                settle();
+            }
+        }
+        return closed;
+    }
+
+    // The box goes away at once, a running transaction is dropped without StopTransaction
+    public synchronized void shutdown() {
+        if (state != State.CLOSED) {
+            state = State.CLOSED;
+            energy.release(slot);
+        }
+        if (closed != null) {
+            closed.complete(null);
+        }
+    }
+
+    // Called wherever a transaction ends; a closing controller closes as soon as none is left
+    private void settle() {
+        if (closed != null && state == State.IDLE) {
+            shutdown();
+        }
+    }
+
+    // MeterValueSampleInterval changed: a running transaction samples next after the new interval, 0 stops sampling
+    public synchronized void setSampleInterval(int seconds) {
+        if (seconds < 0 || seconds == sampleIntervalSeconds) {
+            return;
+        }
+        sampleIntervalSeconds = seconds;
+        if (state == State.CHARGING) {
+            sampleEvery();
+        }
+    }
+
+    private void sampleEvery() {
+        sampling = sampleIntervalSeconds > 0 ? new Sampling() : null;
+        if (sampling != null) {
+            engine.schedule(sampling, sampleIntervalSeconds);
+        }
+    }
+
+    private synchronized int sample(Sampling entry) {
+        if (state != State.CHARGING || entry != sampling) {
+            return 0;
+        }
+        final OCPPClient ocppClient = client.get();
+        if (ocppClient != null) {
+            ocppClient.meterValues(CONNECTOR, transactionId, meterWh());
+        }
+        return sampleIntervalSeconds;
+    }
+
+    private final class Sampling implements MeterValueEngine.Sampled {
+        @Override
+        public int sample(long nowMillis) {
+            return TransactionController.this.sample(this);
+        }
+    }
+
+    private void begin(String tag, boolean authorize) {
+        final OCPPClient ocppClient = client.get();
+        if (ocppClient == null || !ocppClient.isConnected()) {
+            Log.info(LogTopic.TRANSACTION, identity, "not connected, no transaction for", tag);
+            return;
+        }
+        stopRequested = false;
+        if (authorize) {
+            state = State.AUTHORIZING;
+            ocppClient.authorize(tag).whenComplete((confirmation, throwable) -> authorized(tag, confirmation, throwable));
+        } else {
+            start(ocppClient, tag);
+        }
+    }
+
+    private synchronized void authorized(String tag, Confirmation confirmation, Throwable throwable) {
+        if (state != State.AUTHORIZING) {
+            return;
+        }
+        if (throwable != null || !(confirmation instanceof AuthorizeConfirmation)
+                || !accepted(((AuthorizeConfirmation) confirmation).getIdTagInfo())) {
+            Log.warn(LogTopic.TRANSACTION, identity, "Authorize rejected:", throwable != null ? throwable : confirmation);
+            state = State.IDLE;
+            settle();
+            return;
+        }
+        final OCPPClient ocppClient = client.get();
+        if (stopRequested || ocppClient == null) {
+            state = State.IDLE;
+            settle();
+            return;
+        }
+        start(ocppClient, tag);
+    }
+
+    private void start(OCPPClient ocppClient, String tag) {
+        state = State.STARTING;
+        ocppClient.startTransaction(CONNECTOR, tag, meterWh())
+                .whenComplete((confirmation, throwable) -> started(confirmation, throwable));
+    }
+
+    private synchronized void started(Confirmation confirmation, Throwable throwable) {
+        if (state != State.STARTING) {
+            return;
+        }
+        if (throwable != null || !(confirmation instanceof StartTransactionConfirmation)
+                || ((StartTransactionConfirmation) confirmation).getTransactionId() == null) {
+            Log.warn(LogTopic.TRANSACTION, identity, "StartTransaction failed:", throwable != null ? throwable : confirmation);
+            state = State.IDLE;
+            settle();
+            return;
+        }
+        final StartTransactionConfirmation stc = (StartTransactionConfirmation) confirmation;
+        transactionId = stc.getTransactionId();
+        state = State.CHARGING;
+        energy.start(slot);
+        Log.info(LogTopic.TRANSACTION, identity, "transaction started:", transactionId);
+        final OCPPClient ocppClient = client.get();
+        if (ocppClient != null) {
+            ocppClient.statusNotification(CONNECTOR, ChargePointStatus.Charging);
+        }
+        if (stopRequested || !accepted(stc.getIdTagInfo())) {
+            end();
+        } else {
+            sampleEvery();
+        }
+    }
+
+    private void end() {
+        if (state == State.AUTHORIZING || state == State.STARTING) {
+            stopRequested = true;
+            return;
+        }
+        if (state != State.CHARGING) {
+            return;
+        }
+        energy.stop(slot);
+        final OCPPClient ocppClient = client.get();
+        if (ocppClient == null) {
+            state = State.IDLE;
+            settle();
+            return;
+        }
+        state = State.STOPPING;
+        ocppClient.stopTransaction(transactionId, meterWh())
+                .whenComplete((confirmation, throwable) -> stopped(throwable));
+    }
+
+    private synchronized void stopped(Throwable throwable) {
+        if (state != State.STOPPING) {
+            return;
+        }
+        state = State.IDLE;
+        if (throwable != null) {
+            Log.warn(LogTopic.TRANSACTION, identity, "StopTransaction failed:", throwable);
+        } else {
+            Log.info(LogTopic.TRANSACTION, identity, "transaction stopped:", transactionId);
+        }
+        final OCPPClient ocppClient = client.get();
+        if (ocppClient != null) {
+            ocppClient.statusNotification(CONNECTOR, pluggedIn ? ChargePointStatus.Finishing : ChargePointStatus.Available);
+        }
+        settle();
+    }
+
+    private int meterWh() {
+        return (int) energy.getEnergyWh(slot);
+    }
+
+    private static boolean accepted(IdTagInfo idTagInfo) {
+        return idTagInfo != null && idTagInfo.getStatus() == AuthorizationStatus.Accepted;
+    }
+}
@@ -0,0 +1,82 @@
+package eu.chargetime.simulator.connection;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fleet-wide limit for WebSocket handshakes: a token bucket caps the rate at which new handshakes start and a
+ * fixed number of slots caps how many are in progress at the same time. Nothing blocks: a caller without a free
+ * slot is queued and granted one when a handshake releases its slot, and every grant carries the delay until its
+ * token is due, which the caller waits out on a timer instead of on a thread.
+ */
+public class ConnectRateLimiter {
+
+    public interface Grant {
+        // A slot is held from here on; the handshake may start after delayNanos and must release the slot
+        void granted(long delayNanos);
+    }
+
+    private final double tokensPerNano;
+    private final double burst;
+    private final int maxConcurrentHandshakes;
+    private final ArrayDeque<Grant> waiting = new ArrayDeque<>();
+    private int inProgress;
+    private double tokens;
+    private long lastRefill;
+
+    public ConnectRateLimiter(int handshakesPerSecond, int burst, int maxConcurrentHandshakes) {
+        if (handshakesPerSecond <= 0 || burst <= 0 || maxConcurrentHandshakes <= 0)
+            throw new IllegalArgumentException("rate, burst and concurrency must be greater than 0");
+        this.tokensPerNano = handshakesPerSecond / (double) TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+        this.maxConcurrentHandshakes = maxConcurrentHandshakes;
+    }
+
+    // Grants right away if a slot is free, otherwise in order of arrival as slots are released
+    public void acquire(Grant grant) {
+        final long delay;
+        synchronized (this) {
+            if (inProgress == maxConcurrentHandshakes) {
+                waiting.add(grant);
+                return;
+            }
+            inProgress++;
+            delay = reserve();
+        }
+        grant.granted(delay);
+    }
+
+    // Hands the slot to the next waiting caller, if there is one
+    public void release() {
+        final Grant next;
+        final long delay;
+        synchronized (this) {
+            next = waiting.poll();
+            if (next == null) {
+                inProgress--;
+                return;
+            }
+            delay = reserve();
+        }
+        next.granted(delay);
+    }
+
+    public synchronized int inProgress() {
+        return inProgress;
+    }
+
+    public synchronized int waiting() {
+        return waiting.size();
+    }
+
+    // Tokens may go negative; the deficit is the queue of callers already holding a reservation
+    private long reserve() {
+        final long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) (-tokens / tokensPerNano);
+    }
+}
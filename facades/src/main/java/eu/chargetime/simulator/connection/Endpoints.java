@@ -0,0 +1,265 @@
+package eu.chargetime.simulator.connection;
+
+import eu.chargetime.simulator.scheduling.Scheduler;
+import eu.chargetime.simulator.software.log.Log;
+import eu.chargetime.simulator.software.log.LogTopic;
+import eu.chargetime.simulator.software.metrics.LatencyHistogram;
+import eu.chargetime.simulator.software.ocpp.ConnectionStateChange;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The central-system endpoints a fleet spreads its boxes over. Every connect attempt of a box picks an endpoint:
+ * WEIGHTED takes the one with the fewest boxes per unit of weight, HASH ranks the endpoints by weighted rendezvous
+ * hashing of the box identity, so a box keeps its endpoint across restarts and only the boxes of a removed endpoint
+ * move. An endpoint failing a number of connect attempts in a row is skipped for a cooldown; boxes leave it with
+ * their next reconnect and come back once it accepts connections again.
+ * <p>
+ * Endpoints are given as a comma-separated list, a weight as the URI fragment, which WebSocket URIs never carry:
+ * {@code ws://node1:8180/ocpp#3,ws://node2:8180/ocpp#1}
+ */
+public class Endpoints {
+
+    public enum Strategy {
+        WEIGHTED, HASH;
+
+        public static Strategy parse(String name) {
+            return valueOf(name.trim().toUpperCase());
+        }
+    }
+
+    public static final class Endpoint {
+        private final String uri;
+        private final int weight;
+        private final AtomicInteger bound = new AtomicInteger();
+        private final AtomicInteger connected = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final LongAdder attempts = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder drops = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private volatile long downUntil;
+        private volatile boolean down;
+
+        Endpoint(String uri, int weight) {
+            this.uri = uri;
+            this.weight = weight;
+        }
+
+        public String getUri() {
+            return uri;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        // Boxes connecting to or connected with this endpoint
+        public int getBound() {
+            return bound.get();
+        }
+
+        public int getConnected() {
+            return connected.get();
+        }
+
+        public long getAttempts() {
+            return attempts.sum();
+        }
+
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        // Open connections that closed without the box stopping
+        public long getDrops() {
+            return drops.sum();
+        }
+
+        // Round trips of the boxes connected here
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public boolean isDown() {
+            return down;
+        }
+    }
+
+    private final List<Endpoint> endpoints;
+    private final Strategy strategy;
+    private final int failureThreshold;
+    private final long cooldownNanos;
+    private final Scheduler scheduler;
+
+    public Endpoints(String spec, Strategy strategy, int failureThreshold, long cooldownMillis, Scheduler scheduler) {
+        if (failureThreshold < 1 || cooldownMillis < 0)
+            throw new IllegalArgumentException("invalid endpoint health: " + failureThreshold + " failures, cooldown " + cooldownMillis + " ms");
+        this.endpoints = Collections.unmodifiableList(parse(spec));
+        this.strategy = strategy;
+        this.failureThreshold = failureThreshold;
+        this.cooldownNanos = TimeUnit.MILLISECONDS.toNanos(cooldownMillis);
+        this.scheduler = scheduler;
+    }
+
+    private static List<Endpoint> parse(String spec) {
+        final List<Endpoint> result = new ArrayList<>();
+        for (String entry : spec.split(",")) {
+            final String trimmed = entry.trim();
+            if (trimmed.isEmpty())
+                continue;
+            final int hash = trimmed.lastIndexOf('#');
+            final int weight;
+            try {
+                weight = hash < 0 ? 1 : Integer.parseInt(trimmed.substring(hash + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid endpoint weight: " + trimmed);
+            }
+            if (weight < 1)
+                throw new IllegalArgumentException("endpoint weight must be greater than 0: " + trimmed);
+            result.add(new Endpoint(hash < 0 ? trimmed : trimmed.substring(0, hash), weight));
+        }
+        if (result.isEmpty())
+            throw new IllegalArgumentException("no endpoint in " + spec);
+        return result;
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    // The connection state of one box: reports its connects to the endpoints and passes them on to next
+    public Binding bind(String identity, ConnectionStateChange next) {
+        return new Binding(identity, next);
+    }
+
+    // Endpoints that are down only count if all of them are
+    private Endpoint select(String identity) {
+        final long now = scheduler.nanoTime();
+        for (int pass = 0; pass < 2; pass++) {
+            Endpoint best = null;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (Endpoint endpoint : endpoints) {
+                if (pass == 0 && endpoint.down && now < endpoint.downUntil)
+                    continue;
+                final double score = strategy == Strategy.HASH
+                        ? endpoint.weight / -Math.log(unit(identity, endpoint.uri))
+                        : -(endpoint.bound.get() + 1.0) / endpoint.weight;
+                if (score > bestScore) {
+                    best = endpoint;
+                    bestScore = score;
+                }
+            }
+            if (best != null)
+                return best;
+        }
+        throw new IllegalStateException("no endpoint");
+    }
+
+    // Uniform in (0, 1) for each pair of identity and endpoint
+    private static double unit(String identity, String uri) {
+        long h = ((long) identity.hashCode() << 32) ^ (uri.hashCode() & 0xFFFFFFFFL);
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        h = h ^ (h >>> 31);
+        return ((h >>> 11) + 0.5) / (1L << 53);
+    }
+
+    private void failed(Endpoint endpoint) {
+        endpoint.failures.increment();
+        endpoint.bound.decrementAndGet();
+        if (endpoint.consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            endpoint.downUntil = scheduler.nanoTime() + cooldownNanos;
+            if (!endpoint.down) {
+                endpoint.down = true;
+                Log.warn(LogTopic.CONNECTION, null, "endpoint failing, boxes move away:", endpoint.uri);
+            }
+        }
+    }
+
+    private void opened(Endpoint endpoint) {
+        endpoint.connected.incrementAndGet();
+        endpoint.consecutiveFailures.set(0);
+        if (endpoint.down) {
+            endpoint.down = false;
+            Log.info(LogTopic.CONNECTION, null, "endpoint reachable again:", endpoint.uri);
+        }
+    }
+
+    public final class Binding implements ConnectionStateChange {
+        private final String identity;
+        private final ConnectionStateChange next;
+        private Endpoint attempting;
+        private Endpoint current;
+        private boolean released;
+
+        private Binding(String identity, ConnectionStateChange next) {
+            this.identity = identity;
+            this.next = next;
+        }
+
+        // Endpoint for the next connect attempt; an earlier attempt that never reported back, e.g. because its
+        // handshake timed out, counts as failed
+        public synchronized Endpoint next() {
+            if (attempting != null)
+                failed(attempting);
+            final Endpoint endpoint = select(identity);
+            endpoint.bound.incrementAndGet();
+            endpoint.attempts.increment();
+            attempting = endpoint;
+            return endpoint;
+        }
+
+        @Override
+        public void connected() {
+            synchronized (this) {
+                if (!released && attempting != null) {
+                    current = attempting;
+                    attempting = null;
+                    opened(current);
+                }
+            }
+            next.connected();
+        }
+
+        @Override
+        public void disconnected() {
+            synchronized (this) {
+                if (!released && current != null) {
+                    current.connected.decrementAndGet();
+                    current.bound.decrementAndGet();
+                    current.drops.increment();
+                    current = null;
+                } else if (!released && attempting != null) {
+                    failed(attempting);
+                    attempting = null;
+                }
+            }
+            next.disconnected();
+        }
+
+        // The box stops; later closes of its connection are its own and no failure of the endpoint
+        public synchronized void release() {
+            if (released)
+                return;
+            released = true;
+            if (current != null) {
+                current.connected.decrementAndGet();
+                current.bound.decrementAndGet();
+            }
+            if (attempting != null)
+                attempting.bound.decrementAndGet();
+            current = null;
+            attempting = null;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package eu.chargetime.simulator.connection;
+
+import eu.chargetime.simulator.scheduling.Scheduler;
+import eu.chargetime.simulator.software.log.Log;
+import eu.chargetime.simulator.software.log.LogTopic;
+import eu.chargetime.simulator.software.ocpp.ConnectionStateChange;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reconnects charge boxes when their connection closes instead of having every box poll its own client.
+ * Each box backs off exponentially with decorrelated jitter, and all handshakes go through one
+ * {@link ConnectRateLimiter} so a restarting central system is not hit by the whole fleet at once. Backoff runs on
+ * the fleet scheduler, which may be a virtual clock; the handshake timeout and the wait for a rate token guard the
+ * real network and the wall-clock rate, so they run on a wall-clock timer.
+ */
+public class ReconnectSupervisor {
+
+    private final Scheduler scheduler;
+    private final Scheduler wallClock;
+    private final Executor connectExecutor;
+    private final ConnectRateLimiter rateLimiter;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final long handshakeTimeoutMillis;
+
+    private final LongAdder connectAttempts = new LongAdder();
+    private final LongAdder reconnectAttempts = new LongAdder();
+    private final LongAdder failedAttempts = new LongAdder();
+    private final LongAdder connected = new LongAdder();
+    private final LongAdder disconnected = new LongAdder();
+    private final LongAdder disconnectedSinceSum = new LongAdder();
+    private final LongAdder disconnectedNanos = new LongAdder();
+    private final long epoch;
+
+    // For a fleet scheduler that runs on the wall clock itself
+    public ReconnectSupervisor(Scheduler scheduler, Executor connectExecutor, ConnectRateLimiter rateLimiter,
+                               long baseDelayMillis, long maxDelayMillis, long handshakeTimeoutMillis) {
+        this(scheduler, scheduler, connectExecutor, rateLimiter, baseDelayMillis, maxDelayMillis, handshakeTimeoutMillis);
+    }
+
+    public ReconnectSupervisor(Scheduler scheduler, Scheduler wallClock, Executor connectExecutor, ConnectRateLimiter rateLimiter,
+                               long baseDelayMillis, long maxDelayMillis, long handshakeTimeoutMillis) {
+        this.scheduler = scheduler;
+        this.wallClock = wallClock;
+        this.epoch = scheduler.nanoTime();
+        this.connectExecutor = connectExecutor;
+        this.rateLimiter = rateLimiter;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = Math.max(baseDelayMillis, maxDelayMillis);
+        this.handshakeTimeoutMillis = handshakeTimeoutMillis;
+    }
+
+    public Handle register(String identity, Connector connector) {
+        return new Handle(identity, connector);
+    }
+
+    public long getConnectAttempts() {
+        return connectAttempts.sum();
+    }
+
+    public long getReconnectAttempts() {
+        return reconnectAttempts.sum();
+    }
+
+    public long getFailedAttempts() {
+        return failedAttempts.sum();
+    }
+
+    public long getConnectedCount() {
+        return connected.sum();
+    }
+
+    public long getDisconnectedCount() {
+        return disconnected.sum();
+    }
+
+    public int getHandshakesInProgress() {
+        return rateLimiter.inProgress();
+    }
+
+    // Finished plus ongoing disconnected time, without iterating over the boxes
+    public long getDisconnectedMillis() {
+        long ongoing = disconnected.sum() * now() - disconnectedSinceSum.sum();
+        return TimeUnit.NANOSECONDS.toMillis(disconnectedNanos.sum() + ongoing);
+    }
+
+    private long now() {
+        return scheduler.nanoTime() - epoch;
+    }
+
+    public interface Connector {
+        void connect();
+    }
+
+    private enum State { WAITING, CONNECTING, CONNECTED, STOPPED }
+
+    public final class Handle implements ConnectionStateChange {
+        private final String identity;
+        private final Connector connector;
+        private State state = State.WAITING;
+        private long disconnectedSince;
+        private long backoffMillis;
+        private boolean handshaking;
+        private boolean everAttempted;
+        // Waiting for a handshake slot or its token
+        private boolean queued;
+        // Holds a slot until the token is due
+        private volatile Scheduler.Timeout tokenDelay;
+        private Scheduler.Timeout pending;
+
+        private Handle(String identity, Connector connector) {
+            this.identity = identity;
+            this.connector = connector;
+            this.backoffMillis = baseDelayMillis;
+            this.disconnectedSince = now();
+            disconnected.increment();
+            disconnectedSinceSum.add(disconnectedSince);
+        }
+
+        public synchronized void start() {
+            if (state == State.WAITING && pending == null && !queued)
+                schedule(0);
+        }
+
+        public synchronized void stop() {
+            if (state == State.STOPPED)
+                return;
+            if (state == State.CONNECTED) {
+                connected.decrement();
+            } else {
+                leaveDisconnected();
+            }
+            state = State.STOPPED;
+            cancelPending();
+            releaseHandshake();
+            // A delay that already fired ends in attempt, which gives the slot back itself
+            final Scheduler.Timeout delay = tokenDelay;
+            if (delay != null && delay.cancel())
+                rateLimiter.release();
+        }
+
+        @Override
+        public synchronized void connected() {
+            if (state == State.STOPPED || state == State.CONNECTED)
+                return;
+            cancelPending();
+            releaseHandshake();
+            leaveDisconnected();
+            connected.increment();
+            state = State.CONNECTED;
+            backoffMillis = baseDelayMillis;
+        }
+
+        @Override
+        public synchronized void disconnected() {
+            if (state == State.STOPPED || state == State.WAITING)
+                return;
+            releaseHandshake();
+            if (state == State.CONNECTED) {
+                connected.decrement();
+                enterDisconnected();
+            } else {
+                failedAttempts.increment();
+            }
+            state = State.WAITING;
+            schedule(nextBackoff());
+        }
+
+        // Decorrelated jitter: sleep = min(cap, random(base, sleep * 3))
+        private long nextBackoff() {
+            long upper = Math.min(maxDelayMillis, backoffMillis * 3);
+            backoffMillis = upper <= baseDelayMillis ? baseDelayMillis
+                    : ThreadLocalRandom.current().nextLong(baseDelayMillis, upper + 1);
+            return backoffMillis;
+        }
+
+        private void schedule(long delayMillis) {
+            cancelPending();
+            pending = scheduler.newTimeout(this::requestHandshake, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        // The slot and token are taken before the executor sees the attempt, so a storm of reconnects waits in the
+        // limiter's queue and on the timer, and the executor never runs more attempts than there are slots
+        private void requestHandshake() {
+            synchronized (this) {
+                if (state != State.WAITING)
+                    return;
+                pending = null;
+                queued = true;
+            }
+            rateLimiter.acquire(this::granted);
+        }
+
+        // Called by the limiter, possibly from another box releasing its slot under that box's lock, so it must not
+        // take this box's lock
+        private void granted(long delayNanos) {
+            if (delayNanos <= 0)
+                dispatchAttempt();
+            else
+                tokenDelay = wallClock.newTimeout(this::dispatchAttempt, delayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        private void dispatchAttempt() {
+            try {
+                connectExecutor.execute(this::attempt);
+            } catch (RejectedExecutionException e) {
+                Log.warn(LogTopic.CONNECTION, identity, "connect attempt rejected:", e);
+                rateLimiter.release();
+            }
+        }
+
+        // Runs with a slot held
+        private void attempt() {
+            synchronized (this) {
+                queued = false;
+                tokenDelay = null;
+                if (state != State.WAITING) {
+                    rateLimiter.release();
+                    return;
+                }
+                state = State.CONNECTING;
+                handshaking = true;
+                connectAttempts.increment();
+                if (everAttempted)
+                    reconnectAttempts.increment();
+                everAttempted = true;
+                pending = wallClock.newTimeout(this::handshakeTimedOut, handshakeTimeoutMillis, TimeUnit.MILLISECONDS);
+            }
+            try {
+                connector.connect();
+            } catch (RuntimeException e) {
+                Log.warn(LogTopic.CONNECTION, identity, "connect failed:", e);
+                disconnected();
+            }
+        }
+
+        private synchronized void handshakeTimedOut() {
+            if (state != State.CONNECTING)
+                return;
+            pending = null;
+            Log.warn(LogTopic.CONNECTION, identity, "handshake timed out");
+            disconnected();
+        }
+
+        private void enterDisconnected() {
+            disconnectedSince = now();
+            disconnected.increment();
+            disconnectedSinceSum.add(disconnectedSince);
+        }
+
+        private void leaveDisconnected() {
+            disconnectedNanos.add(now() - disconnectedSince);
+            disconnected.decrement();
+            disconnectedSinceSum.add(-disconnectedSince);
+        }
+
+        private void cancelPending() {
+            if (pending != null) {
+                pending.cancel();
+                pending = null;
+            }
+        }
+
+        private void releaseHandshake() {
+            if (handshaking) {
+                handshaking = false;
+                rateLimiter.release();
+            }
+        }
+    }
+}
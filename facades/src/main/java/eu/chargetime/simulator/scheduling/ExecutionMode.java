@@ -0,0 +1,47 @@
+package eu.chargetime.simulator.scheduling;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+public enum ExecutionMode {
+    PLATFORM,
+    VIRTUAL;
+
+    public static ExecutionMode parse(String value) {
+        if (value == null || "".equals(value)) {
+            return PLATFORM;
+        }
+        return valueOf(value.trim().toUpperCase());
+    }
+
+    public ThreadFactory threadFactory(String prefix) {
+        if (this == PLATFORM) {
+            return new NamedThreadFactory(prefix, false);
+        }
+        return virtualThreadFactory(prefix);
+    }
+
+    public static boolean isVirtualAvailable() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    // Looked up reflectively so the modules keep building for Java 8
+    private static ThreadFactory virtualThreadFactory(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Method name = builderClass.getMethod("name", String.class, long.class);
+            builder = name.invoke(builder, prefix + "-", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Virtual threads require Java 21 or newer, running on " + System.getProperty("java.version"));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads not available: " + e);
+        }
+    }
+}
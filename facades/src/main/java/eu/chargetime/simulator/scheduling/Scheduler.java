@@ -0,0 +1,33 @@
+package eu.chargetime.simulator.scheduling;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clock and timer service of the simulation. Everything that schedules or measures simulated time goes through
+ * it, so the same fleet can run on the wall clock ({@link TimingWheel}) or on a virtual clock that runs faster
+ * than real time ({@link VirtualScheduler}). Latencies of the real central system stay on the wall clock.
+ */
+public interface Scheduler {
+
+    interface Timeout {
+        // True if the task was still pending and will not run
+        boolean cancel();
+
+        boolean isCancelled();
+
+        boolean isExpired();
+    }
+
+    Timeout newTimeout(Runnable task, long delay, TimeUnit unit);
+
+    // Simulated time in the sense of System.currentTimeMillis()
+    long currentTimeMillis();
+
+    // Simulated time in the sense of System.nanoTime(), only for differences
+    long nanoTime();
+
+    // Timeouts scheduled and not yet expired or cancelled
+    int size();
+
+    void stop();
+}
@@ -0,0 +1,263 @@
+package eu.chargetime.simulator.scheduling;
+
+import eu.chargetime.simulator.software.log.Log;
+import eu.chargetime.simulator.software.log.LogTopic;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashed timing wheel shared by the whole fleet. One worker thread advances the wheel one bucket per tick
+ * and only touches the timeouts hashed into that bucket, so the cost per tick depends on how many timeouts
+ * are due and not on how many are scheduled. Expired tasks are handed to the dispatcher. This is the wall-clock
+ * {@link Scheduler}.
+ */
+public class TimingWheel implements Scheduler {
+
+    private static final int MAX_TRANSFER_PER_TICK = 100000;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Executor dispatcher;
+    private final Thread worker;
+    private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final CountDownLatch startTimeInitialized = new CountDownLatch(1);
+    private final AtomicInteger scheduled = new AtomicInteger();
+    private volatile boolean running = true;
+    private volatile long startTime;
+    private long tick;
+
+    public TimingWheel(String name, long tickDuration, TimeUnit unit, int ticksPerWheel, Executor dispatcher) {
+        if (tickDuration <= 0)
+            throw new IllegalArgumentException("tickDuration must be greater than 0: " + tickDuration);
+        if (ticksPerWheel <= 0 || ticksPerWheel > (1 << 30))
+            throw new IllegalArgumentException("ticksPerWheel out of range: " + ticksPerWheel);
+
+        int size = 1;
+        while (size < ticksPerWheel)
+            size <<= 1;
+
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++)
+            wheel[i] = new Bucket();
+        this.mask = size - 1;
+        this.dispatcher = dispatcher;
+        this.worker = new Thread(this::work, name);
+        this.worker.setDaemon(true);
+    }
+
+    @Override
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        if (!running)
+            throw new IllegalStateException("TimingWheel already stopped");
+        start();
+        long deadline = System.nanoTime() + unit.toNanos(Math.max(0, delay)) - startTime;
+        Timeout timeout = new Timeout(this, task, deadline);
+        scheduled.incrementAndGet();
+        pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public int size() {
+        return scheduled.get();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void start() {
+        if (started.compareAndSet(false, true))
+            worker.start();
+        while (startTime == 0) {
+            try { startTimeInitialized.await(); } catch (InterruptedException e) {}
+        }
+    }
+
+    private void work() {
+        long now = System.nanoTime();
+        startTime = now == 0 ? 1 : now;
+        startTimeInitialized.countDown();
+
+        while (running) {
+            final long deadline = waitForNextTick();
+            if (deadline > 0) {
+                removeCancelled();
+                transferPending();
+                wheel[(int) (tick & mask)].expire(deadline);
+                tick++;
+            }
+        }
+    }
+
+    private long waitForNextTick() {
+        final long deadline = tickNanos * (tick + 1);
+        while (running) {
+            final long current = System.nanoTime() - startTime;
+            final long sleepMillis = (deadline - current + 999999) / 1000000;
+            if (sleepMillis <= 0)
+                return current;
+            try { Thread.sleep(sleepMillis); } catch (InterruptedException e) {}
+        }
+        return -1;
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null)
+                timeout.bucket.remove(timeout);
+        }
+    }
+
+    private void transferPending() {
+        for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++) {
+            Timeout timeout = pendingTimeouts.poll();
+            if (timeout == null)
+                break;
+            if (timeout.state.get() == Timeout.ST_CANCELLED)
+                continue;
+
+            long calculated = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void dispatch(Timeout timeout) {
+        try {
+            dispatcher.execute(timeout.task);
+        } catch (RejectedExecutionException e) {
+            Log.warn(LogTopic.SCHEDULER, worker.getName(), "task rejected:", e);
+        }
+    }
+
+    public static final class Timeout implements Scheduler.Timeout {
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private final TimingWheel timingWheel;
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(ST_INIT);
+        private long remainingRounds;
+        private Timeout next;
+        private Timeout prev;
+        private Bucket bucket;
+
+        private Timeout(TimingWheel timingWheel, Runnable task, long deadline) {
+            this.timingWheel = timingWheel;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!state.compareAndSet(ST_INIT, ST_CANCELLED))
+                return false;
+            timingWheel.scheduled.decrementAndGet();
+            timingWheel.cancelledTimeouts.add(this);
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state.get() == ST_CANCELLED;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return state.get() == ST_EXPIRED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(ST_INIT, ST_EXPIRED))
+                return;
+            timingWheel.scheduled.decrementAndGet();
+            timingWheel.dispatch(this);
+        }
+    }
+
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void expire(long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    next = remove(timeout);
+                    if (timeout.deadline <= deadline)
+                        timeout.expire();
+                    else if (!timeout.isCancelled())
+                        // Not due yet although its rounds are used up; placed anew with the next transfer, never dropped
+                        timeout.timingWheel.pendingTimeouts.add(timeout);
+                } else if (timeout.isCancelled()) {
+                    next = remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        Timeout remove(Timeout timeout) {
+            Timeout next = timeout.next;
+            if (timeout.prev != null)
+                timeout.prev.next = next;
+            if (timeout.next != null)
+                timeout.next.prev = timeout.prev;
+
+            if (timeout == head) {
+                if (timeout == tail) {
+                    head = tail = null;
+                } else {
+                    head = next;
+                }
+            } else if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+            return next;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package eu.chargetime.simulator.scheduling;
+
+import eu.chargetime.simulator.software.log.Log;
+import eu.chargetime.simulator.software.log.LogTopic;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Discrete-event scheduler on a virtual clock. Timeouts wait in a priority queue ordered by due time and by the
+ * order they were scheduled in, and run one after the other on the clock's own thread, so the same inputs fire in
+ * the same order. With a speed factor the virtual clock runs that many times faster than the wall clock; with
+ * speed 0 it jumps straight to the next due timeout, which only makes sense without a real network in the loop.
+ */
+public class VirtualScheduler implements Scheduler {
+
+    private static final int PURGE_THRESHOLD = 1024;
+
+    private final double speed;
+    private final Thread worker;
+    private final PriorityQueue<Event> queue = new PriorityQueue<>();
+    private final AtomicInteger scheduled = new AtomicInteger();
+    private final long epochMillis = System.currentTimeMillis();
+    private long wallStart;
+    private long sequence;
+    private long eventNanos;
+    private int cancelled;
+    private boolean started;
+    private volatile boolean running = true;
+
+    public VirtualScheduler(String name, double speed) {
+        if (speed < 0 || Double.isNaN(speed))
+            throw new IllegalArgumentException("speed must not be negative: " + speed);
+        this.speed = speed;
+        this.worker = new Thread(this::work, name);
+        this.worker.setDaemon(true);
+    }
+
+    @Override
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        final Event event;
+        synchronized (this) {
+            if (!running)
+                throw new IllegalStateException("VirtualScheduler already stopped");
+            event = new Event(this, task, now() + unit.toNanos(Math.max(0, delay)), sequence++);
+            if (cancelled > PURGE_THRESHOLD && cancelled > queue.size() / 2) {
+                queue.removeIf(Event::isCancelled);
+                cancelled = 0;
+            }
+            queue.add(event);
+            scheduled.incrementAndGet();
+            if (queue.peek() == event)
+                notifyAll();
+        }
+        return event;
+    }
+
+    // The clock stands still until started, so a scenario can be scheduled completely before the first event fires
+    public synchronized void start() {
+        if (!started) {
+            started = true;
+            wallStart = System.nanoTime();
+            worker.start();
+        }
+    }
+
+    @Override
+    public synchronized long currentTimeMillis() {
+        return epochMillis + TimeUnit.NANOSECONDS.toMillis(now());
+    }
+
+    @Override
+    public synchronized long nanoTime() {
+        return now();
+    }
+
+    @Override
+    public int size() {
+        return scheduled.get();
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    // Virtual nanoseconds since start: scaled wall time, or the due time of the last event at speed 0
+    private long now() {
+        if (speed == 0)
+            return eventNanos;
+        return started ? (long) ((System.nanoTime() - wallStart) * speed) : 0;
+    }
+
+    private void work() {
+        while (running) {
+            final Event next;
+            synchronized (this) {
+                next = queue.peek();
+                try {
+                    if (next == null) {
+                        wait();
+                        continue;
+                    }
+                    if (speed > 0) {
+                        final long wallNanos = (long) ((next.due - now()) / speed);
+                        if (wallNanos > 0) {
+                            TimeUnit.NANOSECONDS.timedWait(this, wallNanos);
+                            continue;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                queue.poll();
+                if (next.isCancelled()) {
+                    cancelled--;
+                    continue;
+                }
+                if (speed == 0)
+                    eventNanos = Math.max(eventNanos, next.due);
+            }
+            next.expire();
+        }
+    }
+
+    private synchronized void cancelled() {
+        cancelled++;
+    }
+
+    private static final class Event implements Timeout, Comparable<Event> {
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private final VirtualScheduler scheduler;
+        private final Runnable task;
+        private final long due;
+        private final long sequence;
+        private final AtomicInteger state = new AtomicInteger(ST_INIT);
+
+        Event(VirtualScheduler scheduler, Runnable task, long due, long sequence) {
+            this.scheduler = scheduler;
+            this.task = task;
+            this.due = due;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!state.compareAndSet(ST_INIT, ST_CANCELLED))
+                return false;
+            scheduler.scheduled.decrementAndGet();
+            scheduler.cancelled();
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state.get() == ST_CANCELLED;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return state.get() == ST_EXPIRED;
+        }
+
+        // Runs on the clock's thread; a failing task must not stop the clock
+        private void expire() {
+            if (!state.compareAndSet(ST_INIT, ST_EXPIRED))
+                return;
+            scheduler.scheduled.decrementAndGet();
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                Log.warn(LogTopic.SCHEDULER, scheduler.worker.getName(), "task failed:", e);
+            }
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            final int byDue = Long.compare(due, other.due);
+            return byDue != 0 ? byDue : Long.compare(sequence, other.sequence);
+        }
+    }
+}
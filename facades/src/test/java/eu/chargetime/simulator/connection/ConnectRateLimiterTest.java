@@ -0,0 +1,56 @@
+package eu.chargetime.simulator.connection;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectRateLimiterTest {
+
+    @Test
+    public void grantsFreeSlotsRightAwayAndQueuesTheRest() {
+        final ConnectRateLimiter limiter = new ConnectRateLimiter(1000, 1000, 2);
+        final List<String> granted = new ArrayList<>();
+        limiter.acquire(delay -> granted.add("a"));
+        limiter.acquire(delay -> granted.add("b"));
+        limiter.acquire(delay -> granted.add("c"));
+        limiter.acquire(delay -> granted.add("d"));
+
+        assertEquals(2, granted.size());
+        assertEquals(2, limiter.inProgress());
+        assertEquals(2, limiter.waiting());
+
+        // A released slot goes to the longest waiting caller and stays in progress
+        limiter.release();
+        assertEquals("c", granted.get(2));
+        assertEquals(2, limiter.inProgress());
+        assertEquals(1, limiter.waiting());
+
+        limiter.release();
+        limiter.release();
+        limiter.release();
+        assertEquals(4, granted.size());
+        assertEquals(0, limiter.inProgress());
+        assertEquals(0, limiter.waiting());
+    }
+
+    @Test
+    public void grantsBeyondTheBurstCarryTheDelayUntilTheirToken() {
+        final ConnectRateLimiter limiter = new ConnectRateLimiter(10, 2, 100);
+        final long[] delays = new long[4];
+        for (int i = 0; i < delays.length; i++) {
+            final int attempt = i;
+            limiter.acquire(delay -> delays[attempt] = delay);
+        }
+
+        assertEquals(0, delays[0]);
+        assertEquals(0, delays[1]);
+        // 10 per second: the third handshake waits about 100 ms, the fourth about 200 ms
+        assertTrue("third waits " + delays[2], delays[2] > 90000000L && delays[2] <= 100000000L);
+        assertTrue("fourth waits " + delays[3], delays[3] > 190000000L && delays[3] <= 200000000L);
+        assertEquals(4, limiter.inProgress());
+    }
+}
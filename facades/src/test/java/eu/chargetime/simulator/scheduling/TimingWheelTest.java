@@ -0,0 +1,137 @@
+package eu.chargetime.simulator.scheduling;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimingWheelTest {
+
+    // Runs expired tasks on the wheel thread, so they run in the order the wheel expires them
+    private static final Executor DIRECT = Runnable::run;
+
+    private TimingWheel timingWheel;
+
+    @After
+    public void stop() {
+        if (timingWheel != null)
+            timingWheel.stop();
+    }
+
+    @Test
+    public void expiresByDeadline() throws InterruptedException {
+        timingWheel = new TimingWheel("test-wheel", 10, TimeUnit.MILLISECONDS, 8, DIRECT);
+        final List<String> fired = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch done = new CountDownLatch(3);
+        timingWheel.newTimeout(() -> { fired.add("c"); done.countDown(); }, 150, TimeUnit.MILLISECONDS);
+        timingWheel.newTimeout(() -> { fired.add("a"); done.countDown(); }, 30, TimeUnit.MILLISECONDS);
+        timingWheel.newTimeout(() -> { fired.add("b"); done.countDown(); }, 70, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("a", "b", "c"), fired);
+        assertEquals(0, timingWheel.size());
+    }
+
+    @Test
+    public void neverFiresBeforeItsDeadline() throws InterruptedException {
+        timingWheel = new TimingWheel("test-wheel", 10, TimeUnit.MILLISECONDS, 8, DIRECT);
+        final long[] firedAfter = new long[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        final long start = System.nanoTime();
+        final TimingWheel.Timeout timeout = timingWheel.newTimeout(() -> {
+            firedAfter[0] = System.nanoTime() - start;
+            done.countDown();
+        }, 100, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue("fired after " + firedAfter[0] + " ns", firedAfter[0] >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(timeout.isExpired());
+    }
+
+    @Test
+    public void cancelledTimeoutDoesNotRun() throws InterruptedException {
+        timingWheel = new TimingWheel("test-wheel", 10, TimeUnit.MILLISECONDS, 8, DIRECT);
+        final boolean[] ran = new boolean[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        final TimingWheel.Timeout cancelled = timingWheel.newTimeout(() -> ran[0] = true, 50, TimeUnit.MILLISECONDS);
+        timingWheel.newTimeout(done::countDown, 100, TimeUnit.MILLISECONDS);
+
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertFalse(ran[0]);
+        assertTrue(cancelled.isCancelled());
+        assertFalse(cancelled.isExpired());
+        assertEquals(0, timingWheel.size());
+    }
+
+    @Test
+    public void expiredTimeoutCannotBeCancelled() throws InterruptedException {
+        timingWheel = new TimingWheel("test-wheel", 10, TimeUnit.MILLISECONDS, 8, DIRECT);
+        final CountDownLatch done = new CountDownLatch(1);
+        final TimingWheel.Timeout timeout = timingWheel.newTimeout(done::countDown, 20, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertFalse(timeout.cancel());
+        assertFalse(timeout.isCancelled());
+    }
+
+    // 8 buckets of 10 ms make one rotation 80 ms; the deadline lies several rotations out and between two ticks
+    @Test
+    public void deadlineSeveralRotationsOut() throws InterruptedException {
+        timingWheel = new TimingWheel("test-wheel", 10, TimeUnit.MILLISECONDS, 8, DIRECT);
+        final long[] firedAfter = new long[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        final long start = System.nanoTime();
+        timingWheel.newTimeout(() -> {
+            firedAfter[0] = System.nanoTime() - start;
+            done.countDown();
+        }, 405, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        final long millis = TimeUnit.NANOSECONDS.toMillis(firedAfter[0]);
+        assertTrue("fired after " + millis + " ms", millis >= 405 && millis < 2000);
+    }
+
+    // Deadlines over a dozen rotations of a small wheel, in every bucket and round: none is lost
+    @Test
+    public void manyDeadlinesAcrossRotationsAllFire() throws InterruptedException {
+        timingWheel = new TimingWheel("test-wheel", 1, TimeUnit.MILLISECONDS, 4, DIRECT);
+        final int count = 200;
+        final CountDownLatch done = new CountDownLatch(count);
+        for (int i = 0; i < count; i++)
+            timingWheel.newTimeout(done::countDown, 1 + (i * 7) % 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.getCount() + " timeouts not fired", done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, timingWheel.size());
+    }
+
+    @Test
+    public void zeroAndNegativeDelayFireOnTheNextTick() throws InterruptedException {
+        timingWheel = new TimingWheel("test-wheel", 10, TimeUnit.MILLISECONDS, 8, DIRECT);
+        final CountDownLatch done = new CountDownLatch(2);
+        final long start = System.nanoTime();
+        timingWheel.newTimeout(done::countDown, 0, TimeUnit.MILLISECONDS);
+        timingWheel.newTimeout(done::countDown, -5, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void stoppedWheelRefusesTimeouts() {
+        timingWheel = new TimingWheel("test-wheel", 10, TimeUnit.MILLISECONDS, 8, DIRECT);
+        timingWheel.stop();
+        timingWheel.newTimeout(() -> { }, 10, TimeUnit.MILLISECONDS);
+    }
+}
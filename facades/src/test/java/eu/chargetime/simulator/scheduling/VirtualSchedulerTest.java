@@ -0,0 +1,97 @@
+package eu.chargetime.simulator.scheduling;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VirtualSchedulerTest {
+
+    private VirtualScheduler scheduler;
+
+    @After
+    public void stop() {
+        if (scheduler != null)
+            scheduler.stop();
+    }
+
+    @Test
+    public void firesByDueTimeThenByScheduleOrder() throws InterruptedException {
+        scheduler = new VirtualScheduler("test-clock", 0);
+        final List<String> fired = new ArrayList<>();
+        final List<Long> firedAt = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(5);
+        for (Object[] event : new Object[][]{{"c", 30L}, {"a1", 10L}, {"b", 20L}, {"a2", 10L}, {"zero", 0L}}) {
+            scheduler.newTimeout(() -> {
+                fired.add((String) event[0]);
+                firedAt.add(scheduler.nanoTime());
+                done.countDown();
+            }, (Long) event[1], TimeUnit.SECONDS);
+        }
+        scheduler.start();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("zero", "a1", "a2", "b", "c"), fired);
+        // At speed 0 the clock stands exactly on the due time of the running event
+        assertEquals(Arrays.asList(0L, 10L, 10L, 20L, 30L), secondsOf(firedAt));
+    }
+
+    @Test
+    public void cancelledTimeoutDoesNotRun() throws InterruptedException {
+        scheduler = new VirtualScheduler("test-clock", 0);
+        final CountDownLatch done = new CountDownLatch(1);
+        final boolean[] ran = new boolean[1];
+        final Scheduler.Timeout cancelled = scheduler.newTimeout(() -> ran[0] = true, 1, TimeUnit.SECONDS);
+        scheduler.newTimeout(done::countDown, 2, TimeUnit.SECONDS);
+
+        assertTrue(cancelled.cancel());
+        scheduler.start();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertFalse(ran[0]);
+        assertTrue(cancelled.isCancelled());
+        assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    public void speedScalesVirtualTimeAgainstWallTime() throws InterruptedException {
+        scheduler = new VirtualScheduler("test-clock", 100);
+        final CountDownLatch done = new CountDownLatch(1);
+        final long[] firedAt = new long[1];
+        scheduler.newTimeout(() -> {
+            firedAt[0] = scheduler.nanoTime();
+            done.countDown();
+        }, 20, TimeUnit.SECONDS);
+        final long wallStart = System.nanoTime();
+        scheduler.start();
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        final long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - wallStart);
+        // 20 virtual seconds at 100x are 200 ms of wall time; generous upper bound for slow build machines
+        assertTrue("fired after " + wallMillis + " ms", wallMillis >= 190 && wallMillis < 5000);
+        assertTrue(firedAt[0] >= TimeUnit.SECONDS.toNanos(20));
+    }
+
+    @Test
+    public void clockStandsStillUntilStarted() throws InterruptedException {
+        scheduler = new VirtualScheduler("test-clock", 100);
+        final long before = scheduler.nanoTime();
+        Thread.sleep(20);
+        assertEquals(before, scheduler.nanoTime());
+    }
+
+    private static List<Long> secondsOf(List<Long> nanos) {
+        final List<Long> seconds = new ArrayList<>();
+        for (long value : nanos)
+            seconds.add(TimeUnit.NANOSECONDS.toSeconds(value));
+        return seconds;
+    }
+}
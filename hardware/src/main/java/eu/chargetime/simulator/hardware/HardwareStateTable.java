@@ -0,0 +1,122 @@
+package eu.chargetime.simulator.hardware;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock and outlet state of a whole fleet, two bits per box packed 32 to a long. Boxes are addressed by a slot
+ * handed out by allocate(); segments of 64k slots are added as the fleet grows. Every transition is a single CAS
+ * on the word holding the slot, and fleet-wide counts are a bit count over the table. Free slots are all zero.
+ */
+public class HardwareStateTable {
+
+    static final int LOCKED = 1;
+    static final int PLUGGED = 2;
+
+    private static final int SEGMENT_SHIFT = 16;
+    private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+    private static final int SLOTS_PER_WORD_SHIFT = 5;
+    private static final long LOCKED_BITS = 0x5555555555555555L;
+    private static final long PLUGGED_BITS = 0xAAAAAAAAAAAAAAAAL;
+
+    private volatile AtomicLongArray[] segments = new AtomicLongArray[0];
+    private int[] free = new int[64];
+    private int freeCount;
+    private int next;
+    private int size;
+
+    public synchronized int allocate(boolean locked) {
+        final int slot = freeCount > 0 ? free[--freeCount] : next++;
+        if ((slot >>> SEGMENT_SHIFT) >= segments.length) {
+            final AtomicLongArray[] grown = Arrays.copyOf(segments, segments.length + 1);
+            grown[segments.length] = new AtomicLongArray((SEGMENT_MASK + 1) >>> SLOTS_PER_WORD_SHIFT);
+            segments = grown;
+        }
+        if (locked)
+            transition(slot, LOCKED, 0, LOCKED, 0);
+        size++;
+        return slot;
+    }
+
+    public synchronized void release(int slot) {
+        transition(slot, 0, 0, 0, LOCKED | PLUGGED);
+        if (freeCount == free.length)
+            free = Arrays.copyOf(free, free.length * 2);
+        free[freeCount++] = slot;
+        size--;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public boolean isLocked(int slot) {
+        return (state(slot) & LOCKED) != 0;
+    }
+
+    public boolean isPluggedIn(int slot) {
+        return (state(slot) & PLUGGED) != 0;
+    }
+
+    // The transitions return true only if they changed the state
+
+    public boolean lock(int slot) {
+        return transition(slot, LOCKED, 0, LOCKED, 0);
+    }
+
+    public boolean unlock(int slot) {
+        return transition(slot, LOCKED, LOCKED, 0, LOCKED);
+    }
+
+    // Like OutletLockDecorator: a locked outlet neither takes nor releases a plug
+    public boolean plugIn(int slot) {
+        return transition(slot, LOCKED | PLUGGED, 0, PLUGGED, 0);
+    }
+
+    public boolean pullPlug(int slot) {
+        return transition(slot, LOCKED | PLUGGED, PLUGGED, 0, PLUGGED);
+    }
+
+    public long countLocked() {
+        return count(LOCKED_BITS);
+    }
+
+    public long countPluggedIn() {
+        return count(PLUGGED_BITS);
+    }
+
+    private long count(long mask) {
+        long count = 0;
+        for (AtomicLongArray segment : segments) {
+            for (int i = 0, n = segment.length(); i < n; i++)
+                count += Long.bitCount(segment.get(i) & mask);
+        }
+        return count;
+    }
+
+    private int state(int slot) {
+        final long word = segments[slot >>> SEGMENT_SHIFT].get((slot & SEGMENT_MASK) >>> SLOTS_PER_WORD_SHIFT);
+        return (int) (word >>> shift(slot)) & 3;
+    }
+
+    private boolean transition(int slot, int expectMask, int expectValue, int set, int clear) {
+        final AtomicLongArray segment = segments[slot >>> SEGMENT_SHIFT];
+        final int index = (slot & SEGMENT_MASK) >>> SLOTS_PER_WORD_SHIFT;
+        final int shift = shift(slot);
+        while (true) {
+            final long word = segment.get(index);
+            final int state = (int) (word >>> shift) & 3;
+            if ((state & expectMask) != expectValue)
+                return false;
+            final int updated = (state | set) & ~clear;
+            if (updated == state)
+                return false;
+            if (segment.compareAndSet(index, word, (word & ~(3L << shift)) | ((long) updated << shift)))
+                return true;
+        }
+    }
+
+    private static int shift(int slot) {
+        return (slot & 31) << 1;
+    }
+}
@@ -0,0 +1,65 @@
+package eu.chargetime.simulator.hardware;
+
+import eu.chargetime.simulator.hardware.Events.ILockEventHandler;
+import eu.chargetime.simulator.hardware.Events.IOutletEventHandler;
+
+// Lock and outlet of one box as a view on its slot in a HardwareStateTable; the view holds no state of its own.
+// Once detached the view no longer touches the slot, which the table may already have handed to another box.
+public class PackedHardware implements ILock, IOutlet {
+
+    private final HardwareStateTable table;
+    private final int slot;
+    private final ILockEventHandler lockEvents;
+    private final IOutletEventHandler outletEvents;
+    private volatile boolean detached;
+
+    public PackedHardware(HardwareStateTable table, int slot, ILockEventHandler lockEvents, IOutletEventHandler outletEvents) {
+        this.table = table;
+        this.slot = slot;
+        this.lockEvents = lockEvents;
+        this.outletEvents = outletEvents;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    // Called before the slot goes back to the table; every later operation is a no-op and reads report false
+    public void detach() {
+        detached = true;
+    }
+
+    @Override
+    public void lock() {
+        if (!detached && table.lock(slot))
+            lockEvents.onLocked();
+    }
+
+    @Override
+    public void unlock() {
+        if (!detached && table.unlock(slot))
+            lockEvents.onUnlocked();
+    }
+
+    @Override
+    public boolean isLocked() {
+        return !detached && table.isLocked(slot);
+    }
+
+    @Override
+    public void plugin() {
+        if (!detached && table.plugIn(slot))
+            outletEvents.connected();
+    }
+
+    @Override
+    public void pullplug() {
+        if (!detached && table.pullPlug(slot))
+            outletEvents.disconnected();
+    }
+
+    @Override
+    public boolean isPluggedIn() {
+        return !detached && table.isPluggedIn(slot);
+    }
+}
@@ -0,0 +1,161 @@
+package eu.chargetime.simulator.hardware;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HardwareStateTableTest {
+
+    @Test
+    public void allocatesSlotsInTheRequestedLockState() {
+        final HardwareStateTable table = new HardwareStateTable();
+        final int locked = table.allocate(true);
+        final int unlocked = table.allocate(false);
+
+        assertEquals(0, locked);
+        assertEquals(1, unlocked);
+        assertTrue(table.isLocked(locked));
+        assertFalse(table.isLocked(unlocked));
+        assertFalse(table.isPluggedIn(locked));
+        assertFalse(table.isPluggedIn(unlocked));
+        assertEquals(2, table.size());
+    }
+
+    @Test
+    public void transitionsReportOnlyActualChanges() {
+        final HardwareStateTable table = new HardwareStateTable();
+        final int slot = table.allocate(false);
+
+        assertTrue(table.lock(slot));
+        assertFalse(table.lock(slot));
+        assertTrue(table.unlock(slot));
+        assertFalse(table.unlock(slot));
+        assertTrue(table.plugIn(slot));
+        assertFalse(table.plugIn(slot));
+        assertTrue(table.pullPlug(slot));
+        assertFalse(table.pullPlug(slot));
+    }
+
+    @Test
+    public void lockedOutletNeitherTakesNorReleasesAPlug() {
+        final HardwareStateTable table = new HardwareStateTable();
+        final int slot = table.allocate(true);
+
+        assertFalse(table.plugIn(slot));
+        assertFalse(table.isPluggedIn(slot));
+
+        table.unlock(slot);
+        table.plugIn(slot);
+        table.lock(slot);
+        assertFalse(table.pullPlug(slot));
+        assertTrue(table.isPluggedIn(slot));
+        assertTrue(table.isLocked(slot));
+    }
+
+    @Test
+    public void neighboursInTheSameWordKeepTheirOwnState() {
+        final HardwareStateTable table = new HardwareStateTable();
+        // 32 slots share a word; 70 spans three words
+        for (int i = 0; i < 70; i++)
+            table.allocate(false);
+        for (int i = 0; i < 70; i += 3) {
+            table.plugIn(i);
+            table.lock(i);
+        }
+        for (int i = 0; i < 70; i++) {
+            assertEquals("slot " + i, i % 3 == 0, table.isLocked(i));
+            assertEquals("slot " + i, i % 3 == 0, table.isPluggedIn(i));
+        }
+        assertEquals(24, table.countLocked());
+        assertEquals(24, table.countPluggedIn());
+    }
+
+    @Test
+    public void countsFollowTheTable() {
+        final HardwareStateTable table = new HardwareStateTable();
+        final int a = table.allocate(true);
+        final int b = table.allocate(false);
+        final int c = table.allocate(false);
+        table.plugIn(b);
+        table.plugIn(c);
+        table.lock(c);
+
+        assertEquals(2, table.countLocked());
+        assertEquals(2, table.countPluggedIn());
+
+        table.unlock(a);
+        table.pullPlug(b);
+        assertEquals(1, table.countLocked());
+        assertEquals(1, table.countPluggedIn());
+    }
+
+    @Test
+    public void releasedSlotIsClearedAndHandedOutAgain() {
+        final HardwareStateTable table = new HardwareStateTable();
+        table.allocate(false);
+        final int slot = table.allocate(false);
+        table.plugIn(slot);
+        table.lock(slot);
+
+        table.release(slot);
+        assertEquals(1, table.size());
+        assertEquals(0, table.countLocked());
+        assertEquals(0, table.countPluggedIn());
+
+        assertEquals(slot, table.allocate(false));
+        assertFalse(table.isLocked(slot));
+        assertFalse(table.isPluggedIn(slot));
+        assertEquals(2, table.allocate(false));
+    }
+
+    @Test
+    public void growsBeyondTheFirstSegment() {
+        final HardwareStateTable table = new HardwareStateTable();
+        int last = -1;
+        for (int i = 0; i <= 65536; i++)
+            last = table.allocate(false);
+
+        assertEquals(65536, last);
+        assertTrue(table.plugIn(last));
+        assertTrue(table.lock(last));
+        assertTrue(table.isPluggedIn(last));
+        assertFalse(table.isPluggedIn(0));
+        assertEquals(1, table.countLocked());
+        assertEquals(1, table.countPluggedIn());
+    }
+
+    @Test
+    public void concurrentTransitionsOnOneWordAreNotLost() throws InterruptedException {
+        final HardwareStateTable table = new HardwareStateTable();
+        final int slots = 32;
+        for (int i = 0; i < slots; i++)
+            table.allocate(false);
+
+        // Every thread owns one slot of the same word and toggles it; a lost CAS shows up in the final state
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < slots; i++) {
+            final int slot = i;
+            threads.add(new Thread(() -> {
+                for (int n = 0; n < 10000; n++) {
+                    table.plugIn(slot);
+                    table.pullPlug(slot);
+                }
+                table.plugIn(slot);
+                if (slot % 2 == 0)
+                    table.lock(slot);
+            }));
+        }
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+
+        assertEquals(slots, table.countPluggedIn());
+        assertEquals(slots / 2, table.countLocked());
+    }
+}
@@ -0,0 +1,118 @@
+package eu.chargetime.simulator.hardware;
+
+import eu.chargetime.simulator.hardware.Events.ILockEventHandler;
+import eu.chargetime.simulator.hardware.Events.IOutletEventHandler;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PackedHardwareTest {
+
+    private HardwareStateTable table;
+    private List<String> events;
+
+    @Before
+    public void setUp() {
+        table = new HardwareStateTable();
+        events = new ArrayList<>();
+    }
+
+    private PackedHardware create(boolean locked) {
+        return new PackedHardware(table, table.allocate(locked), new ILockEventHandler() {
+            @Override
+            public void onLocked() {
+                events.add("locked");
+            }
+
+            @Override
+            public void onUnlocked() {
+                events.add("unlocked");
+            }
+        }, new IOutletEventHandler() {
+            @Override
+            public void connected() {
+                events.add("connected");
+            }
+
+            @Override
+            public void disconnected() {
+                events.add("disconnected");
+            }
+        });
+    }
+
+    @Test
+    public void firesEventsOnlyOnAChange() {
+        final PackedHardware hardware = create(false);
+        hardware.unlock();
+        hardware.plugin();
+        hardware.plugin();
+        hardware.lock();
+        hardware.lock();
+        hardware.pullplug();
+        hardware.unlock();
+        hardware.pullplug();
+
+        assertEquals("[connected, locked, unlocked, disconnected]", events.toString());
+        assertFalse(hardware.isLocked());
+        assertFalse(hardware.isPluggedIn());
+    }
+
+    @Test
+    public void readsTheSlotInTheTable() {
+        final PackedHardware hardware = create(true);
+        assertTrue(hardware.isLocked());
+
+        table.unlock(hardware.getSlot());
+        table.plugIn(hardware.getSlot());
+        assertFalse(hardware.isLocked());
+        assertTrue(hardware.isPluggedIn());
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void detachedViewIsInert() {
+        final PackedHardware hardware = create(false);
+        hardware.plugin();
+        hardware.lock();
+        events.clear();
+
+        hardware.detach();
+        hardware.unlock();
+        hardware.pullplug();
+        hardware.lock();
+        hardware.plugin();
+
+        assertTrue(events.isEmpty());
+        assertFalse(hardware.isLocked());
+        assertFalse(hardware.isPluggedIn());
+        assertTrue(table.isLocked(hardware.getSlot()));
+    }
+
+    @Test
+    public void detachedViewLeavesAReallocatedSlotAlone() {
+        final PackedHardware old = create(false);
+        old.detach();
+        table.release(old.getSlot());
+
+        final PackedHardware current = create(false);
+        assertEquals(old.getSlot(), current.getSlot());
+
+        old.plugin();
+        old.lock();
+        assertFalse(current.isPluggedIn());
+        assertFalse(current.isLocked());
+
+        current.plugin();
+        old.pullplug();
+        assertTrue(current.isPluggedIn());
+        assertFalse(old.isPluggedIn());
+        assertEquals("[connected]", events.toString());
+    }
+}
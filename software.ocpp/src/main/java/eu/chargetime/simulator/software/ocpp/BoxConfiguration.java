@@ -0,0 +1,146 @@
+package eu.chargetime.simulator.software.ocpp;
+
+import eu.chargetime.ocpp.model.core.ConfigurationStatus;
+import eu.chargetime.ocpp.model.core.KeyValueType;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The configuration of one charge box: the fleet's shared ConfigurationDefaults plus the few keys the central
+ * system changed on this box. The overlay is created with the first change and only ever holds changed keys; a
+ * key set back to its default leaves it again, so an untouched box costs an object header and two references.
+ * The interval of a BootNotification confirmation is stored here as well, so the HeartbeatInterval the box reports
+ * is always the one its timer runs on.
+ */
+public class BoxConfiguration implements HeartbeatIntervalChange {
+
+    // Called after a change was stored, with the value as stored; still under the lock, so changes arriving at the
+    // same time, e.g. from a BootNotification and a ChangeConfiguration, take effect in the order they are stored
+    public interface Listener {
+        void changed(String key, String value);
+    }
+
+    private final ConfigurationDefaults defaults;
+    private final Listener listener;
+    private int[] changedIndex;
+    private String[] changedValue;
+    private int changed;
+
+    public BoxConfiguration(ConfigurationDefaults defaults, Listener listener) {
+        this.defaults = defaults;
+        this.listener = listener;
+    }
+
+    public ConfigurationDefaults getDefaults() {
+        return defaults;
+    }
+
+    // Current value of the key, null if there is no such key
+    public synchronized String get(String key) {
+        final int index = defaults.indexOf(key);
+        if (index < 0)
+            return null;
+        final int slot = find(index);
+        return slot < 0 ? defaults.getValue(index) : changedValue[slot];
+    }
+
+    // Keys that differ from the defaults, in key order
+    public synchronized Map<String, String> getChanges() {
+        final Map<String, String> changes = new LinkedHashMap<>();
+        for (int i = 0; i < changed; i++)
+            changes.put(defaults.getKey(changedIndex[i]), changedValue[i]);
+        return changes;
+    }
+
+    // The entries for GetConfiguration: all keys for none requested, otherwise the requested ones that exist, the
+    // others are added to unknown. Unchanged keys are the shared entries of the defaults.
+    public synchronized KeyValueType[] entries(String[] requested, List<String> unknown) {
+        if (requested == null || requested.length == 0) {
+            final KeyValueType[] entries = new KeyValueType[defaults.size()];
+            for (int i = 0; i < entries.length; i++)
+                entries[i] = entry(i);
+            return entries;
+        }
+        final KeyValueType[] entries = new KeyValueType[requested.length];
+        int count = 0;
+        for (String key : requested) {
+            final int index = defaults.indexOf(key);
+            if (index < 0)
+                unknown.add(key);
+            else
+                entries[count++] = entry(index);
+        }
+        return count == entries.length ? entries : Arrays.copyOf(entries, count);
+    }
+
+    // ChangeConfiguration: NotSupported for unknown keys, Rejected for read-only keys and invalid values
+    public ConfigurationStatus change(String key, String value) {
+        final int index = defaults.indexOf(key);
+        if (index < 0)
+            return ConfigurationStatus.NotSupported;
+        final String normalized = defaults.isReadonly(index) ? null : defaults.normalize(index, value);
+        if (normalized == null)
+            return ConfigurationStatus.Rejected;
+        synchronized (this) {
+            store(index, normalized);
+            if (listener != null)
+                listener.changed(defaults.getKey(index), normalized);
+        }
+        return ConfigurationStatus.Accepted;
+    }
+
+    // Interval confirmed by the central system in a BootNotification
+    @Override
+    public void setInterval(int seconds) {
+        change(ConfigurationDefaults.HEARTBEAT_INTERVAL, Integer.toString(seconds));
+    }
+
+    private KeyValueType entry(int index) {
+        final int slot = find(index);
+        return slot < 0 ? defaults.getEntry(index) : ConfigurationDefaults.entry(defaults.getKey(index), changedValue[slot], false);
+    }
+
+    private int find(int index) {
+        for (int i = 0; i < changed; i++) {
+            if (changedIndex[i] == index)
+                return i;
+        }
+        return -1;
+    }
+
+    // Kept sorted by key index, which is key order
+    private void store(int index, String value) {
+        final int slot = find(index);
+        if (value.equals(defaults.getValue(index))) {
+            if (slot >= 0) {
+                System.arraycopy(changedIndex, slot + 1, changedIndex, slot, changed - slot - 1);
+                System.arraycopy(changedValue, slot + 1, changedValue, slot, changed - slot - 1);
+                changedValue[--changed] = null;
+            }
+            return;
+        }
+        if (slot >= 0) {
+            changedValue[slot] = value;
+            return;
+        }
+        if (changedIndex == null) {
+            changedIndex = new int[2];
+            changedValue = new String[2];
+        } else if (changed == changedIndex.length) {
+            changedIndex = Arrays.copyOf(changedIndex, changed * 2);
+            changedValue = Arrays.copyOf(changedValue, changed * 2);
+        }
+        int at = changed;
+        while (at > 0 && changedIndex[at - 1] > index) {
+            changedIndex[at] = changedIndex[at - 1];
+            changedValue[at] = changedValue[at - 1];
+            at--;
+        }
+        changedIndex[at] = index;
+        changedValue[at] = value;
+        changed++;
+    }
+}
@@ -0,0 +1,79 @@
+package eu.chargetime.simulator.software.ocpp;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Limits shared by all OCPPClients of a fleet: calls on the wire per box, calls queued behind them per box,
+// calls accepted but not yet completed in the whole fleet, and how long a call may take until it fails
+public class CallWindow {
+
+    // Runs the task after the delay unless the returned handle is run first
+    public interface Timer {
+        Runnable schedule(Runnable task, long delayMillis);
+    }
+
+    private final int perBox;
+    private final int queuePerBox;
+    private final int fleetLimit;
+    private final long timeoutMillis;
+    private final Timer timer;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    // OCPP-J allows one outstanding call per charge point, so perBox is normally 1; timeoutMillis 0 means none
+    public CallWindow(int perBox, int queuePerBox, int fleetLimit, long timeoutMillis, Timer timer) {
+        if (perBox < 1 || queuePerBox < 0 || fleetLimit < 1 || timeoutMillis < 0 || (timeoutMillis > 0 && timer == null)) {
+            throw new IllegalArgumentException("invalid call window: " + perBox + " per box, queue " + queuePerBox
+                    + ", fleet " + fleetLimit + ", timeout " + timeoutMillis + " ms");
+        }
+        this.perBox = perBox;
+        this.queuePerBox = queuePerBox;
+        this.fleetLimit = fleetLimit;
+        this.timeoutMillis = timeoutMillis;
+        this.timer = timer;
+    }
+
+    // Every call goes out at once and waits as long as it takes
+    public static CallWindow unbounded() {
+        return new CallWindow(Integer.MAX_VALUE, 0, Integer.MAX_VALUE, 0, null);
+    }
+
+    public int getPerBox() {
+        return perBox;
+    }
+
+    public int getQueuePerBox() {
+        return queuePerBox;
+    }
+
+    public int getFleetLimit() {
+        return fleetLimit;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    // Calls accepted in the fleet, on the wire or queued
+    public int getPending() {
+        return pending.get();
+    }
+
+    boolean tryAcquire() {
+        while (true) {
+            final int current = pending.get();
+            if (current >= fleetLimit) {
+                return false;
+            }
+            if (pending.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void release() {
+        pending.decrementAndGet();
+    }
+
+    Runnable schedule(Runnable task) {
+        return timeoutMillis > 0 ? timer.schedule(task, timeoutMillis) : null;
+    }
+}
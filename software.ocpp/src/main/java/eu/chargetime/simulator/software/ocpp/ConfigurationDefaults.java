@@ -0,0 +1,191 @@
+package eu.chargetime.simulator.software.ocpp;
+
+import eu.chargetime.ocpp.model.core.KeyValueType;
+
+import java.util.Arrays;
+
+/**
+ * The OCPP 1.6 configuration keys of a charge point with their default values, one immutable table shared by every
+ * box of a fleet. A box only keeps the keys the central system changed (see BoxConfiguration), so a fleet of 100k
+ * boxes holds the key set once. Keys are sorted, lookups are binary searches; the KeyValueType of every default is
+ * built once as well and handed out to all GetConfiguration answers, which only serialize it.
+ */
+public final class ConfigurationDefaults {
+
+    public static final String HEARTBEAT_INTERVAL = "HeartbeatInterval";
+    public static final String METER_VALUE_SAMPLE_INTERVAL = "MeterValueSampleInterval";
+
+    // CiString500 of ChangeConfiguration.req
+    static final int MAX_VALUE_LENGTH = 500;
+
+    enum Kind { INTEGER, BOOLEAN, LIST }
+
+    private final String[] keys;
+    private final String[] values;
+    private final Kind[] kinds;
+    private final int[] minimum;
+    private final boolean[] readonly;
+    private final KeyValueType[] entries;
+
+    private ConfigurationDefaults(Builder builder) {
+        final int size = builder.size;
+        final Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> builder.keys[a].compareTo(builder.keys[b]));
+        keys = new String[size];
+        values = new String[size];
+        kinds = new Kind[size];
+        minimum = new int[size];
+        readonly = new boolean[size];
+        entries = new KeyValueType[size];
+        for (int i = 0; i < size; i++) {
+            final int from = order[i];
+            if (i > 0 && builder.keys[from].equals(keys[i - 1]))
+                throw new IllegalArgumentException("duplicate configuration key: " + keys[i - 1]);
+            keys[i] = builder.keys[from];
+            values[i] = builder.values[from];
+            kinds[i] = builder.kinds[from];
+            minimum[i] = builder.minimum[from];
+            readonly[i] = builder.readonly[from];
+            entries[i] = entry(keys[i], values[i], readonly[i]);
+        }
+    }
+
+    // The Core profile keys a simulated box with one connector reports, heartbeat and sample interval as configured
+    public static ConfigurationDefaults core(int heartbeatIntervalSeconds, int sampleIntervalSeconds) {
+        return new Builder()
+                .bool("AllowOfflineTxForUnknownId", false)
+                .bool("AuthorizationCacheEnabled", false)
+                .bool("AuthorizeRemoteTxRequests", false)
+                .integer("ClockAlignedDataInterval", 0, 0)
+                .integer("ConnectionTimeOut", 60, 0)
+                .list("ConnectorPhaseRotation", "1.RST")
+                .readonly("GetConfigurationMaxKeys", "50")
+                .integer(HEARTBEAT_INTERVAL, heartbeatIntervalSeconds, 1)
+                .bool("LocalAuthorizeOffline", true)
+                .bool("LocalPreAuthorize", false)
+                .list("MeterValuesAlignedData", "Energy.Active.Import.Register")
+                .list("MeterValuesSampledData", "Energy.Active.Import.Register")
+                .integer(METER_VALUE_SAMPLE_INTERVAL, sampleIntervalSeconds, 0)
+                .readonly("NumberOfConnectors", "1")
+                .integer("ResetRetries", 3, 0)
+                .bool("StopTransactionOnEVSideDisconnect", true)
+                .bool("StopTransactionOnInvalidId", true)
+                .list("StopTxnAlignedData", "")
+                .list("StopTxnSampledData", "")
+                .readonly("SupportedFeatureProfiles", "Core")
+                .integer("TransactionMessageAttempts", 3, 0)
+                .integer("TransactionMessageRetryInterval", 60, 0)
+                .bool("UnlockConnectorOnEVSideDisconnect", true)
+                .integer("WebSocketPingInterval", 0, 0)
+                .build();
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    // Index of the key, negative if there is no such key
+    public int indexOf(String key) {
+        return key == null ? -1 : Arrays.binarySearch(keys, key);
+    }
+
+    public String getKey(int index) {
+        return keys[index];
+    }
+
+    public String getValue(int index) {
+        return values[index];
+    }
+
+    public boolean isReadonly(int index) {
+        return readonly[index];
+    }
+
+    KeyValueType getEntry(int index) {
+        return entries[index];
+    }
+
+    // The value as the box stores it, null if it is not valid for the key
+    String normalize(int index, String value) {
+        if (value == null || value.length() > MAX_VALUE_LENGTH)
+            return null;
+        switch (kinds[index]) {
+            case INTEGER:
+                try {
+                    final int parsed = Integer.parseInt(value.trim());
+                    // Interned, as most boxes of a fleet get the same intervals from their central system
+                    return parsed >= minimum[index] ? Integer.toString(parsed).intern() : null;
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            case BOOLEAN:
+                if ("true".equalsIgnoreCase(value.trim()))
+                    return "true";
+                if ("false".equalsIgnoreCase(value.trim()))
+                    return "false";
+                return null;
+            default:
+                return value;
+        }
+    }
+
+    static KeyValueType entry(String key, String value, boolean readonly) {
+        final KeyValueType entry = new KeyValueType();
+        entry.setKey(key);
+        entry.setReadonly(readonly);
+        entry.setValue(value);
+        return entry;
+    }
+
+    public static final class Builder {
+        private String[] keys = new String[32];
+        private String[] values = new String[32];
+        private Kind[] kinds = new Kind[32];
+        private int[] minimum = new int[32];
+        private boolean[] readonly = new boolean[32];
+        private int size;
+
+        public Builder integer(String key, int value, int minimum) {
+            if (value < minimum)
+                throw new IllegalArgumentException(key + " must be at least " + minimum + ": " + value);
+            return add(key, Integer.toString(value), Kind.INTEGER, minimum, false);
+        }
+
+        public Builder bool(String key, boolean value) {
+            return add(key, Boolean.toString(value), Kind.BOOLEAN, 0, false);
+        }
+
+        // Comma-separated list, stored as the central system sends it
+        public Builder list(String key, String value) {
+            return add(key, value, Kind.LIST, 0, false);
+        }
+
+        // Reported but never changed, so the value needs no validation
+        public Builder readonly(String key, String value) {
+            return add(key, value, Kind.LIST, 0, true);
+        }
+
+        private Builder add(String key, String value, Kind kind, int min, boolean ro) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+                kinds = Arrays.copyOf(kinds, size * 2);
+                minimum = Arrays.copyOf(minimum, size * 2);
+                readonly = Arrays.copyOf(readonly, size * 2);
+            }
+            keys[size] = key;
+            values[size] = value;
+            kinds[size] = kind;
+            minimum[size] = min;
+            readonly[size] = ro;
+            size++;
+            return this;
+        }
+
+        public ConfigurationDefaults build() {
+            return new ConfigurationDefaults(this);
+        }
+    }
+}
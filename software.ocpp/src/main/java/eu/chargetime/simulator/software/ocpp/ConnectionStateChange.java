@@ -0,0 +1,6 @@
+package eu.chargetime.simulator.software.ocpp;
+
+public interface ConnectionStateChange {
+    void connected();
+    void disconnected();
+}
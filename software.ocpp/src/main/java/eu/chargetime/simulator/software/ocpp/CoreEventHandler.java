@@ -29,57 +29,90 @@ import eu.chargetime.ocpp.feature.profile.ClientCoreEventHandler;
 import eu.chargetime.ocpp.model.core.*;
 import eu.chargetime.simulator.software.ICommand;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class CoreEventHandler implements ClientCoreEventHandler {
 
     private final ICommand command;
+    private final RemoteTransactionControl transactions;
+    private final OcppMetrics metrics;
+    private final BoxConfiguration configuration;
 
-    public CoreEventHandler(ICommand command) {
+    public CoreEventHandler(ICommand command, RemoteTransactionControl transactions, OcppMetrics metrics, BoxConfiguration configuration) {
 
         this.command = command;
+        this.transactions = transactions;
+        this.metrics = metrics;
+        this.configuration = configuration;
     }
 
     @Override
     public ChangeAvailabilityConfirmation handleChangeAvailabilityRequest(ChangeAvailabilityRequest changeAvailabilityRequest) {
+        metrics.callReceived("ChangeAvailability");
         return null;
     }
 
     @Override
     public GetConfigurationConfirmation handleGetConfigurationRequest(GetConfigurationRequest getConfigurationRequest) {
-        return null;
+        metrics.callReceived("GetConfiguration");
+        List<String> unknown = new ArrayList<>();
+        GetConfigurationConfirmation confirmation = new GetConfigurationConfirmation();
+        confirmation.setConfigurationKey(configuration.entries(getConfigurationRequest.getKey(), unknown));
+        if (!unknown.isEmpty()) {
+            confirmation.setUnknownKey(unknown.toArray(new String[0]));
+        }
+        return confirmation;
     }
 
     @Override
     public ChangeConfigurationConfirmation handleChangeConfigurationRequest(ChangeConfigurationRequest changeConfigurationRequest) {
-        return null;
+        metrics.callReceived("ChangeConfiguration");
+        ChangeConfigurationConfirmation confirmation = new ChangeConfigurationConfirmation();
+        confirmation.setStatus(configuration.change(changeConfigurationRequest.getKey(), changeConfigurationRequest.getValue()));
+        return confirmation;
     }
 
     @Override
     public ClearCacheConfirmation handleClearCacheRequest(ClearCacheRequest clearCacheRequest) {
+        metrics.callReceived("ClearCache");
         return null;
     }
 
     @Override
     public DataTransferConfirmation handleDataTransferRequest(DataTransferRequest dataTransferRequest) {
+        metrics.callReceived("DataTransfer");
         return null;
     }
 
     @Override
     public RemoteStartTransactionConfirmation handleRemoteStartTransactionRequest(RemoteStartTransactionRequest remoteStartTransactionRequest) {
-        return null;
+        metrics.callReceived("RemoteStartTransaction");
+        RemoteStartTransactionConfirmation confirmation = new RemoteStartTransactionConfirmation();
+        confirmation.setStatus(transactions.remoteStart(remoteStartTransactionRequest.getIdTag())
+                ? RemoteStartStopStatus.Accepted : RemoteStartStopStatus.Rejected);
+        return confirmation;
     }
 
     @Override
     public RemoteStopTransactionConfirmation handleRemoteStopTransactionRequest(RemoteStopTransactionRequest remoteStopTransactionRequest) {
-        return null;
+        metrics.callReceived("RemoteStopTransaction");
+        Integer transactionId = remoteStopTransactionRequest.getTransactionId();
+        RemoteStopTransactionConfirmation confirmation = new RemoteStopTransactionConfirmation();
+        confirmation.setStatus(transactionId != null && transactions.remoteStop(transactionId)
+                ? RemoteStartStopStatus.Accepted : RemoteStartStopStatus.Rejected);
+        return confirmation;
     }
 
     @Override
     public ResetConfirmation handleResetRequest(ResetRequest resetRequest) {
+        metrics.callReceived("Reset");
         return null;
     }
 
     @Override
     public UnlockConnectorConfirmation handleUnlockConnectorRequest(UnlockConnectorRequest unlockConnectorRequest) {
+        metrics.callReceived("UnlockConnector");
         command.execute(null);
         UnlockConnectorConfirmation confirmation = new UnlockConnectorConfirmation();
         confirmation.setStatus(UnlockStatus.Unlocked);
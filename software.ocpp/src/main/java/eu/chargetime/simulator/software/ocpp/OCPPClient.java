@@ -26,107 +26,405 @@ package eu.chargetime.simulator.software.ocpp;
  */
 
 import eu.chargetime.ocpp.ClientEvents;
-import eu.chargetime.ocpp.JSONClient;
 import eu.chargetime.ocpp.OccurenceConstraintException;
+import eu.chargetime.ocpp.PropertyConstraintException;
 import eu.chargetime.ocpp.UnsupportedFeatureException;
 import eu.chargetime.ocpp.feature.profile.ClientCoreProfile;
 import eu.chargetime.ocpp.model.Confirmation;
+import eu.chargetime.ocpp.model.Request;
 import eu.chargetime.ocpp.model.core.BootNotificationConfirmation;
+import eu.chargetime.ocpp.model.core.ChargePointErrorCode;
+import eu.chargetime.ocpp.model.core.ChargePointStatus;
 import eu.chargetime.ocpp.model.core.HeartbeatConfirmation;
+import eu.chargetime.ocpp.model.core.MeterValuesRequest;
+import eu.chargetime.simulator.software.log.Log;
+import eu.chargetime.simulator.software.log.LogTopic;
+import eu.chargetime.simulator.software.metrics.LatencyHistogram;
+import eu.chargetime.simulator.software.ocpp.transport.CallTemplate;
+import eu.chargetime.simulator.software.ocpp.transport.OcppTransport;
+import eu.chargetime.simulator.software.ocpp.transport.OcppTransportFactory;
 
+import java.util.ArrayDeque;
+import java.util.Calendar;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class OCPPClient implements ClientEvents {
 
+    // Heartbeat and BootNotification are the same for every box, so the fleet shares one prepared frame of each
+    private static volatile CallTemplate heartbeatTemplate;
+    private static volatile CallTemplate bootNotificationTemplate;
+
     private final String uri;
     private final String identiy;
     private final HeartbeatIntervalChange heartbeatIntervalCallback;
+    private final ConnectionStateChange connectionStateCallback;
+    private final OcppMetrics metrics;
     private final ClientCoreProfile coreProfile;
-    private JSONClient client;
-    private boolean isConnected;
+    private final OcppTransport client;
+    private final CallWindow window;
+    private volatile LatencyHistogram roundTrips;
+    private volatile boolean isConnected;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // Calls waiting for a free slot in the window; outstanding counts the taken slots, both guarded by queue
+    private final ArrayDeque<PendingCall> queue = new ArrayDeque<>();
+    private int outstanding;
+    private volatile CompletableFuture<Void> drained;
+    private volatile CompletableFuture<Void> closed;
 
-    public OCPPClient(String uri, String identiy, CoreEventHandler handler, HeartbeatIntervalChange heartbeatIntervalCallback) {
+    public OCPPClient(String uri, String identiy, CoreEventHandler handler, HeartbeatIntervalChange heartbeatIntervalCallback,
+                      ConnectionStateChange connectionStateCallback, OcppMetrics metrics, OcppTransportFactory transports,
+                      CallWindow window) {
         this.uri = uri;
         this.identiy = identiy;
         this.heartbeatIntervalCallback = heartbeatIntervalCallback;
+        this.connectionStateCallback = connectionStateCallback;
+        this.metrics = metrics;
         this.coreProfile = new ClientCoreProfile(handler);
-        this.client = new JSONClient(coreProfile, identiy);
+        this.client = transports.create(identiy, coreProfile, handler);
+        this.window = window;
         this.isConnected = false;
+        if (bootNotificationTemplate == null) {
+            prepareTemplates(coreProfile);
+        }
+    }
+
+    private static synchronized void prepareTemplates(ClientCoreProfile coreProfile) {
+        if (bootNotificationTemplate != null) {
+            return;
+        }
+        try {
+            heartbeatTemplate = CallTemplate.of(coreProfile.createHeartbeatRequest());
+            bootNotificationTemplate = CallTemplate.of(coreProfile.createBootNotificationRequest("ChargeTimeEU", "Simulator"));
+        } catch (OccurenceConstraintException | UnsupportedFeatureException e) {
+            throw new IllegalStateException("cannot create the message templates", e);
+        }
     }
 
     public void doConnect() {
         this.client.connect(uri, this);
     }
 
+    // Connects to another central system than the one given at construction
+    public void doConnect(String uri) {
+        this.client.connect(uri, this);
+    }
+
+    // Records the round trips of this client in addition to the fleet metrics, e.g. per endpoint; null for none
+    public void setRoundTrips(LatencyHistogram roundTrips) {
+        this.roundTrips = roundTrips;
+    }
+
     public void disconnect() {
         this.client.disconnect();
     }
 
-    public void sendHeartbeat(String identiy) {
+    // Requests accepted and still waiting for their confirmation, queued ones included
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    // Completes as soon as no request is waiting for its confirmation
+    public CompletionStage<Void> drained() {
+        CompletableFuture<Void> waiter = drained;
+        if (waiter == null || waiter.isDone()) {
+            waiter = new CompletableFuture<>();
+            drained = waiter;
+        }
+        if (inFlight.get() == 0) {
+            waiter.complete(null);
+        }
+        return waiter;
+    }
+
+    // Closes the connection; completes once the transport reports it closed
+    public CompletionStage<Void> close() {
+        final CompletableFuture<Void> waiter = new CompletableFuture<>();
+        closed = waiter;
+        this.client.disconnect();
+        if (!isConnected) {
+            waiter.complete(null);
+        }
+        return waiter;
+    }
+
+    public CompletionStage<Confirmation> sendHeartbeat(String identiy) {
 //        System.out.println("Sende heartbeat...");
+        return send(OcppAction.HEARTBEAT, LogTopic.HEARTBEAT, heartbeatTemplate)
+                .whenComplete((confirmationResult, throwable) -> handleHeartbeatResponse(identiy, confirmationResult, throwable));
+    }
+
+    public CompletionStage<Confirmation> authorize(String idTag) {
+        return send(OcppAction.AUTHORIZE, LogTopic.TRANSACTION, () -> coreProfile.createAuthorizeRequest(idTag));
+    }
+
+    public CompletionStage<Confirmation> startTransaction(int connectorId, String idTag, int meterStart) {
+        return send(OcppAction.START_TRANSACTION, LogTopic.TRANSACTION,
+                () -> coreProfile.createStartTransactionRequest(connectorId, idTag, meterStart, Calendar.getInstance()));
+    }
+
+    public CompletionStage<Confirmation> meterValues(int connectorId, int transactionId, long meterWh) {
+        return send(OcppAction.METER_VALUES, LogTopic.TRANSACTION, () -> {
+            MeterValuesRequest request = coreProfile.createMeterValuesRequest(connectorId, Calendar.getInstance(), Long.toString(meterWh));
+            request.setTransactionId(transactionId);
+            return request;
+        });
+    }
+
+    public CompletionStage<Confirmation> stopTransaction(int transactionId, int meterStop) {
+        return send(OcppAction.STOP_TRANSACTION, LogTopic.TRANSACTION,
+                () -> coreProfile.createStopTransactionRequest(meterStop, Calendar.getInstance(), transactionId));
+    }
+
+    public CompletionStage<Confirmation> statusNotification(int connectorId, ChargePointStatus status) {
+        return send(OcppAction.STATUS_NOTIFICATION, LogTopic.TRANSACTION,
+                () -> coreProfile.createStatusNotificationRequest(connectorId, ChargePointErrorCode.NoError, status));
+    }
+
+    private CompletionStage<Confirmation> send(OcppAction action, LogTopic topic, RequestFactory factory) {
+        return dispatch(action, topic, () -> client.send(factory.create()));
+    }
+
+    private CompletionStage<Confirmation> send(OcppAction action, LogTopic topic, CallTemplate template) {
+        return dispatch(action, topic, () -> client.send(template));
+    }
+
+    // Accepts a call if the fleet has room for it and sends it as soon as the box has a free slot in its window.
+    // A call that is rejected, cannot be sent, gets a CallError or times out ends up as a failed stage.
+    private CompletionStage<Confirmation> dispatch(OcppAction action, LogTopic topic, Call call) {
+        final PendingCall pending = new PendingCall(action, topic, call);
+        if (!window.tryAcquire()) {
+            reject(pending, "too many pending requests in the fleet");
+            return pending.result;
+        }
+        // Counted and guarded by its timeout before the queue makes it visible: another box thread may take it from
+        // there, send and finish it at once
+        inFlight.incrementAndGet();
+        pending.timeout = window.schedule(() -> timedOut(pending));
+        final boolean now;
+        synchronized (queue) {
+            now = outstanding < window.getPerBox();
+            if (now) {
+                outstanding++;
+                pending.holdsSlot = true;
+            } else if (queue.size() < window.getQueuePerBox()) {
+                queue.add(pending);
+                metrics.requestQueued();
+                return pending.result;
+            }
+        }
+        if (now) {
+            transmit(pending);
+        } else if (finish(pending, null, new RejectedExecutionException("send queue full"))) {
+            metrics.requestRejected(pending.action);
+            Log.debug(pending.topic, identiy, pending.action.getAction() + " rejected: send queue full");
+        }
+        return pending.result;
+    }
+
+    private void reject(PendingCall pending, String reason) {
+        metrics.requestRejected(pending.action);
+        Log.debug(pending.topic, identiy, pending.action.getAction() + " rejected:", reason);
+        pending.result.completeExceptionally(new RejectedExecutionException(reason));
+    }
+
+    // Runs with a slot of the window taken for this call
+    private void transmit(PendingCall pending) {
+        if (pending.isFinished()) {
+            // Timed out while it was being queued; the slot goes on to the next call
+            next();
+            return;
+        }
         try {
-            CompletionStage<Confirmation> confirmation = client.send(coreProfile.createHeartbeatRequest());
-            confirmation.whenComplete((confirmationResult, throwable) -> handleHeartbeatResponse(identiy, confirmationResult, throwable));
-        } catch (OccurenceConstraintException e) {
-            e.printStackTrace();
-        } catch (UnsupportedFeatureException e) {
-            e.printStackTrace();
+            pending.sent = System.nanoTime();
+            final CompletionStage<Confirmation> confirmation = pending.call.send();
+            metrics.requestSent(pending.action);
+            pending.transport = confirmation;
+            confirmation.whenComplete((confirmationResult, throwable) -> finish(pending, confirmationResult, throwable));
+        } catch (OccurenceConstraintException | UnsupportedFeatureException | PropertyConstraintException e) {
+            notSent(pending, e);
+        } catch (RuntimeException e) {
+            // E.g. a transport without connection or a journal that cannot write; the slot must not stay taken
+            notSent(pending, e);
+        }
+    }
+
+    private void notSent(PendingCall pending, Exception e) {
+        pending.sent = 0;
+        metrics.requestFailed(pending.action);
+        Log.error(pending.topic, identiy, pending.action.getAction() + " not sent:", e);
+        finish(pending, null, e);
+    }
+
+    private void timedOut(PendingCall pending) {
+        final boolean queued;
+        synchronized (queue) {
+            queued = queue.remove(pending);
+        }
+        if (queued) {
+            metrics.requestDequeued();
+            metrics.requestFailed(pending.action);
+        }
+        final TimeoutException timeout = new TimeoutException(pending.action.getAction() + " unanswered after "
+                + window.getTimeoutMillis() + " ms");
+        if (finish(pending, null, timeout)) {
+            metrics.requestTimedOut(pending.action);
+            Log.debug(pending.topic, identiy, timeout.getMessage());
+        }
+        // The transport forgets the call, an answer arriving later is dropped
+        final CompletionStage<Confirmation> transport = pending.transport;
+        if (transport != null) {
+            transport.toCompletableFuture().cancel(false);
+        }
+    }
+
+    // Only the first outcome of a call counts; returns whether it was this one
+    private boolean finish(PendingCall pending, Confirmation confirmation, Throwable throwable) {
+        if (!pending.finish()) {
+            return false;
+        }
+        if (pending.timeout != null) {
+            pending.timeout.run();
+        }
+        if (pending.sent != 0) {
+            final long nanos = System.nanoTime() - pending.sent;
+            metrics.requestCompleted(pending.action, nanos, throwable);
+            final LatencyHistogram histogram = roundTrips;
+            if (histogram != null && throwable == null) {
+                histogram.recordNanos(nanos);
+            }
+        }
+        window.release();
+        completed();
+        if (throwable == null) {
+            pending.result.complete(confirmation);
+        } else {
+            pending.result.completeExceptionally(throwable);
+        }
+        if (pending.holdsSlot) {
+            next();
+        }
+        return true;
+    }
+
+    // Hands the slot of a finished call to the next queued one
+    private void next() {
+        final PendingCall pending;
+        synchronized (queue) {
+            pending = queue.poll();
+            if (pending == null) {
+                outstanding--;
+                return;
+            }
+            pending.holdsSlot = true;
+        }
+        metrics.requestDequeued();
+        transmit(pending);
+    }
+
+    private void completed() {
+        if (inFlight.decrementAndGet() == 0) {
+            final CompletableFuture<Void> waiter = drained;
+            if (waiter != null) {
+                waiter.complete(null);
+            }
+        }
+    }
+
+    private interface RequestFactory {
+        Request create() throws PropertyConstraintException;
+    }
+
+    private interface Call {
+        CompletionStage<Confirmation> send() throws OccurenceConstraintException, UnsupportedFeatureException, PropertyConstraintException;
+    }
+
+    private static final class PendingCall {
+        final OcppAction action;
+        final LogTopic topic;
+        final Call call;
+        final CompletableFuture<Confirmation> result = new CompletableFuture<>();
+        volatile Runnable timeout;
+        volatile CompletionStage<Confirmation> transport;
+        volatile long sent;
+        volatile boolean holdsSlot;
+        private boolean finished;
+
+        PendingCall(OcppAction action, LogTopic topic, Call call) {
+            this.action = action;
+            this.topic = topic;
+            this.call = call;
+        }
+
+        synchronized boolean finish() {
+            if (finished) {
+                return false;
+            }
+            finished = true;
+            return true;
+        }
+
+        synchronized boolean isFinished() {
+            return finished;
         }
     }
 
     private void handleBootNotificationResponse(String identiy, Confirmation confirmationResult, Throwable throwable) {
         if (throwable != null) {
-            System.err.println(identiy + " BootNotificationResponse mit Throwable: " + throwable);
+            Log.warn(LogTopic.BOOT_NOTIFICATION, identiy, "BootNotification failed:", throwable);
         } else {
             if (confirmationResult instanceof BootNotificationConfirmation) {
                 final BootNotificationConfirmation bnc = (BootNotificationConfirmation)confirmationResult;
                 if (bnc.validate()) {
-                    System.out.println(identiy + " BootNotificationConfirmation erhalten: " + confirmationResult.toString());
+                    Log.info(LogTopic.BOOT_NOTIFICATION, identiy, "BootNotificationConfirmation received:", confirmationResult);
                     heartbeatIntervalCallback.setInterval(bnc.getInterval().intValue());
                 } else {
-                    System.err.println(identiy + " Invalide BootNotificationConfirmation erhalten: " + confirmationResult.toString());
+                    Log.warn(LogTopic.BOOT_NOTIFICATION, identiy, "invalid BootNotificationConfirmation received:", confirmationResult);
                 }
             } else {
-                System.out.println(identiy + " Unerwartete Confirmation erhalten: " + confirmationResult.toString());
+                Log.warn(LogTopic.BOOT_NOTIFICATION, identiy, "unexpected confirmation received:", confirmationResult);
             }
         }
     }
 
     private void handleHeartbeatResponse(String identiy, Confirmation confirmationResult, Throwable throwable) {
         if (throwable != null) {
-            System.err.println(identiy + " HeartbeatResponse mit Throwable: " + throwable);
+            Log.warn(LogTopic.HEARTBEAT, identiy, "Heartbeat failed:", throwable);
         } else {
             if (confirmationResult instanceof HeartbeatConfirmation) {
                 final HeartbeatConfirmation hbc = (HeartbeatConfirmation)confirmationResult;
                 if (hbc.validate()) {
-                    System.out.println(identiy + " HeartbeatConfirmation erhalten: " + confirmationResult.toString());
+                    Log.debug(LogTopic.HEARTBEAT, identiy, "HeartbeatConfirmation received:", confirmationResult);
                 } else {
-                    System.err.println(identiy + " Invalide HeartbeatConfirmation erhalten: " + confirmationResult.toString());
+                    Log.warn(LogTopic.HEARTBEAT, identiy, "invalid HeartbeatConfirmation received:", confirmationResult);
                 }
             } else {
-                System.out.println(identiy + " Unerwartete Confirmation erhalten: " + confirmationResult.toString());
+                Log.warn(LogTopic.HEARTBEAT, identiy, "unexpected confirmation received:", confirmationResult);
             }
         }
     }
 
     @Override
     public void connectionOpened() {
-        System.out.println(identiy + " Connected!");
+        Log.info(LogTopic.CONNECTION, identiy, "Connected!");
         this.isConnected = true;
-        try {
-            CompletionStage<Confirmation> confirmation = client.send(coreProfile.createBootNotificationRequest("ChargeTimeEU", "Simulator"));
-            confirmation.whenComplete((confirmationResult, throwable) -> handleBootNotificationResponse(identiy, confirmationResult, throwable));
-        } catch (UnsupportedFeatureException e) {
-            e.printStackTrace();
-        } catch (OccurenceConstraintException e) {
-            e.printStackTrace();
-        }
+        connectionStateCallback.connected();
+        send(OcppAction.BOOT_NOTIFICATION, LogTopic.BOOT_NOTIFICATION, bootNotificationTemplate)
+                .whenComplete((confirmationResult, throwable) -> handleBootNotificationResponse(identiy, confirmationResult, throwable));
     }
 
     @Override
     public void connectionClosed() {
-        System.out.println(identiy + " Connection closed!");
+        Log.info(LogTopic.CONNECTION, identiy, "Connection closed!");
         this.isConnected = false;
+        final CompletableFuture<Void> waiter = closed;
+        if (waiter != null) {
+            waiter.complete(null);
+        }
+        connectionStateCallback.disconnected();
     }
 
     public boolean isConnected() {
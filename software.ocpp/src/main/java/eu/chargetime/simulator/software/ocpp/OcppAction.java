@@ -0,0 +1,21 @@
+package eu.chargetime.simulator.software.ocpp;
+
+public enum OcppAction {
+    BOOT_NOTIFICATION("BootNotification"),
+    HEARTBEAT("Heartbeat"),
+    AUTHORIZE("Authorize"),
+    START_TRANSACTION("StartTransaction"),
+    METER_VALUES("MeterValues"),
+    STOP_TRANSACTION("StopTransaction"),
+    STATUS_NOTIFICATION("StatusNotification");
+
+    private final String action;
+
+    OcppAction(String action) {
+        this.action = action;
+    }
+
+    public String getAction() {
+        return action;
+    }
+}
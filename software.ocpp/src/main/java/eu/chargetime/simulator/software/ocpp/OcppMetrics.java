@@ -0,0 +1,119 @@
+package eu.chargetime.simulator.software.ocpp;
+
+import eu.chargetime.simulator.software.metrics.LatencyHistogram;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Fleet-wide counters and round-trip latencies per OCPP message type, shared by all OCPPClients.
+// LongAdder keeps recording on the send path free of contention.
+public class OcppMetrics {
+
+    private final Map<OcppAction, LatencyHistogram> latencies = new EnumMap<>(OcppAction.class);
+    private final Map<OcppAction, LongAdder> sent = new EnumMap<>(OcppAction.class);
+    private final Map<OcppAction, LongAdder> received = new EnumMap<>(OcppAction.class);
+    private final Map<OcppAction, LongAdder> errors = new EnumMap<>(OcppAction.class);
+    private final Map<OcppAction, LongAdder> timeouts = new EnumMap<>(OcppAction.class);
+    private final Map<OcppAction, LongAdder> rejected = new EnumMap<>(OcppAction.class);
+    private final Map<String, LongAdder> callsReceived = new ConcurrentHashMap<>();
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder queued = new LongAdder();
+
+    public OcppMetrics() {
+        for (OcppAction action : OcppAction.values()) {
+            latencies.put(action, new LatencyHistogram());
+            sent.put(action, new LongAdder());
+            received.put(action, new LongAdder());
+            errors.put(action, new LongAdder());
+            timeouts.put(action, new LongAdder());
+            rejected.put(action, new LongAdder());
+        }
+    }
+
+    public void requestSent(OcppAction action) {
+        sent.get(action).increment();
+        inFlight.increment();
+    }
+
+    public void requestCompleted(OcppAction action, long nanos, Throwable throwable) {
+        inFlight.decrement();
+        if (throwable == null) {
+            received.get(action).increment();
+            latencies.get(action).recordNanos(nanos);
+        } else {
+            errors.get(action).increment();
+        }
+    }
+
+    public void requestFailed(OcppAction action) {
+        errors.get(action).increment();
+    }
+
+    // Timed out calls are counted as errors as well
+    public void requestTimedOut(OcppAction action) {
+        timeouts.get(action).increment();
+    }
+
+    // Not accepted because the send queue of the box or the fleet-wide limit was full
+    public void requestRejected(OcppAction action) {
+        rejected.get(action).increment();
+        errors.get(action).increment();
+    }
+
+    public void requestQueued() {
+        queued.increment();
+    }
+
+    public void requestDequeued() {
+        queued.decrement();
+    }
+
+    public void callReceived(String action) {
+        callsReceived.computeIfAbsent(action, a -> new LongAdder()).increment();
+    }
+
+    public LatencyHistogram getLatency(OcppAction action) {
+        return latencies.get(action);
+    }
+
+    public long getSent(OcppAction action) {
+        return sent.get(action).sum();
+    }
+
+    public long getReceived(OcppAction action) {
+        return received.get(action).sum();
+    }
+
+    public long getErrors(OcppAction action) {
+        return errors.get(action).sum();
+    }
+
+    public long getTimeouts(OcppAction action) {
+        return timeouts.get(action).sum();
+    }
+
+    public long getRejected(OcppAction action) {
+        return rejected.get(action).sum();
+    }
+
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    // Calls waiting in the send queues of all boxes
+    public long getQueued() {
+        return queued.sum();
+    }
+
+    public Map<String, LongAdder> getCallsReceived() {
+        return callsReceived;
+    }
+
+    public void resetLatencies() {
+        for (LatencyHistogram histogram : latencies.values()) {
+            histogram.reset();
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package eu.chargetime.simulator.software.ocpp;
+
+// Transactions started or stopped by the central system, false rejects the request
+public interface RemoteTransactionControl {
+    boolean remoteStart(String idTag);
+    boolean remoteStop(int transactionId);
+}
@@ -0,0 +1,49 @@
+package eu.chargetime.simulator.software.ocpp.transport;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Direct buffers of one size, cut from 1 MB slabs so thousands of connections do not mean thousands of small
+ * direct allocations. Owned by one selector loop and never touched by other threads. Position, limit and clear go
+ * through java.nio.Buffer, as the covariant ByteBuffer overrides of JDK 9+ do not exist on a Java 8 runtime.
+ */
+final class BufferPool {
+
+    private static final int SLAB_SIZE = 1 << 20;
+
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+    private ByteBuffer slab;
+
+    BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    int bufferSize() {
+        return bufferSize;
+    }
+
+    ByteBuffer acquire() {
+        final ByteBuffer pooled = free.pollFirst();
+        if (pooled != null)
+            return pooled;
+        if (slab == null || slab.remaining() < bufferSize)
+            slab = ByteBuffer.allocateDirect(Math.max(SLAB_SIZE, bufferSize));
+        ((Buffer) slab).limit(slab.position() + bufferSize);
+        final ByteBuffer buffer = slab.slice();
+        ((Buffer) slab).position(slab.limit());
+        ((Buffer) slab).limit(slab.capacity());
+        return buffer;
+    }
+
+    void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || !buffer.isDirect() || free.size() >= maxPooled)
+            return;
+        ((Buffer) buffer).clear();
+        free.addFirst(buffer);
+    }
+}
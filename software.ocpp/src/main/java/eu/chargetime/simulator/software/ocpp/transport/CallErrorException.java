@@ -0,0 +1,16 @@
+package eu.chargetime.simulator.software.ocpp.transport;
+
+// A CALLERROR answer of the central system, used to complete the request's future exceptionally
+public class CallErrorException extends RuntimeException {
+
+    private final String errorCode;
+
+    public CallErrorException(String errorCode, String errorDescription) {
+        super(errorCode + ": " + errorDescription);
+        this.errorCode = errorCode;
+    }
+
+    public String getErrorCode() {
+        return errorCode;
+    }
+}
@@ -0,0 +1,52 @@
+package eu.chargetime.simulator.software.ocpp.transport;
+
+import eu.chargetime.ocpp.OccurenceConstraintException;
+import eu.chargetime.ocpp.UnsupportedFeatureException;
+import eu.chargetime.ocpp.model.Confirmation;
+import eu.chargetime.ocpp.model.Request;
+
+/**
+ * A request whose payload never changes, validated and serialized once. Every send only puts the message id in
+ * front of the prepared rest of the OCPP-J call frame. The request must not be modified after the template is made.
+ */
+public final class CallTemplate {
+
+    private final Request request;
+    private final String action;
+    private final Class<? extends Confirmation> confirmationType;
+    // ","<action>",<payload>] - everything behind the message id
+    private final String tail;
+
+    private CallTemplate(Request request, String action, Class<? extends Confirmation> confirmationType) {
+        this.request = request;
+        this.action = action;
+        this.confirmationType = confirmationType;
+        final String frame = OcppJson.call("", action, request);
+        this.tail = frame.substring("[2,\"".length());
+    }
+
+    public static CallTemplate of(Request request) throws OccurenceConstraintException, UnsupportedFeatureException {
+        final Class<? extends Confirmation> confirmationType = OcppJson.confirmationType(request);
+        if (confirmationType == null)
+            throw new UnsupportedFeatureException();
+        if (!request.validate())
+            throw new OccurenceConstraintException();
+        return new CallTemplate(request, OcppJson.action(request), confirmationType);
+    }
+
+    public Request getRequest() {
+        return request;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    Class<? extends Confirmation> getConfirmationType() {
+        return confirmationType;
+    }
+
+    String frame(String uniqueId) {
+        return new StringBuilder(4 + uniqueId.length() + tail.length()).append("[2,\"").append(uniqueId).append(tail).toString();
+    }
+}
@@ -0,0 +1,39 @@
+package eu.chargetime.simulator.software.ocpp.transport;
+
+import com.google.gson.JsonElement;
+import eu.chargetime.ocpp.feature.profile.ClientCoreEventHandler;
+import eu.chargetime.ocpp.model.Confirmation;
+import eu.chargetime.ocpp.model.core.*;
+
+// Routes central system initiated calls of the core profile to the charge point's event handler
+final class CoreRequests {
+
+    private CoreRequests() {
+    }
+
+    // Returns null for actions outside the core profile or when the handler does not answer
+    static Confirmation dispatch(ClientCoreEventHandler handler, String action, JsonElement payload) {
+        switch (action) {
+            case "ChangeAvailability":
+                return handler.handleChangeAvailabilityRequest(OcppJson.fromJson(payload, ChangeAvailabilityRequest.class));
+            case "GetConfiguration":
+                return handler.handleGetConfigurationRequest(OcppJson.fromJson(payload, GetConfigurationRequest.class));
+            case "ChangeConfiguration":
+                return handler.handleChangeConfigurationRequest(OcppJson.fromJson(payload, ChangeConfigurationRequest.class));
+            case "ClearCache":
+                return handler.handleClearCacheRequest(OcppJson.fromJson(payload, ClearCacheRequest.class));
+            case "DataTransfer":
+                return handler.handleDataTransferRequest(OcppJson.fromJson(payload, DataTransferRequest.class));
+            case "RemoteStartTransaction":
+                return handler.handleRemoteStartTransactionRequest(OcppJson.fromJson(payload, RemoteStartTransactionRequest.class));
+            case "RemoteStopTransaction":
+                return handler.handleRemoteStopTransactionRequest(OcppJson.fromJson(payload, RemoteStopTransactionRequest.class));
+            case "Reset":
+                return handler.handleResetRequest(OcppJson.fromJson(payload, ResetRequest.class));
+            case "UnlockConnector":
+                return handler.handleUnlockConnectorRequest(OcppJson.fromJson(payload, UnlockConnectorRequest.class));
+            default:
+                return null;
+        }
+    }
+}
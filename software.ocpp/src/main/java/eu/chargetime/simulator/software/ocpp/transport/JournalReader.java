@@ -0,0 +1,90 @@
+package eu.chargetime.simulator.software.ocpp.transport;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Reads the segments of a TrafficJournal in order; a segment ends at the first record length of 0
+public final class JournalReader {
+
+    public interface Visitor {
+        // nanos count from the start of the recording, epochMillis is its wall-clock time
+        void record(byte type, long epochMillis, long nanos, long latencyNanos, String identity, String frame);
+    }
+
+    private JournalReader() {
+    }
+
+    public static void read(Path directory, Visitor visitor) throws IOException {
+        for (Path file : segments(directory)) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.limit() < TrafficJournal.SEGMENT_HEADER || buffer.getInt(0) != TrafficJournal.MAGIC)
+                    throw new IOException("not a journal segment: " + file);
+                if (buffer.getInt(4) != TrafficJournal.VERSION)
+                    throw new IOException("unknown journal version " + buffer.getInt(4) + " in " + file);
+                final long epochMillis = buffer.getLong(8);
+                int pos = TrafficJournal.SEGMENT_HEADER;
+                while (pos <= buffer.limit() - TrafficJournal.RECORD_HEADER) {
+                    final int length = buffer.getInt(pos);
+                    if (length < TrafficJournal.RECORD_HEADER || length > buffer.limit() - pos)
+                        break;
+                    final byte type = buffer.get(pos + 4);
+                    final long nanos = buffer.getLong(pos + 5);
+                    final long latencyNanos = buffer.getLong(pos + 13);
+                    final int identityBytes = buffer.getShort(pos + 21);
+                    final String identity = decode(buffer, pos + 23, identityBytes);
+                    final int frameAt = pos + 23 + identityBytes;
+                    final String frame = decode(buffer, frameAt + 4, buffer.getInt(frameAt));
+                    visitor.record(type, epochMillis, nanos, latencyNanos, identity, frame);
+                    pos += length;
+                }
+            }
+        }
+    }
+
+    public static String typeName(byte type) {
+        switch (type) {
+            case TrafficJournal.CALL_SENT:
+                return "CALL>";
+            case TrafficJournal.RESULT_RECEIVED:
+                return "<RESULT";
+            case TrafficJournal.ERROR_RECEIVED:
+                return "<ERROR";
+            case TrafficJournal.CALL_RECEIVED:
+                return "<CALL";
+            case TrafficJournal.RESULT_SENT:
+                return "RESULT>";
+            default:
+                return "?" + type;
+        }
+    }
+
+    static List<Path> segments(Path directory) throws IOException {
+        final List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                TrafficJournal.SEGMENT_PREFIX + "*" + TrafficJournal.SEGMENT_SUFFIX)) {
+            for (Path file : stream)
+                files.add(file);
+        }
+        if (files.isEmpty())
+            throw new IOException("no journal in " + directory);
+        Collections.sort(files);
+        return files;
+    }
+
+    private static String decode(MappedByteBuffer buffer, int at, int length) {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+            bytes[i] = buffer.get(at + i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,165 @@
+package eu.chargetime.simulator.software.ocpp.transport;
+
+import com.google.gson.JsonArray;
+import eu.chargetime.simulator.software.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends the calls of a recorded TrafficJournal again, frame by frame and with their recorded message ids, one
+ * connection per recorded identity. The calls keep their recorded spacing divided by the speed factor; calls of
+ * the central system are answered with NotImplemented. Latencies of the replayed calls are measured anew.
+ */
+public class JournalReplay {
+
+    public static final class Report {
+        public final int boxes;
+        public final int connected;
+        public final long sent;
+        public final long answered;
+        public final long errors;
+        public final long skipped;
+        public final long millis;
+        public final LatencyHistogram.Snapshot latency;
+
+        Report(int boxes, int connected, long sent, long answered, long errors, long skipped, long millis, LatencyHistogram.Snapshot latency) {
+            this.boxes = boxes;
+            this.connected = connected;
+            this.sent = sent;
+            this.answered = answered;
+            this.errors = errors;
+            this.skipped = skipped;
+            this.millis = millis;
+            this.latency = latency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Replay: %d boxes (%d connected), %d calls sent, %d answered, %d CallError, %d unanswered,"
+                            + " %d skipped without connection, %d ms, latency p50 %.3f ms p99 %.3f ms max %.3f ms",
+                    boxes, connected, sent, answered, errors, sent - answered - errors, skipped, millis,
+                    latency.percentileMicros(50) / 1000.0, latency.percentileMicros(99) / 1000.0, latency.getMaxMicros() / 1000.0);
+        }
+    }
+
+    private final SelectorGroup group;
+    private final String uri;
+    private final Path directory;
+    private final double speed;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong answered = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    public JournalReplay(SelectorGroup group, String uri, Path directory, double speed) {
+        if (!(speed > 0))
+            throw new IllegalArgumentException("speed must be positive: " + speed);
+        this.group = group;
+        this.uri = uri;
+        this.directory = directory;
+        this.speed = speed;
+    }
+
+    // Blocks until all calls are sent and answered, waiting at most connectTimeoutMillis for connections and answers
+    public Report run(long connectTimeoutMillis) throws IOException, InterruptedException {
+        final long start = System.currentTimeMillis();
+        final Map<String, Box> boxes = new LinkedHashMap<>();
+        JournalReader.read(directory, (type, epochMillis, nanos, latencyNanos, identity, frame) -> {
+            if (type == TrafficJournal.CALL_SENT && !boxes.containsKey(identity))
+                boxes.put(identity, new Box());
+        });
+        final CountDownLatch opened = new CountDownLatch(boxes.size());
+        for (Map.Entry<String, Box> box : boxes.entrySet())
+            box.getValue().connect(box.getKey(), opened);
+        opened.await(connectTimeoutMillis, TimeUnit.MILLISECONDS);
+        int connected = 0;
+        for (Box box : boxes.values())
+            connected += box.connection.isOpen() ? 1 : 0;
+
+        final long[] first = {-1};
+        final long wallStart = System.nanoTime();
+        final long[] counts = new long[2];
+        JournalReader.read(directory, (type, epochMillis, nanos, latencyNanos, identity, frame) -> {
+            if (type != TrafficJournal.CALL_SENT)
+                return;
+            if (first[0] < 0)
+                first[0] = nanos;
+            final long due = wallStart + (long) ((nanos - first[0]) / speed);
+            for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime())
+                LockSupport.parkNanos(wait);
+            if (boxes.get(identity).send(frame))
+                counts[0]++;
+            else
+                counts[1]++;
+        });
+
+        final long deadline = System.currentTimeMillis() + connectTimeoutMillis;
+        while (answered.get() + errors.get() < counts[0] && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        for (Box box : boxes.values())
+            box.connection.close();
+        return new Report(boxes.size(), connected, counts[0], answered.get(), errors.get(), counts[1],
+                System.currentTimeMillis() - start, latency.snapshot());
+    }
+
+    private final class Box implements WebSocketConnection.Listener {
+        private final Map<String, Long> pending = new ConcurrentHashMap<>();
+        private volatile WebSocketConnection connection;
+        private CountDownLatch opened;
+
+        void connect(String identity, CountDownLatch opened) {
+            this.opened = opened;
+            connection = group.connect(URI.create(uri + "/" + identity), this);
+        }
+
+        boolean send(String frame) {
+            final JsonArray message = OcppJson.parse(frame);
+            if (!connection.isOpen() || message == null)
+                return false;
+            pending.put(message.get(1).getAsString(), System.nanoTime());
+            connection.send(frame);
+            return true;
+        }
+
+        @Override
+        public void onOpen() {
+            opened.countDown();
+        }
+
+        @Override
+        public void onMessage(String text) {
+            final JsonArray message = OcppJson.parse(text);
+            if (message == null || message.size() < 3)
+                return;
+            final String uniqueId = message.get(1).getAsString();
+            switch (message.get(0).getAsInt()) {
+                case OcppJson.CALL_RESULT:
+                case OcppJson.CALL_ERROR:
+                    final Long sent = pending.remove(uniqueId);
+                    if (sent != null) {
+                        latency.recordNanos(System.nanoTime() - sent);
+                        (message.get(0).getAsInt() == OcppJson.CALL_RESULT ? answered : errors).incrementAndGet();
+                    }
+                    break;
+                case OcppJson.CALL:
+                    connection.send(OcppJson.callError(uniqueId, "NotImplemented", message.get(2).getAsString()));
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void onClose() {
+            pending.clear();
+        }
+    }
+}
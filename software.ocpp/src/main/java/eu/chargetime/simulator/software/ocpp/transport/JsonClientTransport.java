@@ -0,0 +1,39 @@
+package eu.chargetime.simulator.software.ocpp.transport;
+
+import eu.chargetime.ocpp.ClientEvents;
+import eu.chargetime.ocpp.JSONClient;
+import eu.chargetime.ocpp.OccurenceConstraintException;
+import eu.chargetime.ocpp.UnsupportedFeatureException;
+import eu.chargetime.ocpp.feature.profile.ClientCoreEventHandler;
+import eu.chargetime.ocpp.feature.profile.ClientCoreProfile;
+import eu.chargetime.ocpp.model.Confirmation;
+import eu.chargetime.ocpp.model.Request;
+
+import java.util.concurrent.CompletionStage;
+
+// One JSONClient of the OCPP library per charge point, each with its own WebSocket thread
+public class JsonClientTransport implements OcppTransport {
+
+    public static final OcppTransportFactory FACTORY = JsonClientTransport::new;
+
+    private final JSONClient client;
+
+    public JsonClientTransport(String identity, ClientCoreProfile profile, ClientCoreEventHandler handler) {
+        this.client = new JSONClient(profile, identity);
+    }
+
+    @Override
+    public void connect(String uri, ClientEvents events) {
+        client.connect(uri, events);
+    }
+
+    @Override
+    public void disconnect() {
+        client.disconnect();
+    }
+
+    @Override
+    public CompletionStage<Confirmation> send(Request request) throws OccurenceConstraintException, UnsupportedFeatureException {
+        return client.send(request);
+    }
+}
@@ -0,0 +1,213 @@
+package eu.chargetime.simulator.software.ocpp.transport;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParseException;
+import eu.chargetime.ocpp.ClientEvents;
+import eu.chargetime.ocpp.OccurenceConstraintException;
+import eu.chargetime.ocpp.UnsupportedFeatureException;
+import eu.chargetime.ocpp.feature.profile.ClientCoreEventHandler;
+import eu.chargetime.ocpp.model.Confirmation;
+import eu.chargetime.ocpp.model.Request;
+import eu.chargetime.simulator.software.log.Log;
+import eu.chargetime.simulator.software.log.LogTopic;
+
+import java.net.URI;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * OCPP-J over a WebSocketConnection of a SelectorGroup. Confirmations are matched to their request by the
+ * message id, calls of the central system are answered by the core event handler. Callbacks run on the
+ * selector thread, so they must not block.
+ */
+public class NioOcppTransport implements OcppTransport {
+
+    private final SelectorGroup group;
+    private final String identity;
+    private final ClientCoreEventHandler handler;
+    private final TrafficJournal journal;
+    private final Map<String, PendingCall> pending = new ConcurrentHashMap<>(4);
+    private final AtomicInteger messageIds = new AtomicInteger();
+    private volatile WebSocketConnection connection;
+    private volatile Link link;
+    private volatile ClientEvents events;
+
+    public NioOcppTransport(SelectorGroup group, String identity, ClientCoreEventHandler handler) {
+        this(group, identity, handler, null);
+    }
+
+    // With a journal every frame in and out is recorded
+    public NioOcppTransport(SelectorGroup group, String identity, ClientCoreEventHandler handler, TrafficJournal journal) {
+        this.group = group;
+        this.identity = identity;
+        this.handler = handler;
+        this.journal = journal;
+    }
+
+    @Override
+    public void connect(String uri, ClientEvents events) {
+        this.events = events;
+        final WebSocketConnection previous = connection;
+        if (previous != null)
+            previous.close();
+        final Link current = new Link();
+        link = current;
+        try {
+            connection = group.connect(URI.create(uri + "/" + identity), current);
+        } catch (IllegalArgumentException e) {
+            Log.error(LogTopic.CONNECTION, identity, "connect failed:", e);
+            events.connectionClosed();
+        }
+    }
+
+    @Override
+    public void disconnect() {
+        final WebSocketConnection current = connection;
+        if (current != null)
+            current.close();
+    }
+
+    @Override
+    public CompletionStage<Confirmation> send(Request request) throws OccurenceConstraintException, UnsupportedFeatureException {
+        final Class<? extends Confirmation> confirmationType = OcppJson.confirmationType(request);
+        if (confirmationType == null)
+            throw new UnsupportedFeatureException();
+        if (!request.validate())
+            throw new OccurenceConstraintException();
+        final String action = OcppJson.action(request);
+        return call(confirmationType, uniqueId -> OcppJson.call(uniqueId, action, request));
+    }
+
+    // Validated and serialized when the template was made, only the message id goes in here
+    @Override
+    public CompletionStage<Confirmation> send(CallTemplate template) {
+        return call(template.getConfirmationType(), template::frame);
+    }
+
+    private CompletionStage<Confirmation> call(Class<? extends Confirmation> confirmationType, Function<String, String> frames) {
+        final CompletableFuture<Confirmation> future = new CompletableFuture<>();
+        final WebSocketConnection current = connection;
+        if (current == null || !current.isOpen()) {
+            future.completeExceptionally(new IllegalStateException("not connected"));
+            return future;
+        }
+        final String uniqueId = Integer.toString(messageIds.incrementAndGet());
+        final PendingCall call = new PendingCall(future, confirmationType);
+        pending.put(uniqueId, call);
+        // A caller giving up on the call cancels it, an answer arriving later then finds nothing
+        future.whenComplete((confirmation, throwable) -> {
+            if (future.isCancelled())
+                pending.remove(uniqueId, call);
+        });
+        final String frame = frames.apply(uniqueId);
+        current.send(frame);
+        journal(TrafficJournal.CALL_SENT, frame, -1);
+        return future;
+    }
+
+    private void opened() {
+        events.connectionOpened();
+    }
+
+    private void received(String text) {
+        final JsonArray message = OcppJson.parse(text);
+        if (message == null) {
+            Log.warn(LogTopic.CONNECTION, identity, "unreadable message:", text);
+            return;
+        }
+        try {
+            final String uniqueId = message.get(1).getAsString();
+            switch (message.get(0).getAsInt()) {
+                case OcppJson.CALL_RESULT:
+                    final PendingCall call = pending.remove(uniqueId);
+                    final long latency = call == null ? -1 : System.nanoTime() - call.sentNanos;
+                    if (call != null)
+                        call.future.complete(OcppJson.fromJson(message.get(2), call.confirmationType));
+                    journal(TrafficJournal.RESULT_RECEIVED, text, latency);
+                    break;
+                case OcppJson.CALL_ERROR:
+                    final PendingCall failed = pending.remove(uniqueId);
+                    final long errorLatency = failed == null ? -1 : System.nanoTime() - failed.sentNanos;
+                    if (failed != null) {
+                        failed.future.completeExceptionally(new CallErrorException(message.get(2).getAsString(),
+                                message.size() > 3 ? message.get(3).getAsString() : ""));
+                    }
+                    journal(TrafficJournal.ERROR_RECEIVED, text, errorLatency);
+                    break;
+                case OcppJson.CALL:
+                    journal(TrafficJournal.CALL_RECEIVED, text, -1);
+                    answer(uniqueId, message.get(2).getAsString(), message);
+                    break;
+                default:
+                    break;
+            }
+        } catch (JsonParseException | IllegalStateException | UnsupportedOperationException e) {
+            Log.warn(LogTopic.CONNECTION, identity, "malformed message:", text);
+        }
+    }
+
+    private void closed() {
+        final Iterator<PendingCall> calls = pending.values().iterator();
+        while (calls.hasNext()) {
+            calls.next().future.completeExceptionally(new IllegalStateException("not connected"));
+            calls.remove();
+        }
+        final ClientEvents current = events;
+        if (current != null)
+            current.connectionClosed();
+    }
+
+    private void answer(String uniqueId, String action, JsonArray message) {
+        final WebSocketConnection current = connection;
+        if (current == null)
+            return;
+        final Confirmation confirmation = message.size() > 3 ? CoreRequests.dispatch(handler, action, message.get(3)) : null;
+        final String frame = confirmation == null
+                ? OcppJson.callError(uniqueId, "NotImplemented", action)
+                : OcppJson.callResult(uniqueId, confirmation);
+        current.send(frame);
+        journal(TrafficJournal.RESULT_SENT, frame, -1);
+    }
+
+    private void journal(byte type, String frame, long latencyNanos) {
+        if (journal != null)
+            journal.record(type, identity, frame, latencyNanos);
+    }
+
+    // Callbacks of one connection; those of a connection replaced by a reconnect are ignored
+    private final class Link implements WebSocketConnection.Listener {
+        @Override
+        public void onOpen() {
+            if (link == this)
+                opened();
+        }
+
+        @Override
+        public void onMessage(String text) {
+            if (link == this)
+                received(text);
+        }
+
+        @Override
+        public void onClose() {
+            if (link == this)
+                closed();
+        }
+    }
+
+    private static final class PendingCall {
+        final CompletableFuture<Confirmation> future;
+        final Class<? extends Confirmation> confirmationType;
+        final long sentNanos = System.nanoTime();
+
+        PendingCall(CompletableFuture<Confirmation> future, Class<? extends Confirmation> confirmationType) {
+            this.future = future;
+            this.confirmationType = confirmationType;
+        }
+    }
+}
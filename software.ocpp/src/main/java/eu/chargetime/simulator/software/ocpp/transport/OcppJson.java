@@ -0,0 +1,133 @@
+package eu.chargetime.simulator.software.ocpp.transport;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import eu.chargetime.ocpp.model.Confirmation;
+import eu.chargetime.ocpp.model.Request;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+// OCPP-J framing and payload mapping with Gson, for transports that do not go through the OCPP library's JSONClient
+final class OcppJson {
+
+    static final int CALL = 2;
+    static final int CALL_RESULT = 3;
+    static final int CALL_ERROR = 4;
+
+    private static final Gson gson = new GsonBuilder().registerTypeHierarchyAdapter(Calendar.class, new CalendarAdapter()).create();
+    private static final JsonParser parser = new JsonParser();
+
+    // BootNotificationRequest -> BootNotification
+    private static final ClassValue<String> actions = new ClassValue<String>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            final String name = type.getSimpleName();
+            return name.endsWith("Request") ? name.substring(0, name.length() - "Request".length()) : name;
+        }
+    };
+
+    // BootNotificationRequest -> BootNotificationConfirmation, null if there is none
+    private static final ClassValue<Class<? extends Confirmation>> confirmations = new ClassValue<Class<? extends Confirmation>>() {
+        @Override
+        protected Class<? extends Confirmation> computeValue(Class<?> type) {
+            final String name = type.getName();
+            if (!name.endsWith("Request"))
+                return null;
+            try {
+                return Class.forName(name.substring(0, name.length() - "Request".length()) + "Confirmation", true, type.getClassLoader())
+                        .asSubclass(Confirmation.class);
+            } catch (ClassNotFoundException | ClassCastException e) {
+                return null;
+            }
+        }
+    };
+
+    private OcppJson() {
+    }
+
+    static String action(Request request) {
+        return actions.get(request.getClass());
+    }
+
+    static Class<? extends Confirmation> confirmationType(Request request) {
+        return confirmations.get(request.getClass());
+    }
+
+    static String call(String uniqueId, String action, Request request) {
+        return "[2,\"" + uniqueId + "\",\"" + action + "\"," + gson.toJson(request) + "]";
+    }
+
+    static String callResult(String uniqueId, Confirmation confirmation) {
+        return "[3,\"" + uniqueId + "\"," + gson.toJson(confirmation) + "]";
+    }
+
+    static String callError(String uniqueId, String errorCode, String description) {
+        final JsonArray frame = new JsonArray();
+        frame.add(CALL_ERROR);
+        frame.add(uniqueId);
+        frame.add(errorCode);
+        frame.add(description);
+        frame.add(new JsonObject());
+        return frame.toString();
+    }
+
+    // Returns null if the text is not an OCPP-J message
+    static JsonArray parse(String text) {
+        try {
+            final JsonElement element = parser.parse(text);
+            return element.isJsonArray() && element.getAsJsonArray().size() >= 3 ? element.getAsJsonArray() : null;
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
+
+    static <T> T fromJson(JsonElement payload, Class<T> type) {
+        return gson.fromJson(payload, type);
+    }
+
+    // OCPP timestamps are ISO 8601 strings, Gson would write Calendar field by field
+    private static final class CalendarAdapter extends TypeAdapter<Calendar> {
+        @Override
+        public void write(JsonWriter out, Calendar value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+            } else {
+                out.value(DateTimeFormatter.ISO_INSTANT.format(value.toInstant()));
+            }
+        }
+
+        @Override
+        public Calendar read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            final String text = in.nextString();
+            try {
+                return GregorianCalendar.from(ZonedDateTime.parse(text, DateTimeFormatter.ISO_DATE_TIME));
+            } catch (DateTimeParseException e) {
+                try {
+                    return GregorianCalendar.from(ZonedDateTime.ofInstant(Instant.parse(text + "Z"), ZoneOffset.UTC));
+                } catch (DateTimeParseException ignored) {
+                    throw new JsonParseException("invalid timestamp: " + text, e);
+                }
+            }
+        }
+    }
+}
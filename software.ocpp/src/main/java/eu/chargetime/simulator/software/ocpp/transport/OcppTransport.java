@@ -0,0 +1,24 @@
+package eu.chargetime.simulator.software.ocpp.transport;
+
+import eu.chargetime.ocpp.ClientEvents;
+import eu.chargetime.ocpp.OccurenceConstraintException;
+import eu.chargetime.ocpp.UnsupportedFeatureException;
+import eu.chargetime.ocpp.model.Confirmation;
+import eu.chargetime.ocpp.model.Request;
+
+import java.util.concurrent.CompletionStage;
+
+// The connection of one charge point to the central system, as seen by OCPPClient
+public interface OcppTransport {
+
+    void connect(String uri, ClientEvents events);
+
+    void disconnect();
+
+    CompletionStage<Confirmation> send(Request request) throws OccurenceConstraintException, UnsupportedFeatureException;
+
+    // Transports that write frames themselves use the prepared frame; the others send the template's request
+    default CompletionStage<Confirmation> send(CallTemplate template) throws OccurenceConstraintException, UnsupportedFeatureException {
+        return send(template.getRequest());
+    }
+}
@@ -0,0 +1,9 @@
+package eu.chargetime.simulator.software.ocpp.transport;
+
+import eu.chargetime.ocpp.feature.profile.ClientCoreEventHandler;
+import eu.chargetime.ocpp.feature.profile.ClientCoreProfile;
+
+public interface OcppTransportFactory {
+
+    OcppTransport create(String identity, ClientCoreProfile profile, ClientCoreEventHandler handler);
+}
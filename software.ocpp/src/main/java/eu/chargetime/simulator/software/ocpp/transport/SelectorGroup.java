@@ -0,0 +1,66 @@
+package eu.chargetime.simulator.software.ocpp.transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed set of selector threads shared by all charge boxes of the JVM. Connections are spread round robin
+ * and stay on their loop for their whole life, so the thread count does not grow with the fleet.
+ */
+public class SelectorGroup {
+
+    public static final int DEFAULT_BUFFER_SIZE = 4096;
+    public static final int DEFAULT_MAX_FRAME_SIZE = 64 * 1024;
+
+    private final SelectorLoop[] loops;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public SelectorGroup(int threads) throws IOException {
+        this(threads, DEFAULT_BUFFER_SIZE, DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    public SelectorGroup(int threads, int bufferSize, int maxFrameSize) throws IOException {
+        loops = new SelectorLoop[threads];
+        for (int i = 0; i < threads; i++)
+            loops[i] = new SelectorLoop("selector-" + i, bufferSize, maxFrameSize);
+        for (SelectorLoop loop : loops)
+            loop.start();
+    }
+
+    public OcppTransportFactory transportFactory() {
+        return transportFactory(null);
+    }
+
+    // Transports that record their traffic into the journal, none if it is null
+    public OcppTransportFactory transportFactory(TrafficJournal journal) {
+        return (identity, profile, handler) -> new NioOcppTransport(this, identity, handler, journal);
+    }
+
+    public int getConnectionCount() {
+        int count = 0;
+        for (SelectorLoop loop : loops)
+            count += loop.connections.get();
+        return count;
+    }
+
+    public int getThreadCount() {
+        return loops.length;
+    }
+
+    public void stop() {
+        for (SelectorLoop loop : loops)
+            loop.stop();
+    }
+
+    WebSocketConnection connect(URI uri, WebSocketConnection.Listener listener) {
+        if (!"ws".equals(uri.getScheme()))
+            throw new IllegalArgumentException("NIO transport only supports ws:// URIs: " + uri);
+        final SelectorLoop loop = loops[Math.floorMod(next.getAndIncrement(), loops.length)];
+        final InetSocketAddress address = new InetSocketAddress(uri.getHost(), uri.getPort() < 0 ? 80 : uri.getPort());
+        final WebSocketConnection connection = new WebSocketConnection(loop, uri, listener);
+        loop.execute(() -> connection.start(address));
+        return connection;
+    }
+}
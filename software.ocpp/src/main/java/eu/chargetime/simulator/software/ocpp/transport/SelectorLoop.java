@@ -0,0 +1,94 @@
+package eu.chargetime.simulator.software.ocpp.transport;
+
+import eu.chargetime.simulator.software.log.Log;
+import eu.chargetime.simulator.software.log.LogTopic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// One selector thread serving many connections. Everything a connection does runs on its loop, other threads hand work over with execute().
+final class SelectorLoop implements Runnable {
+
+    final Selector selector;
+    final BufferPool buffers;
+    final ByteBuffer readBuffer;
+    final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+    final AtomicInteger connections = new AtomicInteger();
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    SelectorLoop(String name, int bufferSize, int maxFrameSize) throws IOException {
+        this.selector = Selector.open();
+        this.buffers = new BufferPool(bufferSize, 4096);
+        this.readBuffer = ByteBuffer.allocateDirect(maxFrameSize);
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    void execute(Runnable task) {
+        if (inLoop()) {
+            task.run();
+            return;
+        }
+        tasks.add(task);
+        if (wakeupPending.compareAndSet(false, true))
+            selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select(1000);
+            } catch (IOException e) {
+                Log.error(LogTopic.CONNECTION, thread.getName(), "select failed:", e);
+            }
+            wakeupPending.set(false);
+            runTasks();
+            final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                final SelectionKey key = keys.next();
+                keys.remove();
+                ((WebSocketConnection) key.attachment()).ready(key);
+            }
+        }
+        for (SelectionKey key : selector.keys())
+            ((WebSocketConnection) key.attachment()).close();
+        try { selector.close(); } catch (IOException e) {}
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                Log.error(LogTopic.CONNECTION, thread.getName(), "task failed:", e);
+            }
+        }
+    }
+}
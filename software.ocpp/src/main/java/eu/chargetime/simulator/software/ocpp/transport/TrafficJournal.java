@@ -0,0 +1,220 @@
+package eu.chargetime.simulator.software.ocpp.transport;
+
+import eu.chargetime.simulator.software.log.Log;
+import eu.chargetime.simulator.software.log.LogTopic;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Append-only binary journal of the OCPP frames of the whole fleet, in memory-mapped segment files. A writer
+ * reserves its record with one atomic add on the segment position and encodes identity and frame straight into
+ * the mapping, so recording allocates nothing per message; a full segment is replaced by the next one. The record
+ * length is written last and a length of 0 marks the end of a segment. Layout, big-endian:
+ * <pre>
+ * segment: int magic, int version, long epochMillis, records...
+ * record:  int length, byte type, long nanos since epoch, long latency nanos or -1,
+ *          short identity length, identity, int frame length, frame (both UTF-8)
+ * </pre>
+ * A journal that cannot go on, e.g. because the disk is full, stops recording and counts every later record as
+ * dropped; it never throws into the transport that records.
+ */
+public class TrafficJournal {
+
+    public static final byte CALL_SENT = 1;
+    public static final byte RESULT_RECEIVED = 2;
+    public static final byte ERROR_RECEIVED = 3;
+    public static final byte CALL_RECEIVED = 4;
+    public static final byte RESULT_SENT = 5;
+
+    static final int MAGIC = 0x4F434A31;
+    static final int VERSION = 1;
+    static final int SEGMENT_HEADER = 16;
+    static final int RECORD_HEADER = 4 + 1 + 8 + 8 + 2 + 4;
+    static final String SEGMENT_PREFIX = "journal-";
+    static final String SEGMENT_SUFFIX = ".bin";
+
+    private static final class Segment {
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final AtomicInteger position = new AtomicInteger(SEGMENT_HEADER);
+
+        Segment(FileChannel channel, MappedByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final long epochMillis = System.currentTimeMillis();
+    private final long epochNanos = System.nanoTime();
+    private final LongAdder records = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile Segment current;
+    private int segments;
+
+    public TrafficJournal(Path directory, int segmentBytes) throws IOException {
+        if (segmentBytes <= SEGMENT_HEADER + RECORD_HEADER)
+            throw new IllegalArgumentException("segment too small: " + segmentBytes);
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> existing = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            if (existing.iterator().hasNext())
+                throw new IOException("journal already exists in " + directory);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.current = newSegment();
+    }
+
+    public void record(byte type, String identity, String frame, long latencyNanos) {
+        final int identityBytes = utf8Length(identity);
+        final int frameBytes = utf8Length(frame);
+        final int length = RECORD_HEADER + identityBytes + frameBytes;
+        if (length > segmentBytes - SEGMENT_HEADER || identityBytes > Short.MAX_VALUE) {
+            dropped.increment();
+            return;
+        }
+        final long nanos = System.nanoTime() - epochNanos;
+        while (true) {
+            final Segment segment = current;
+            if (segment == null) {
+                dropped.increment();
+                return;
+            }
+            final int start = segment.position.getAndAdd(length);
+            if (start <= segmentBytes - length) {
+                write(segment.buffer, start, length, type, nanos, latencyNanos, identity, identityBytes, frame, frameBytes);
+                records.increment();
+                bytes.add(length);
+                return;
+            }
+            roll(segment);
+        }
+    }
+
+    public long getRecords() {
+        return records.sum();
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public synchronized int getSegments() {
+        return segments;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    // Records still being written while the journal closes may be lost
+    public synchronized void close() throws IOException {
+        final Segment last = current;
+        current = null;
+        if (last != null) {
+            last.buffer.force();
+            last.channel.close();
+        }
+    }
+
+    private synchronized void roll(Segment full) {
+        if (current != full)
+            return;
+        try {
+            current = newSegment();
+        } catch (IOException | RuntimeException e) {
+            current = null;
+            Log.error(LogTopic.CONNECTION, null, "cannot create a journal segment, recording stopped in " + directory + ":", e);
+        }
+        try {
+            full.buffer.force();
+            full.channel.close();
+        } catch (IOException | RuntimeException e) {
+            Log.warn(LogTopic.CONNECTION, null, "journal segment not closed cleanly:", e);
+        }
+    }
+
+    private Segment newSegment() throws IOException {
+        final Path file = directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, ++segments, SEGMENT_SUFFIX));
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putLong(8, epochMillis);
+        return new Segment(channel, buffer);
+    }
+
+    private static void write(MappedByteBuffer buffer, int start, int length, byte type, long nanos, long latencyNanos,
+                              String identity, int identityBytes, String frame, int frameBytes) {
+        int pos = start + 4;
+        buffer.put(pos, type);
+        buffer.putLong(pos + 1, nanos);
+        buffer.putLong(pos + 9, latencyNanos);
+        buffer.putShort(pos + 17, (short) identityBytes);
+        pos = encode(buffer, pos + 19, identity);
+        buffer.putInt(pos, frameBytes);
+        encode(buffer, pos + 4, frame);
+        buffer.putInt(start, length);
+    }
+
+    private static int encode(MappedByteBuffer buffer, int pos, String text) {
+        for (int i = 0, n = text.length(); i < n; i++) {
+            final char c = text.charAt(i);
+            if (c < 0x80) {
+                buffer.put(pos++, (byte) c);
+            } else if (c < 0x800) {
+                buffer.put(pos++, (byte) (0xC0 | (c >> 6)));
+                buffer.put(pos++, (byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+                final int cp = Character.toCodePoint(c, text.charAt(++i));
+                buffer.put(pos++, (byte) (0xF0 | (cp >> 18)));
+                buffer.put(pos++, (byte) (0x80 | ((cp >> 12) & 0x3F)));
+                buffer.put(pos++, (byte) (0x80 | ((cp >> 6) & 0x3F)));
+                buffer.put(pos++, (byte) (0x80 | (cp & 0x3F)));
+            } else {
+                // A lone surrogate becomes '?', as in String.getBytes
+                final char e = Character.isSurrogate(c) ? '?' : c;
+                if (e < 0x80) {
+                    buffer.put(pos++, (byte) e);
+                } else {
+                    buffer.put(pos++, (byte) (0xE0 | (e >> 12)));
+                    buffer.put(pos++, (byte) (0x80 | ((e >> 6) & 0x3F)));
+                    buffer.put(pos++, (byte) (0x80 | (e & 0x3F)));
+                }
+            }
+        }
+        return pos;
+    }
+
+    private static int utf8Length(String text) {
+        int length = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            final char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += Character.isSurrogate(c) ? 1 : 3;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,356 @@
+package eu.chargetime.simulator.software.ocpp.transport;
+
+import eu.chargetime.simulator.software.log.Log;
+import eu.chargetime.simulator.software.log.LogTopic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Client side of one WebSocket (RFC 6455) on a selector loop, text frames only. Input is read into the loop's
+ * shared buffer and only an incomplete frame is kept per connection; output frames are masked into pooled
+ * buffers and queued until the socket takes them. All methods except send() and close() run on the loop.
+ */
+final class WebSocketConnection {
+
+    interface Listener {
+        void onOpen();
+
+        void onMessage(String text);
+
+        void onClose();
+    }
+
+    private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final byte[] HEADER_END = {'\r', '\n', '\r', '\n'};
+    private static final int OP_CONTINUATION = 0x0;
+    private static final int OP_TEXT = 0x1;
+    private static final int OP_CLOSE = 0x8;
+    private static final int OP_PING = 0x9;
+
+    private static final int CONNECTING = 0;
+    private static final int HANDSHAKE = 1;
+    private static final int OPEN = 2;
+    private static final int CLOSED = 3;
+
+    private final SelectorLoop loop;
+    private final URI uri;
+    private final Listener listener;
+    private final String key;
+    private final ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<>(2);
+    private SocketChannel channel;
+    private SelectionKey selectionKey;
+    private ByteBuffer leftover;
+    private ByteArrayOutputStream fragments;
+    private volatile int state = CONNECTING;
+
+    WebSocketConnection(SelectorLoop loop, URI uri, Listener listener) {
+        this.loop = loop;
+        this.uri = uri;
+        this.listener = listener;
+        final byte[] nonce = new byte[16];
+        ThreadLocalRandom.current().nextBytes(nonce);
+        this.key = Base64.getEncoder().encodeToString(nonce);
+    }
+
+    boolean isOpen() {
+        return state == OPEN;
+    }
+
+    // Any thread
+    void send(String text) {
+        final byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+        loop.execute(() -> writeFrame(OP_TEXT, payload));
+    }
+
+    // Any thread; sends a close frame if the connection is open and closes the socket
+    void close() {
+        loop.execute(() -> {
+            if (state == OPEN) {
+                writeFrame(OP_CLOSE, new byte[]{0x03, (byte) 0xE8});
+            }
+            closeNow();
+        });
+    }
+
+    void start(InetSocketAddress address) {
+        loop.connections.incrementAndGet();
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            selectionKey = channel.register(loop.selector, SelectionKey.OP_CONNECT, this);
+            if (channel.connect(address))
+                connected();
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    void ready(SelectionKey key) {
+        try {
+            if (!key.isValid())
+                return;
+            if (key.isConnectable() && channel.finishConnect())
+                connected();
+            if (key.isValid() && key.isWritable())
+                flush();
+            if (key.isValid() && key.isReadable())
+                read();
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    private void connected() throws IOException {
+        state = HANDSHAKE;
+        selectionKey.interestOps(SelectionKey.OP_READ);
+        String path = uri.getRawPath();
+        if (path == null || path.isEmpty())
+            path = "/";
+        if (uri.getRawQuery() != null)
+            path += "?" + uri.getRawQuery();
+        final String request = "GET " + path + " HTTP/1.1\r\n"
+                + "Host: " + uri.getHost() + (uri.getPort() < 0 ? "" : ":" + uri.getPort()) + "\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Key: " + key + "\r\n"
+                + "Sec-WebSocket-Version: 13\r\n"
+                + "Sec-WebSocket-Protocol: ocpp1.6\r\n\r\n";
+        queue(ByteBuffer.wrap(request.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private void read() throws IOException {
+        final ByteBuffer in = loop.readBuffer;
+        // Buffer casts throughout: built on JDK 9+ the calls would bind to ByteBuffer methods a Java 8 JRE lacks
+        ((Buffer) in).clear();
+        if (leftover != null) {
+            ((Buffer) leftover).flip();
+            in.put(leftover);
+            loop.buffers.release(leftover);
+            leftover = null;
+        }
+        final int read = channel.read(in);
+        ((Buffer) in).flip();
+        if (state == HANDSHAKE && !readHandshake(in)) {
+            keep(in);
+        } else {
+            while (state == OPEN && readFrame(in)) {
+            }
+            keep(in);
+        }
+        if (read < 0)
+            closeNow();
+    }
+
+    private boolean readHandshake(ByteBuffer in) throws IOException {
+        final int end = indexOf(in, HEADER_END);
+        if (end < 0) {
+            if (in.remaining() == in.capacity())
+                throw new IOException("handshake response too large");
+            return false;
+        }
+        final byte[] header = new byte[end - in.position()];
+        in.get(header);
+        ((Buffer) in).position(end + HEADER_END.length);
+        final String response = new String(header, StandardCharsets.ISO_8859_1);
+        if (!response.startsWith("HTTP/1.1 101"))
+            throw new IOException("handshake rejected: " + response.split("\r\n", 2)[0]);
+        if (!response.toLowerCase().contains("sec-websocket-accept: " + accept(key).toLowerCase()))
+            throw new IOException("invalid Sec-WebSocket-Accept");
+        state = OPEN;
+        listener.onOpen();
+        return true;
+    }
+
+    private boolean readFrame(ByteBuffer in) throws IOException {
+        final int start = in.position();
+        if (in.remaining() < 2)
+            return false;
+        final int b0 = in.get(start) & 0xFF;
+        final int b1 = in.get(start + 1) & 0xFF;
+        final boolean fin = (b0 & 0x80) != 0;
+        final int opcode = b0 & 0x0F;
+        final boolean masked = (b1 & 0x80) != 0;
+        int headerLength = 2;
+        long length = b1 & 0x7F;
+        if (length == 126) {
+            if (in.remaining() < 4)
+                return false;
+            length = in.getShort(start + 2) & 0xFFFF;
+            headerLength = 4;
+        } else if (length == 127) {
+            if (in.remaining() < 10)
+                return false;
+            length = in.getLong(start + 2);
+            headerLength = 10;
+        }
+        final int maskOffset = start + headerLength;
+        if (masked)
+            headerLength += 4;
+        if (length < 0 || length > in.capacity() - headerLength)
+            throw new IOException("frame of " + length + " bytes exceeds the frame limit");
+        if (in.remaining() < headerLength + length)
+            return false;
+
+        final int payloadStart = start + headerLength;
+        final int payloadEnd = payloadStart + (int) length;
+        if (masked) {
+            for (int i = payloadStart; i < payloadEnd; i++)
+                in.put(i, (byte) (in.get(i) ^ in.get(maskOffset + ((i - payloadStart) & 3))));
+        }
+        final ByteBuffer payload = in.duplicate();
+        ((Buffer) payload).limit(payloadEnd).position(payloadStart);
+        ((Buffer) in).position(payloadEnd);
+
+        switch (opcode) {
+            case OP_TEXT:
+            case OP_CONTINUATION:
+                text(payload, fin);
+                break;
+            case OP_CLOSE:
+                close();
+                break;
+            case OP_PING:
+                final byte[] data = new byte[payload.remaining()];
+                payload.get(data);
+                writeFrame(0xA, data);
+                break;
+            default:
+                break;
+        }
+        return true;
+    }
+
+    private void text(ByteBuffer payload, boolean fin) throws CharacterCodingException {
+        if (fin && fragments == null) {
+            listener.onMessage(loop.decoder.decode(payload).toString());
+            return;
+        }
+        if (fragments == null)
+            fragments = new ByteArrayOutputStream(payload.remaining() * 2);
+        while (payload.hasRemaining())
+            fragments.write(payload.get());
+        if (fin) {
+            final String text = new String(fragments.toByteArray(), StandardCharsets.UTF_8);
+            fragments = null;
+            listener.onMessage(text);
+        }
+    }
+
+    private void writeFrame(int opcode, byte[] payload) {
+        if (state != OPEN)
+            return;
+        final int extended = payload.length < 126 ? 0 : payload.length <= 0xFFFF ? 2 : 8;
+        final int size = 2 + extended + 4 + payload.length;
+        final ByteBuffer frame = size <= loop.buffers.bufferSize() ? loop.buffers.acquire() : ByteBuffer.allocate(size);
+        frame.put((byte) (0x80 | opcode));
+        if (extended == 0) {
+            frame.put((byte) (0x80 | payload.length));
+        } else if (extended == 2) {
+            frame.put((byte) (0x80 | 126)).putShort((short) payload.length);
+        } else {
+            frame.put((byte) (0x80 | 127)).putLong(payload.length);
+        }
+        final int mask = ThreadLocalRandom.current().nextInt();
+        frame.putInt(mask);
+        for (int i = 0; i < payload.length; i++)
+            frame.put((byte) (payload[i] ^ (mask >>> (8 * (3 - (i & 3))))));
+        ((Buffer) frame).flip();
+        try {
+            queue(frame);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void queue(ByteBuffer buffer) throws IOException {
+        writeQueue.addLast(buffer);
+        if (writeQueue.size() == 1)
+            flush();
+    }
+
+    private void flush() throws IOException {
+        ByteBuffer head;
+        while ((head = writeQueue.peekFirst()) != null) {
+            channel.write(head);
+            if (head.hasRemaining()) {
+                selectionKey.interestOps(selectionKey.interestOps() | SelectionKey.OP_WRITE);
+                return;
+            }
+            writeQueue.pollFirst();
+            loop.buffers.release(head);
+        }
+        if (selectionKey.isValid())
+            selectionKey.interestOps(selectionKey.interestOps() & ~SelectionKey.OP_WRITE);
+    }
+
+    // Keeps an incomplete frame until the next read
+    private void keep(ByteBuffer in) {
+        if (!in.hasRemaining() || state == CLOSED)
+            return;
+        leftover = in.remaining() <= loop.buffers.bufferSize() ? loop.buffers.acquire() : ByteBuffer.allocate(in.remaining());
+        leftover.put(in);
+    }
+
+    private void fail(Exception e) {
+        Log.debug(LogTopic.CONNECTION, uri.getPath(), "WebSocket failed:", e);
+        closeNow();
+    }
+
+    private void closeNow() {
+        if (state == CLOSED)
+            return;
+        state = CLOSED;
+        loop.connections.decrementAndGet();
+        if (selectionKey != null)
+            selectionKey.cancel();
+        if (channel != null) {
+            try { channel.close(); } catch (IOException e) {}
+        }
+        ByteBuffer buffer;
+        while ((buffer = writeQueue.pollFirst()) != null)
+            loop.buffers.release(buffer);
+        if (leftover != null) {
+            loop.buffers.release(leftover);
+            leftover = null;
+        }
+        fragments = null;
+        listener.onClose();
+    }
+
+    private static int indexOf(ByteBuffer in, byte[] pattern) {
+        outer:
+        for (int i = in.position(); i <= in.limit() - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (in.get(i + j) != pattern[j])
+                    continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static String accept(String key) {
+        try {
+            final MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            return Base64.getEncoder().encodeToString(sha1.digest((key + GUID).getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package eu.chargetime.simulator.software.ocpp;
+
+import eu.chargetime.ocpp.model.core.ConfigurationStatus;
+import eu.chargetime.ocpp.model.core.KeyValueType;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BoxConfigurationTest {
+
+    private ConfigurationDefaults defaults;
+    private List<String> changes;
+    private BoxConfiguration configuration;
+
+    @Before
+    public void setUp() {
+        defaults = ConfigurationDefaults.core(300, 60);
+        changes = new ArrayList<>();
+        configuration = new BoxConfiguration(defaults, (key, value) -> changes.add(key + "=" + value));
+    }
+
+    @Test
+    public void readsTheDefaultsUntilChanged() {
+        assertEquals("300", configuration.get(ConfigurationDefaults.HEARTBEAT_INTERVAL));
+        assertEquals("1", configuration.get("NumberOfConnectors"));
+        assertNull(configuration.get("NoSuchKey"));
+        assertNull(configuration.get(null));
+        assertTrue(configuration.getChanges().isEmpty());
+    }
+
+    @Test
+    public void acceptsValidValuesAndNormalizesThem() {
+        assertEquals(ConfigurationStatus.Accepted, configuration.change("ResetRetries", " 5 "));
+        assertEquals(ConfigurationStatus.Accepted, configuration.change("LocalPreAuthorize", "TRUE"));
+        assertEquals(ConfigurationStatus.Accepted, configuration.change("StopTxnSampledData", "Current.Import"));
+
+        assertEquals("5", configuration.get("ResetRetries"));
+        assertEquals("true", configuration.get("LocalPreAuthorize"));
+        assertEquals("Current.Import", configuration.get("StopTxnSampledData"));
+        assertEquals("[ResetRetries=5, LocalPreAuthorize=true, StopTxnSampledData=Current.Import]", changes.toString());
+    }
+
+    @Test
+    public void rejectsReadonlyKeysAndInvalidValues() {
+        assertEquals(ConfigurationStatus.Rejected, configuration.change("NumberOfConnectors", "2"));
+        assertEquals(ConfigurationStatus.Rejected, configuration.change("ResetRetries", "many"));
+        assertEquals(ConfigurationStatus.Rejected, configuration.change("ResetRetries", "-1"));
+        assertEquals(ConfigurationStatus.Rejected, configuration.change(ConfigurationDefaults.HEARTBEAT_INTERVAL, "0"));
+        assertEquals(ConfigurationStatus.Rejected, configuration.change("LocalPreAuthorize", "yes"));
+        assertEquals(ConfigurationStatus.Rejected, configuration.change("StopTxnSampledData", null));
+        assertEquals(ConfigurationStatus.Rejected,
+                configuration.change("StopTxnSampledData", String.join("", Collections.nCopies(501, "x"))));
+
+        assertEquals("1", configuration.get("NumberOfConnectors"));
+        assertEquals("3", configuration.get("ResetRetries"));
+        assertTrue(configuration.getChanges().isEmpty());
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void unknownKeysAreNotSupported() {
+        assertEquals(ConfigurationStatus.NotSupported, configuration.change("NoSuchKey", "1"));
+        assertEquals(ConfigurationStatus.NotSupported, configuration.change(null, "1"));
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void keySetBackToItsDefaultLeavesTheOverlay() {
+        configuration.change("ResetRetries", "5");
+        configuration.change("ConnectionTimeOut", "30");
+        configuration.change("ResetRetries", "3");
+
+        assertEquals("{ConnectionTimeOut=30}", configuration.getChanges().toString());
+        assertEquals("3", configuration.get("ResetRetries"));
+        // The listener still hears about it, the box may have to act on the value
+        assertEquals("[ResetRetries=5, ConnectionTimeOut=30, ResetRetries=3]", changes.toString());
+    }
+
+    @Test
+    public void changesAreKeptInKeyOrder() {
+        configuration.change("WebSocketPingInterval", "10");
+        configuration.change("AllowOfflineTxForUnknownId", "true");
+        configuration.change("MeterValueSampleInterval", "15");
+        configuration.change("ConnectionTimeOut", "30");
+        configuration.change("MeterValueSampleInterval", "20");
+
+        assertEquals("{AllowOfflineTxForUnknownId=true, ConnectionTimeOut=30, MeterValueSampleInterval=20, "
+                + "WebSocketPingInterval=10}", configuration.getChanges().toString());
+
+        configuration.change("ConnectionTimeOut", "60");
+        assertEquals("{AllowOfflineTxForUnknownId=true, MeterValueSampleInterval=20, WebSocketPingInterval=10}",
+                configuration.getChanges().toString());
+    }
+
+    @Test
+    public void entriesForAllKeysShareTheUnchangedDefaults() {
+        configuration.change("ResetRetries", "5");
+        final KeyValueType[] entries = configuration.entries(null, new ArrayList<>());
+        final KeyValueType[] others = new BoxConfiguration(defaults, null).entries(new String[0], new ArrayList<>());
+
+        assertEquals(defaults.size(), entries.length);
+        for (int i = 0; i < entries.length; i++) {
+            assertEquals(defaults.getKey(i), entries[i].getKey());
+            if (defaults.getKey(i).equals("ResetRetries")) {
+                assertEquals("5", entries[i].getValue());
+                assertNotSame(others[i], entries[i]);
+            } else {
+                assertSame(others[i], entries[i]);
+            }
+        }
+    }
+
+    @Test
+    public void entriesForRequestedKeysReportTheUnknownOnes() {
+        configuration.change(ConfigurationDefaults.HEARTBEAT_INTERVAL, "60");
+        final List<String> unknown = new ArrayList<>();
+        final KeyValueType[] entries = configuration.entries(
+                new String[]{"NumberOfConnectors", "Foo", ConfigurationDefaults.HEARTBEAT_INTERVAL, "Bar"}, unknown);
+
+        assertEquals(2, entries.length);
+        assertEquals("NumberOfConnectors", entries[0].getKey());
+        assertTrue(entries[0].getReadonly());
+        assertEquals(ConfigurationDefaults.HEARTBEAT_INTERVAL, entries[1].getKey());
+        assertEquals("60", entries[1].getValue());
+        assertFalse(entries[1].getReadonly());
+        assertEquals("[Foo, Bar]", unknown.toString());
+    }
+
+    @Test
+    public void setIntervalStoresTheHeartbeatInterval() {
+        configuration.setInterval(900);
+        assertEquals("900", configuration.get(ConfigurationDefaults.HEARTBEAT_INTERVAL));
+        assertEquals("[HeartbeatInterval=900]", changes.toString());
+
+        configuration.setInterval(300);
+        assertTrue(configuration.getChanges().isEmpty());
+    }
+}
@@ -0,0 +1,265 @@
+package eu.chargetime.simulator.software.ocpp;
+
+import eu.chargetime.ocpp.ClientEvents;
+import eu.chargetime.ocpp.model.Confirmation;
+import eu.chargetime.ocpp.model.Request;
+import eu.chargetime.ocpp.model.core.HeartbeatConfirmation;
+import eu.chargetime.simulator.software.log.Log;
+import eu.chargetime.simulator.software.log.LogLevel;
+import eu.chargetime.simulator.software.ocpp.transport.OcppTransport;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// The call window of OCPPClient against a transport whose confirmations the test completes by hand
+public class OCPPClientWindowTest {
+
+    private static final Confirmation CONFIRMATION = new HeartbeatConfirmation();
+
+    private OcppMetrics metrics;
+    private final List<Runnable> timers = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        Log.setLevel(LogLevel.OFF);
+        metrics = new OcppMetrics();
+    }
+
+    @Test
+    public void callsBeyondThePerBoxWindowWaitAndGoOutInOrder() {
+        final ManualTransport transport = new ManualTransport();
+        final OCPPClient client = client(transport, new CallWindow(1, 2, 100, 0, null));
+
+        final CompletionStage<Confirmation> first = client.authorize("A");
+        final CompletionStage<Confirmation> second = client.authorize("B");
+        final CompletionStage<Confirmation> third = client.authorize("C");
+        assertEquals(1, transport.sent.size());
+        assertEquals(3, client.getInFlight());
+        assertEquals(2, metrics.getQueued());
+
+        final CompletionStage<Void> drained = client.drained();
+        transport.confirm(0);
+        assertTrue(first.toCompletableFuture().isDone());
+        assertEquals(2, transport.sent.size());
+        transport.confirm(1);
+        transport.confirm(2);
+
+        assertTrue(second.toCompletableFuture().isDone());
+        assertTrue(third.toCompletableFuture().isDone());
+        assertEquals(0, client.getInFlight());
+        assertEquals(0, metrics.getQueued());
+        assertTrue(drained.toCompletableFuture().isDone());
+    }
+
+    @Test
+    public void callBeyondTheQueueIsRejected() {
+        final ManualTransport transport = new ManualTransport();
+        final CallWindow window = new CallWindow(1, 1, 100, 0, null);
+        final OCPPClient client = client(transport, window);
+
+        client.authorize("A");
+        client.authorize("B");
+        final CompletionStage<Confirmation> rejected = client.authorize("C");
+
+        assertFailedWith(rejected, RejectedExecutionException.class);
+        assertEquals(1, transport.sent.size());
+        assertEquals(2, client.getInFlight());
+        assertEquals(2, window.getPending());
+        assertEquals(1, metrics.getRejected(OcppAction.AUTHORIZE));
+    }
+
+    @Test
+    public void fleetLimitIsSharedByAllClients() {
+        final ManualTransport first = new ManualTransport();
+        final ManualTransport second = new ManualTransport();
+        final CallWindow window = new CallWindow(1, 10, 2, 0, null);
+        final OCPPClient a = client(first, window);
+        final OCPPClient b = client(second, window);
+
+        a.authorize("A");
+        b.authorize("B");
+        assertFailedWith(b.authorize("C"), RejectedExecutionException.class);
+        assertEquals(1, b.getInFlight());
+
+        first.confirm(0);
+        assertEquals(1, window.getPending());
+        assertFalse(b.authorize("D").toCompletableFuture().isDone());
+        assertEquals(2, window.getPending());
+    }
+
+    @Test
+    public void timeoutFailsTheCallAndHandsTheSlotOn() {
+        final ManualTransport transport = new ManualTransport();
+        final CallWindow window = new CallWindow(1, 2, 100, 30000, this::schedule);
+        final OCPPClient client = client(transport, window);
+
+        final CompletionStage<Confirmation> sent = client.authorize("A");
+        final CompletionStage<Confirmation> queued = client.authorize("B");
+        final CompletionStage<Confirmation> dropped = client.authorize("C");
+        assertEquals(3, timers.size());
+
+        // The queued call times out without ever being sent
+        timers.get(2).run();
+        assertFailedWith(dropped, TimeoutException.class);
+        assertEquals(1, transport.sent.size());
+
+        // The call on the wire times out, its transport future is cancelled and the queued call goes out
+        timers.get(0).run();
+        assertFailedWith(sent, TimeoutException.class);
+        assertTrue(transport.sent.get(0).isCancelled());
+        assertEquals(2, transport.sent.size());
+        assertEquals(2, metrics.getTimeouts(OcppAction.AUTHORIZE));
+
+        // The answer in time cancels the last timer
+        transport.confirm(1);
+        assertTrue(queued.toCompletableFuture().isDone());
+        assertEquals(0, client.getInFlight());
+        assertEquals(0, window.getPending());
+        assertEquals(0, pendingTimers());
+    }
+
+    // Confirmations arrive on another thread, which takes queued calls from the queue as soon as they are in it
+    @Test
+    public void concurrentCallsAreCountedBeforeAnyoneCanSendThem() throws InterruptedException {
+        final AtomicInteger uncounted = new AtomicInteger();
+        final OCPPClient[] client = new OCPPClient[1];
+        final ExecutorService confirmations = Executors.newSingleThreadExecutor();
+        final OcppTransport transport = new NoTransport() {
+            @Override
+            public CompletionStage<Confirmation> send(Request request) {
+                if (client[0].getInFlight() < 1)
+                    uncounted.incrementAndGet();
+                return CompletableFuture.supplyAsync(() -> CONFIRMATION, confirmations);
+            }
+        };
+        final CallWindow window = new CallWindow(1, 1000, 100000, 0, null);
+        client[0] = client(transport, window);
+
+        final int threads = 4;
+        final int calls = 2000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                for (int i = 0; i < calls; i++)
+                    client[0].authorize("A");
+                done.countDown();
+            }).start();
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertTrue(awaitDrained(client[0]));
+        confirmations.shutdown();
+
+        assertEquals(0, uncounted.get());
+        assertEquals(0, client[0].getInFlight());
+        assertEquals(0, window.getPending());
+    }
+
+    private static boolean awaitDrained(OCPPClient client) {
+        try {
+            client.drained().toCompletableFuture().get(30, TimeUnit.SECONDS);
+            return true;
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+
+    private OCPPClient client(OcppTransport transport, CallWindow window) {
+        final CoreEventHandler handler = new CoreEventHandler(param -> { }, new RemoteTransactionControl() {
+            @Override
+            public boolean remoteStart(String idTag) {
+                return false;
+            }
+
+            @Override
+            public boolean remoteStop(int transactionId) {
+                return false;
+            }
+        }, metrics, new BoxConfiguration(ConfigurationDefaults.core(180, 60), null));
+        return new OCPPClient("ws://127.0.0.1:9/", "Test1", handler, seconds -> { }, new ConnectionStateChange() {
+            @Override
+            public void connected() {
+            }
+
+            @Override
+            public void disconnected() {
+            }
+        }, metrics, (identity, profile, events) -> transport, window);
+    }
+
+    private Runnable schedule(Runnable task, long delayMillis) {
+        final boolean[] cancelled = new boolean[1];
+        timers.add(() -> {
+            if (!cancelled[0])
+                task.run();
+        });
+        cancelledFlags.add(cancelled);
+        return () -> cancelled[0] = true;
+    }
+
+    private final List<boolean[]> cancelledFlags = new ArrayList<>();
+
+    private int pendingTimers() {
+        int pending = 0;
+        for (boolean[] cancelled : cancelledFlags)
+            pending += cancelled[0] ? 0 : 1;
+        return pending;
+    }
+
+    private static void assertFailedWith(CompletionStage<Confirmation> stage, Class<? extends Throwable> expected) {
+        try {
+            stage.toCompletableFuture().get(0, TimeUnit.SECONDS);
+            fail("expected " + expected.getSimpleName());
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().toString(), expected.isInstance(e.getCause()));
+        } catch (InterruptedException | TimeoutException e) {
+            throw new AssertionError("not completed", e);
+        }
+    }
+
+    private static class NoTransport implements OcppTransport {
+        @Override
+        public void connect(String uri, ClientEvents events) {
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public CompletionStage<Confirmation> send(Request request) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static final class ManualTransport extends NoTransport {
+        final List<CompletableFuture<Confirmation>> sent = new ArrayList<>();
+
+        @Override
+        public synchronized CompletionStage<Confirmation> send(Request request) {
+            final CompletableFuture<Confirmation> confirmation = new CompletableFuture<>();
+            sent.add(confirmation);
+            return confirmation;
+        }
+
+        void confirm(int index) {
+            sent.get(index).complete(CONFIRMATION);
+        }
+    }
+}
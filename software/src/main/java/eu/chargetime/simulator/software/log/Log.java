@@ -0,0 +1,195 @@
+package eu.chargetime.simulator.software.log;
+
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous log used on the simulator's hot paths instead of System.out. Callers only pass references;
+ * the level, sampling and rate checks run before anything is queued, and one writer thread formats and prints.
+ */
+public final class Log {
+
+    private static final int TOPICS = LogTopic.values().length;
+    private static final LogRingBuffer ring = new LogRingBuffer(64 * 1024);
+
+    private static volatile LogLevel[] levels = filled(LogLevel.INFO);
+    private static final int[] sampleEvery = new int[TOPICS];
+    private static final int[] ratePerSecond = new int[TOPICS];
+    private static final AtomicLongArray sampleCounters = new AtomicLongArray(TOPICS);
+    private static final AtomicLongArray rateWindow = new AtomicLongArray(TOPICS);
+    private static final AtomicLongArray rateCount = new AtomicLongArray(TOPICS);
+
+    private static final Thread writer;
+    private static volatile boolean unflushed;
+
+    static {
+        writer = new Thread(Log::drain, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private Log() {
+    }
+
+    public static void setLevel(LogLevel level) {
+        levels = filled(level);
+    }
+
+    public static void setLevel(LogTopic topic, LogLevel level) {
+        LogLevel[] copy = levels.clone();
+        copy[topic.ordinal()] = level;
+        levels = copy;
+    }
+
+    // Only every n-th event of the topic is written, 0 or 1 writes all of them
+    public static void setSampling(LogTopic topic, int everyNth) {
+        sampleEvery[topic.ordinal()] = everyNth;
+    }
+
+    // At most perSecond events of the topic are written per second, 0 means unlimited
+    public static void setRateLimit(LogTopic topic, int perSecond) {
+        ratePerSecond[topic.ordinal()] = perSecond;
+    }
+
+    public static boolean isEnabled(LogTopic topic, LogLevel level) {
+        return level.compareTo(levels[topic.ordinal()]) >= 0;
+    }
+
+    public static void debug(LogTopic topic, String identity, String message) {
+        log(LogLevel.DEBUG, topic, identity, message, null);
+    }
+
+    public static void debug(LogTopic topic, String identity, String message, Object argument) {
+        log(LogLevel.DEBUG, topic, identity, message, argument);
+    }
+
+    public static void info(LogTopic topic, String identity, String message) {
+        log(LogLevel.INFO, topic, identity, message, null);
+    }
+
+    public static void info(LogTopic topic, String identity, String message, Object argument) {
+        log(LogLevel.INFO, topic, identity, message, argument);
+    }
+
+    public static void warn(LogTopic topic, String identity, String message) {
+        log(LogLevel.WARN, topic, identity, message, null);
+    }
+
+    public static void warn(LogTopic topic, String identity, String message, Object argument) {
+        log(LogLevel.WARN, topic, identity, message, argument);
+    }
+
+    public static void error(LogTopic topic, String identity, String message) {
+        log(LogLevel.ERROR, topic, identity, message, null);
+    }
+
+    public static void error(LogTopic topic, String identity, String message, Object argument) {
+        log(LogLevel.ERROR, topic, identity, message, argument);
+    }
+
+    public static void log(LogLevel level, LogTopic topic, String identity, String message, Object argument) {
+        if (!isEnabled(topic, level) || !sampled(topic) || !withinRate(topic))
+            return;
+        ring.offer(level, topic, identity, message, argument);
+    }
+
+    public static long getDropped() {
+        return ring.getDropped();
+    }
+
+    // Waits until everything queued so far is written, used before the JVM exits
+    public static void flush(long timeout, TimeUnit unit) {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while ((unflushed || !ring.isEmpty()) && System.nanoTime() < deadline) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    private static boolean sampled(LogTopic topic) {
+        final int every = sampleEvery[topic.ordinal()];
+        return every <= 1 || sampleCounters.getAndIncrement(topic.ordinal()) % every == 0;
+    }
+
+    private static boolean withinRate(LogTopic topic) {
+        final int index = topic.ordinal();
+        final int limit = ratePerSecond[index];
+        if (limit <= 0)
+            return true;
+        final long second = System.currentTimeMillis() / 1000;
+        final long window = rateWindow.get(index);
+        if (window != second && rateWindow.compareAndSet(index, window, second))
+            rateCount.set(index, 0);
+        return rateCount.incrementAndGet(index) <= limit;
+    }
+
+    private static void drain() {
+        final PrintWriter out = new PrintWriter(writer(FileDescriptor.out), false);
+        final PrintWriter err = new PrintWriter(writer(FileDescriptor.err), false);
+        final StringBuilder line = new StringBuilder(256);
+        final Calendar calendar = Calendar.getInstance();
+        int idle = 0;
+        while (true) {
+            final LogRingBuffer.Event event = ring.peek();
+            if (event == null) {
+                if (idle++ == 0) {
+                    out.flush();
+                    err.flush();
+                    unflushed = false;
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(Math.min(idle, 10)));
+                continue;
+            }
+            idle = 0;
+            unflushed = true;
+            final PrintWriter target = event.level.compareTo(LogLevel.WARN) >= 0 ? err : out;
+            format(line, calendar, event);
+            target.println(line);
+            if (event.argument instanceof Throwable && event.level == LogLevel.ERROR)
+                ((Throwable) event.argument).printStackTrace(target);
+            ring.release(event);
+        }
+    }
+
+    private static void format(StringBuilder line, Calendar calendar, LogRingBuffer.Event event) {
+        line.setLength(0);
+        calendar.setTimeInMillis(event.timestamp);
+        pad(line, calendar.get(Calendar.HOUR_OF_DAY), 2).append(':');
+        pad(line, calendar.get(Calendar.MINUTE), 2).append(':');
+        pad(line, calendar.get(Calendar.SECOND), 2).append('.');
+        pad(line, calendar.get(Calendar.MILLISECOND), 3).append(' ');
+        if (event.identity != null)
+            line.append(event.identity).append(' ');
+        line.append(event.message);
+        if (event.argument != null)
+            line.append(' ').append(event.argument);
+    }
+
+    private static StringBuilder pad(StringBuilder line, int value, int width) {
+        for (int limit = 10, i = 1; i < width; i++, limit *= 10) {
+            if (value < limit)
+                line.append('0');
+        }
+        return line.append(value);
+    }
+
+    private static Writer writer(FileDescriptor descriptor) {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(descriptor), StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    private static LogLevel[] filled(LogLevel level) {
+        LogLevel[] array = new LogLevel[TOPICS];
+        Arrays.fill(array, level);
+        return array;
+    }
+}
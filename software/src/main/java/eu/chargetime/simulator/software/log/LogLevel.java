@@ -0,0 +1,13 @@
+package eu.chargetime.simulator.software.log;
+
+public enum LogLevel {
+    DEBUG,
+    INFO,
+    WARN,
+    ERROR,
+    OFF;
+
+    public static LogLevel parse(String value) {
+        return valueOf(value.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,89 @@
+package eu.chargetime.simulator.software.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded multi-producer, single-consumer ring of preallocated events. Producers claim a sequence with a CAS,
+ * fill the slot in place and publish it; nothing is allocated per event. When the ring is full the event is
+ * dropped and counted instead of blocking the caller.
+ */
+class LogRingBuffer {
+
+    static final class Event {
+        long timestamp;
+        LogLevel level;
+        LogTopic topic;
+        String identity;
+        String message;
+        Object argument;
+
+        void clear() {
+            identity = null;
+            message = null;
+            argument = null;
+        }
+    }
+
+    private final Event[] events;
+    private final AtomicLongArray published;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    LogRingBuffer(int capacity) {
+        int size = 1;
+        while (size < capacity)
+            size <<= 1;
+        events = new Event[size];
+        published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            events[i] = new Event();
+            published.set(i, -1);
+        }
+        mask = size - 1;
+    }
+
+    boolean offer(LogLevel level, LogTopic topic, String identity, String message, Object argument) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed.get() >= events.length) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        final int index = (int) (sequence & mask);
+        final Event event = events[index];
+        event.timestamp = System.currentTimeMillis();
+        event.level = level;
+        event.topic = topic;
+        event.identity = identity;
+        event.message = message;
+        event.argument = argument;
+        published.lazySet(index, sequence);
+        return true;
+    }
+
+    // Writer thread only
+    Event peek() {
+        final long sequence = consumed.get();
+        final int index = (int) (sequence & mask);
+        return published.get(index) == sequence ? events[index] : null;
+    }
+
+    void release(Event event) {
+        event.clear();
+        consumed.lazySet(consumed.get() + 1);
+    }
+
+    boolean isEmpty() {
+        return consumed.get() == claimed.get();
+    }
+
+    long getDropped() {
+        return dropped.get();
+    }
+}
@@ -0,0 +1,16 @@
+package eu.chargetime.simulator.software.log;
+
+public enum LogTopic {
+    LIFECYCLE,
+    CONNECTION,
+    BOOT_NOTIFICATION,
+    HEARTBEAT,
+    TRANSACTION,
+    HARDWARE,
+    SCHEDULER,
+    METRICS;
+
+    public static LogTopic parse(String value) {
+        return valueOf(value.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,144 @@
+package eu.chargetime.simulator.software.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear latency histogram in the style of HdrHistogram, recording microseconds with about 1.5% precision
+ * up to roughly 38 hours. Recording is allocation-free and spread over stripes picked by thread id; a snapshot
+ * merges the stripes.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+    private static final int MAX_SHIFT = 30;
+    static final int BUCKETS = SUB_BUCKETS + MAX_SHIFT * HALF;
+    private static final long MAX_VALUE = valueAt(BUCKETS - 1);
+
+    private final Stripe[] stripes;
+    private final int mask;
+
+    public LatencyHistogram() {
+        int size = 1;
+        while (size < Runtime.getRuntime().availableProcessors() * 2)
+            size <<= 1;
+        stripes = new Stripe[size];
+        for (int i = 0; i < size; i++)
+            stripes[i] = new Stripe();
+        mask = size - 1;
+    }
+
+    public void recordNanos(long nanos) {
+        recordMicros(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    public void recordMicros(long micros) {
+        final long value = Math.min(Math.max(micros, 0), MAX_VALUE);
+        final Stripe stripe = stripes[(int) (Thread.currentThread().getId() & mask)];
+        stripe.counts.incrementAndGet(indexOf(value));
+        stripe.sum.addAndGet(value);
+        long max;
+        while (value > (max = stripe.max.get()) && !stripe.max.compareAndSet(max, value)) {
+        }
+    }
+
+    public Snapshot snapshot() {
+        final long[] counts = new long[BUCKETS];
+        long sum = 0;
+        long max = 0;
+        for (Stripe stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++)
+                counts[i] += stripe.counts.get(i);
+            sum += stripe.sum.get();
+            max = Math.max(max, stripe.max.get());
+        }
+        return new Snapshot(counts, sum, max);
+    }
+
+    public void reset() {
+        for (Stripe stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++)
+                stripe.counts.set(i, 0);
+            stripe.sum.set(0);
+            stripe.max.set(0);
+        }
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+    }
+
+    // Highest value that maps to the index
+    static long valueAt(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        final int shift = (index - SUB_BUCKETS) / HALF + 1;
+        final long sub = (index - SUB_BUCKETS) % HALF + HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    private static final class Stripe {
+        final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        final AtomicLong sum = new AtomicLong();
+        final AtomicLong max = new AtomicLong();
+    }
+
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long sum, long max) {
+            long total = 0;
+            for (long c : counts)
+                total += c;
+            this.counts = counts;
+            this.count = total;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMaxMicros() {
+            return max;
+        }
+
+        public long getSumMicros() {
+            return sum;
+        }
+
+        public double getMeanMicros() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        public long percentileMicros(double percentile) {
+            if (count == 0)
+                return 0;
+            final long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank)
+                    return Math.min(valueAt(i), max);
+            }
+            return max;
+        }
+
+        public Snapshot merge(Snapshot other) {
+            final long[] merged = counts.clone();
+            for (int i = 0; i < merged.length; i++)
+                merged[i] += other.counts[i];
+            return new Snapshot(merged, sum + other.sum, Math.max(max, other.max));
+        }
+    }
+}